@@ -0,0 +1,98 @@
+package org.example.bench;
+
+import org.example.app.AggregatorApp;
+import org.example.model.AggTable;
+import org.example.model.RowBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer side: pre-built batches are handed through bounded queues to {@code workerLoop},
+ * one worker per shard, exactly as the pipeline does after parsing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark extends Workload {
+    private List<RowBatch>[] batchesPerShard;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        SyntheticCsv gen = new SyntheticCsv(campaigns, skew, SEED);
+        batchesPerShard = new List[threads];
+        RowBatch[] current = new RowBatch[threads];
+        for (int s = 0; s < threads; s++) {
+            batchesPerShard[s] = new ArrayList<>();
+            current[s] = new RowBatch(batchSize);
+            batchesPerShard[s].add(current[s]);
+        }
+        for (int i = 0; i < rows; i++) {
+            int id = gen.nextCampaign();
+            int s = id % threads;
+            if (current[s].getSize() == batchSize) {
+                current[s] = new RowBatch(batchSize);
+                batchesPerShard[s].add(current[s]);
+            }
+            current[s].add(id, 1000 + i % 997, i % 31, (i % 1000) / 10.0, i % 3);
+        }
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public AggTable[] workerLoop() throws Exception {
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[threads];
+        AggTable[] tables = AggTable.newShards(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int s = 0; s < threads; s++) {
+            queues[s] = new ArrayBlockingQueue<>(queueCapacity);
+            final int shard = s;
+            workers.add(pool.submit(() -> AggregatorApp.workerLoop(queues[shard], tables[shard])));
+        }
+
+        // round-robin over shards, like a producer interleaving flushes
+        int[] next = new int[threads];
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (int s = 0; s < threads; s++) {
+                if (next[s] < batchesPerShard[s].size()) {
+                    queues[s].put(batchesPerShard[s].get(next[s]++));
+                    more = true;
+                }
+            }
+        }
+        for (int s = 0; s < threads; s++) queues[s].put(RowBatch.getPOISON());
+        for (Future<?> w : workers) w.get();
+        return tables;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.bench;
+
+import org.example.util.ConvertUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/** Numeric field decoding: ConvertUtil on raw bytes / Strings vs. the JDK parsers on Strings. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertBenchmark extends Workload {
+    private String[] longs, doubles;
+    private byte[] longBytes, doubleBytes;
+    private int[] longEnds, doubleEnds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] lines = new String(SyntheticCsv.generate(rows, campaigns, skew, SEED), StandardCharsets.US_ASCII)
+                .split("\n");
+        int n = lines.length - 1;
+        longs = new String[n];
+        doubles = new String[n];
+        for (int i = 0; i < n; i++) {
+            String[] f = lines[i + 1].split(",");
+            longs[i] = f[2];
+            doubles[i] = f[4];
+        }
+        longEnds = new int[n];
+        doubleEnds = new int[n];
+        longBytes = pack(longs, longEnds);
+        doubleBytes = pack(doubles, doubleEnds);
+    }
+
+    private static byte[] pack(String[] values, int[] ends) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            sb.append(values[i]);
+            ends[i] = sb.length();
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public long jdkParseLong() {
+        long sum = 0;
+        for (String s : longs) sum += Long.parseLong(s);
+        return sum;
+    }
+
+    @Benchmark
+    public long convertParseLongFast() {
+        long sum = 0;
+        for (String s : longs) sum += ConvertUtil.parseLongFast(s);
+        return sum;
+    }
+
+    @Benchmark
+    public long convertParseLongBytes() {
+        long sum = 0;
+        int from = 0;
+        for (int end : longEnds) {
+            sum += ConvertUtil.parseLong(longBytes, from, end);
+            from = end;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double jdkParseDouble() {
+        double sum = 0;
+        for (String s : doubles) sum += Double.parseDouble(s);
+        return sum;
+    }
+
+    @Benchmark
+    public double convertParseDoubleFast() {
+        double sum = 0;
+        for (String s : doubles) sum += ConvertUtil.parseDoubleFast(s);
+        return sum;
+    }
+
+    @Benchmark
+    public double convertParseDoubleBytes() {
+        double sum = 0;
+        int from = 0;
+        for (int end : doubleEnds) {
+            sum += ConvertUtil.parseDouble(doubleBytes, from, end);
+            from = end;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.bench;
+
+import org.example.model.BatchDispatchRowProcessor;
+import org.example.model.CampaignDictionary;
+import org.example.model.RowBatch;
+import org.example.util.CsvByteScanner;
+import org.example.util.DelimiterIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer-side cost of {@link BatchDispatchRowProcessor}: decode + route + batch, with the rows
+ * already split (String[] from univocity vs. byte field offsets) and queues that drop every batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark extends Workload {
+    private String[][] stringRows;
+    private byte[] bytes;
+    private int[][] byteFields;
+    private BlockingQueue<RowBatch>[] queues;
+
+    // every batch is dropped (and the queue never fills): only the producer side is measured
+    static class DiscardQueue extends LinkedBlockingQueue<RowBatch> {
+        @Override
+        public boolean offer(RowBatch b) {
+            return true;
+        }
+
+        @Override
+        public boolean offer(RowBatch b, long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void put(RowBatch b) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        bytes = SyntheticCsv.generate(rows, campaigns, skew, SEED);
+        String[] lines = new String(bytes, StandardCharsets.US_ASCII).split("\n");
+        stringRows = new String[lines.length - 1][];
+        for (int i = 1; i < lines.length; i++) stringRows[i - 1] = lines[i].split(",");
+
+        List<int[]> fields = new ArrayList<>(rows);
+        int start = CsvByteScanner.skipLine(bytes, 0, bytes.length);
+        new CsvByteScanner().scan(bytes, start, bytes.length, true, (buf, f) -> fields.add(f.clone()));
+        byteFields = fields.toArray(new int[0][]);
+
+        queues = new BlockingQueue[threads];
+        for (int i = 0; i < threads; i++) queues[i] = new DiscardQueue();
+    }
+
+    @Benchmark
+    public BatchDispatchRowProcessor rowProcessedStrings() {
+        BatchDispatchRowProcessor p = new BatchDispatchRowProcessor(new CampaignDictionary(), queues, threads, batchSize);
+        for (String[] row : stringRows) p.rowProcessed(row, null);
+        p.flushAll();
+        return p;
+    }
+
+    @Benchmark
+    public BatchDispatchRowProcessor rowBytes() {
+        BatchDispatchRowProcessor p = new BatchDispatchRowProcessor(new CampaignDictionary(), queues, threads, batchSize);
+        for (int[] f : byteFields) p.row(bytes, f);
+        p.flushAll();
+        return p;
+    }
+
+    @Benchmark
+    public BatchDispatchRowProcessor scanAndRowBytes() {
+        BatchDispatchRowProcessor p = new BatchDispatchRowProcessor(new CampaignDictionary(), queues, threads, batchSize);
+        byte[] copy = bytes.clone(); // the scanner may unescape quoted fields in place
+        new CsvByteScanner().scan(copy, CsvByteScanner.skipLine(copy, 0, copy.length), copy.length, true, p);
+        p.flushAll();
+        return p;
+    }
+
+    /** Row splitting alone, testing every byte. */
+    @Benchmark
+    public long splitRowsByteLoop() {
+        return splitRows(new CsvByteScanner(null));
+    }
+
+    /** Row splitting alone, from the vector delimiter index. */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+    public long splitRowsVector() {
+        return splitRows(new CsvByteScanner(DelimiterIndex.VECTOR));
+    }
+
+    private long splitRows(CsvByteScanner scanner) {
+        long[] sum = {0};
+        scanner.scan(bytes, CsvByteScanner.skipLine(bytes, 0, bytes.length), bytes.length, true,
+                (buf, f) -> sum[0] += f[11]);
+        return sum[0];
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.bench;
+
+import org.example.app.AggregatorApp;
+import org.example.app.MmapCsvIngest;
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.example.model.CampaignDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** End-to-end ingest of a synthetic file: parse + dispatch + aggregation, per ingest mode. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark extends Workload {
+    private Path input;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        input = SyntheticCsv.writeTemp(rows, campaigns, skew, SEED);
+        output = Files.createTempDirectory("bench_out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public AggTable[] parseCsvStreaming() throws Exception {
+        return pipeline("stream");
+    }
+
+    @Benchmark
+    public AggTable[] parseCsvBytes() throws Exception {
+        return pipeline("bytes");
+    }
+
+    @Benchmark
+    public AggTable[] mmapChunks() throws Exception {
+        return MmapCsvIngest.parse(input, new CampaignDictionary(), threads, threads);
+    }
+
+    private AggTable[] pipeline(String ingest) throws Exception {
+        String[] base = cliArgs(input.toString(), output.toString());
+        String[] cli = new String[base.length + 2];
+        System.arraycopy(base, 0, cli, 0, base.length);
+        cli[base.length] = "--ingest";
+        cli[base.length + 1] = ingest;
+
+        Args a = Args.parse(cli);
+        return AggregatorApp.runQueuePipeline(a, new CampaignDictionary(), threads, batchSize);
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.bench;
+
+import org.example.app.AggregatorApp;
+import org.example.model.AggTable;
+import org.example.model.BatchPool;
+import org.example.model.QueueImpl;
+import org.example.model.RowBatch;
+import org.example.util.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off cost per batch through the shard queues and back through the batch pool, with empty
+ * batches so only the queues are measured: one producer round-robins over {@code shards} workers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+    static final int MESSAGES = 200_000;
+
+    @Param({"4", "16", "64"})
+    public int shards;
+
+    @Param({"ABQ", "SPSC"})
+    public QueueImpl queueImpl;
+
+    @Param({"YIELD", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    @Param({"50"})
+    public int queueCapacity;
+
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(shards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    @SuppressWarnings("unchecked")
+    public AggTable[] handOff() throws Exception {
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int s = 0; s < shards; s++) queues[s] = queueImpl.create(queueCapacity, waitStrategy);
+        BatchPool batches = BatchPool.forQueues(shards, queueCapacity, 1, queueImpl, waitStrategy);
+        AggTable[] tables = AggTable.newShards(shards);
+
+        List<Future<?>> workers = new ArrayList<>(shards);
+        for (int s = 0; s < shards; s++) {
+            final int shard = s;
+            workers.add(pool.submit(() -> AggregatorApp.workerLoop(queues[shard], tables[shard], batches, shard)));
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            int shard = i % shards;
+            queues[shard].put(batches.acquire(shard));
+        }
+        for (int s = 0; s < shards; s++) queues[s].put(RowBatch.getPOISON());
+        for (Future<?> w : workers) w.get();
+        return tables;
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic generator for ad_data.csv-shaped inputs. Campaign ids follow a Zipf distribution
+ * with exponent {@code skew} (0 = uniform), so the same (rows, campaigns, skew, seed) always yields
+ * the same bytes.
+ * <p>
+ * Standalone: {@code java -cp target/benchmarks.jar org.example.bench.SyntheticCsv out.csv rows campaigns skew [seed]}
+ */
+public class SyntheticCsv {
+    public static final String HEADER = "campaign_id,date,impressions,clicks,spend,conversions\n";
+
+    private final Random rnd;
+    private final double[] cdf;
+
+    public SyntheticCsv(int campaigns, double skew, long seed) {
+        this.rnd = new Random(seed);
+        this.cdf = new double[campaigns];
+        double sum = 0;
+        for (int k = 0; k < campaigns; k++) {
+            sum += 1.0 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < campaigns; k++) cdf[k] /= sum;
+    }
+
+    /** Next campaign index in [0, campaigns). */
+    public int nextCampaign() {
+        int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+        return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+    }
+
+    public static String campaignId(int k) {
+        return String.format("CMP%07d", k);
+    }
+
+    public void writeRow(StringBuilder sb) {
+        int k = nextCampaign();
+        long imp = 100 + rnd.nextInt(30_000);
+        long clk = rnd.nextInt((int) (imp / 20) + 1);
+        sb.append(campaignId(k))
+                .append(",2025-").append(two(1 + rnd.nextInt(12))).append('-').append(two(1 + rnd.nextInt(28)))
+                .append(',').append(imp)
+                .append(',').append(clk)
+                .append(',').append(rnd.nextInt(200_000) / 100).append('.').append(two(rnd.nextInt(100)))
+                .append(',').append(rnd.nextInt(50))
+                .append('\n');
+    }
+
+    public static byte[] generate(int rows, int campaigns, double skew, long seed) {
+        SyntheticCsv gen = new SyntheticCsv(campaigns, skew, seed);
+        StringBuilder sb = new StringBuilder(HEADER.length() + rows * 48);
+        sb.append(HEADER);
+        for (int i = 0; i < rows; i++) gen.writeRow(sb);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static Path write(Path file, int rows, int campaigns, double skew, long seed) throws IOException {
+        SyntheticCsv gen = new SyntheticCsv(campaigns, skew, seed);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            StringBuilder sb = new StringBuilder(1 << 20);
+            sb.append(HEADER);
+            for (int i = 0; i < rows; i++) {
+                gen.writeRow(sb);
+                if (sb.length() > (1 << 20) - 64) {
+                    out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+                    sb.setLength(0);
+                }
+            }
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+
+    public static Path writeTemp(int rows, int campaigns, double skew, long seed) throws IOException {
+        Path file = Files.createTempFile("ad_data_" + rows + "_" + campaigns + "_" + skew + "_", ".csv");
+        file.toFile().deleteOnExit();
+        return write(file, rows, campaigns, skew, seed);
+    }
+
+    private static String two(int v) {
+        return v < 10 ? "0" + v : Integer.toString(v);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: SyntheticCsv <out.csv> <rows> <campaigns> <skew> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42L;
+        write(Paths.get(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Double.parseDouble(args[3]), seed);
+    }
+}
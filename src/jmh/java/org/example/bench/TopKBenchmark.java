@@ -0,0 +1,65 @@
+package org.example.bench;
+
+import org.example.app.AggregatorApp;
+import org.example.app.RankingEngine;
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+import org.example.model.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Post-phase scans over {@code threads} shard tables holding {@code campaigns} aggregates. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TopKBenchmark extends Workload {
+    private AggTable[] shards;
+    private CampaignDictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dictionary = new CampaignDictionary();
+        shards = AggTable.newShards(threads);
+        SyntheticCsv gen = new SyntheticCsv(campaigns, skew, SEED);
+        Random rnd = new Random(SEED);
+        for (int i = 0; i < rows; i++) {
+            int id = dictionary.idOf(SyntheticCsv.campaignId(gen.nextCampaign()));
+            long imp = 100 + rnd.nextInt(30_000);
+            shards[id % threads].add(id, imp, rnd.nextInt((int) (imp / 20) + 1), rnd.nextInt(2000), rnd.nextInt(3));
+        }
+    }
+
+    @Benchmark
+    public List<Result> top10ByCtr() {
+        return AggregatorApp.top10ByCtr(shards, dictionary);
+    }
+
+    @Benchmark
+    public List<Result> top10ByLowestCpa() {
+        return AggregatorApp.top10ByLowestCpa(shards, dictionary);
+    }
+
+    // all six metrics in one pass, shards scanned in parallel
+    @Benchmark
+    public Map<Metric, List<Result>> allMetricsOnePass() throws Exception {
+        return new RankingEngine(10, List.of(Metric.values())).rank(shards, dictionary, threads);
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Shared knobs: data shape plus the CLI's --threads/--batchSize/--queueCapacity. */
+@State(Scope.Benchmark)
+public class Workload {
+    public static final long SEED = 42L;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"1000", "100000"})
+    public int campaigns;
+
+    // Zipf exponent of the campaign distribution, 0 = uniform
+    @Param({"0", "1.2"})
+    public double skew;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"4096"})
+    public int batchSize;
+
+    @Param({"50"})
+    public int queueCapacity;
+
+    public String[] cliArgs(String input, String output) {
+        return new String[]{
+                "--input", input, "--output", output,
+                "--threads", Integer.toString(threads),
+                "--batchSize", Integer.toString(batchSize),
+                "--queueCapacity", Integer.toString(queueCapacity)
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.util.FileFingerprint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Per-campaign aggregates plus the input offset they cover, so an append-only input can be resumed.
+ * <p>
+ * Layout (big-endian): magic "AGGCKPT1", version, input offset, a chained CRC32C of the input bytes
+ * before that offset ({@link FileFingerprint#chain}, extended by each run over the bytes it parsed),
+ * a {@link FileFingerprint#sample} of them, entry count, then per entry the id length (int), id bytes
+ * and the four sums; a CRC32 of everything before it closes the file. A checkpoint is rejected when its
+ * own CRC fails, when the input is now shorter than the offset, or when the sampled bytes changed (file
+ * rewritten or replaced). Neither write nor read hashes the covered prefix again, so a run costs the
+ * new bytes plus two fixed windows.
+ */
+public class AggregateCheckpoint {
+    public static final String FILE_NAME = "aggregates.ckpt";
+
+    private static final long MAGIC = 0x41474743_4B505431L; // "AGGCKPT1"
+    private static final int VERSION = 3;
+
+    /** Aggregates of input bytes [0, offset), laid out in {@code shards} tables; {@code chain} fingerprints those bytes. */
+    public record State(long offset, long chain, AggTable[] shards) {
+    }
+
+    /** Writes a checkpoint covering input bytes [0, offset), hashing all of them. */
+    public static void write(Path file, Path input, long offset, AggTable[] shardAggs, CampaignDictionary dictionary)
+            throws IOException {
+        write(file, input, null, offset, shardAggs, dictionary);
+    }
+
+    /**
+     * Writes a checkpoint covering input bytes [0, offset) that extends {@code previous} (null for none):
+     * only the bytes from the previous offset on are hashed.
+     */
+    public static void write(Path file, Path input, State previous, long offset, AggTable[] shardAggs,
+                             CampaignDictionary dictionary) throws IOException {
+        long chain, sample;
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            chain = previous == null ? FileFingerprint.chain(0, ch, 0, offset)
+                    : FileFingerprint.chain(previous.chain(), ch, previous.offset(), offset);
+            sample = FileFingerprint.sample(ch, offset);
+        }
+        int entries = 0;
+        for (AggTable t : shardAggs) entries += t.size();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeLong(chain);
+            out.writeLong(sample);
+            out.writeInt(entries);
+            for (AggTable t : shardAggs) {
+                for (int s = 0; s < t.capacity(); s++) {
+                    if (!t.isUsed(s)) continue;
+                    byte[] id = dictionary.name((int) t.keyAt(s)).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(id.length);
+                    out.write(id);
+                    out.writeLong(t.impressionsAt(s));
+                    out.writeLong(t.clicksAt(s));
+                    out.writeDouble(t.spendAt(s));
+                    out.writeLong(t.conversionsAt(s));
+                }
+            }
+            out.flush();
+            // the trailer is not part of the checksum
+            new DataOutputStream(raw).writeLong(crc.getValue());
+        }
+        // readers never see a half-written checkpoint
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the checkpoint into fresh tables, interning ids into {@code dictionary}.
+     * Returns null when there is no checkpoint; throws IllegalStateException when it must not be used.
+     */
+    public static State read(Path file, Path input, CampaignDictionary dictionary, int shards) throws IOException {
+        if (!Files.exists(file)) return null;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buf.remaining() < 8 + 4 + 8 + 8 + 8 + 4 + 8) throw new IllegalStateException("checkpoint truncated");
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.limit() - 8);
+        if (crc.getValue() != buf.getLong(buf.limit() - 8)) throw new IllegalStateException("checkpoint checksum mismatch");
+        buf.limit(buf.limit() - 8);
+
+        if (buf.getLong() != MAGIC) throw new IllegalStateException("not a checkpoint file");
+        int version = buf.getInt();
+        if (version != VERSION) throw new IllegalStateException("unsupported checkpoint version " + version);
+        long offset = buf.getLong();
+        long chain = buf.getLong();
+        long sample = buf.getLong();
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            if (ch.size() < offset) throw new IllegalStateException("input is shorter than the checkpoint offset");
+            if (FileFingerprint.sample(ch, offset) != sample) throw new IllegalStateException("input was rewritten");
+        }
+
+        AggTable[] tables = AggTable.newShards(shards);
+        try {
+            int entries = buf.getInt();
+            for (int e = 0; e < entries; e++) {
+                int len = buf.getInt();
+                if (len < 0 || len > buf.remaining()) throw new IllegalStateException("checkpoint corrupt");
+                int id = dictionary.idOf(buf.array(), buf.position(), buf.position() + len);
+                buf.position(buf.position() + len);
+                tables[id % shards].add(id, buf.getLong(), buf.getLong(), buf.getDouble(), buf.getLong());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("checkpoint truncated");
+        }
+        if (buf.hasRemaining()) throw new IllegalStateException("checkpoint has trailing bytes");
+        return new State(offset, chain, tables);
+    }
+}
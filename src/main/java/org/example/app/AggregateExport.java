@@ -0,0 +1,294 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Every campaign's totals as one column file, for downstream jobs that need more than the top-K lists.
+ * <p>
+ * Layout (little-endian): magic "AGGEXP01", version, header length, row count, id byte count. Then
+ * eight columns, each 64-byte aligned: id offsets (int, rows + 1 entries; row i's id is the UTF-8
+ * bytes [offset[i], offset[i + 1]) of the next column), id bytes, impressions, clicks (long),
+ * spend (double), conversions (long), ctr (double, 0 without impressions) and cpa (double, NaN
+ * without conversions). Rows come shard by shard, in no particular order.
+ */
+public class AggregateExport {
+    private static final long MAGIC = 0x41474745_58503031L; // "AGGEXP01"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int ALIGN = 64;
+    private static final int ID_OFFSETS = 0, ID_BYTES = 1, IMPRESSIONS = 2, CLICKS = 3, SPEND = 4, CONVERSIONS = 5,
+            CTR = 6, CPA = 7;
+    // bytes per row of each column; the id bytes column is sized by the id byte count instead
+    private static final int[] WIDTHS = {4, 1, 8, 8, 8, 8, 8, 8};
+    // per writing thread, split over the columns
+    private static final int BUFFER = 1 << 20;
+
+    private final long rows;
+    private final IntBuffer idOffsets;
+    private final ByteBuffer idBytes;
+    private final LongBuffer impressions, clicks, conversions;
+    private final DoubleBuffer spend, ctr, cpa;
+
+    private AggregateExport(long rows, ByteBuffer[] columns) {
+        this.rows = rows;
+        this.idOffsets = columns[ID_OFFSETS].asIntBuffer();
+        this.idBytes = columns[ID_BYTES];
+        this.impressions = columns[IMPRESSIONS].asLongBuffer();
+        this.clicks = columns[CLICKS].asLongBuffer();
+        this.spend = columns[SPEND].asDoubleBuffer();
+        this.conversions = columns[CONVERSIONS].asLongBuffer();
+        this.ctr = columns[CTR].asDoubleBuffer();
+        this.cpa = columns[CPA].asDoubleBuffer();
+    }
+
+    // start of each column plus the end of the file
+    private static long[] columnOffsets(long rows, long idBytes) {
+        long[] offsets = new long[WIDTHS.length + 1];
+        long pos = HEADER_LENGTH;
+        for (int c = 0; c < WIDTHS.length; c++) {
+            offsets[c] = pos = (pos + ALIGN - 1) & -ALIGN;
+            pos += c == ID_OFFSETS ? 4 * (rows + 1) : c == ID_BYTES ? idBytes : WIDTHS[c] * rows;
+        }
+        offsets[WIDTHS.length] = pos;
+        return offsets;
+    }
+
+    // ======== Write ========
+
+    /**
+     * Writes every entry of {@code shardAggs} to {@code file} (replaced atomically), one thread per
+     * shard on up to {@code threads} threads, each straight from a direct buffer into its own row range
+     * of every column. Returns the number of rows.
+     */
+    public static long write(Path file, AggTable[] shardAggs, CampaignDictionary dictionary, int threads)
+            throws IOException, InterruptedException {
+        int shards = shardAggs.length;
+        long[] firstRow = new long[shards + 1], firstIdByte = new long[shards + 1];
+        for (int i = 0; i < shards; i++) {
+            AggTable t = shardAggs[i];
+            long bytes = 0;
+            for (int s = 0; s < t.capacity(); s++) {
+                if (t.isUsed(s)) bytes += dictionary.nameLength((int) t.keyAt(s));
+            }
+            firstRow[i + 1] = firstRow[i] + t.size();
+            firstIdByte[i + 1] = firstIdByte[i] + bytes;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards)));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long rows = firstRow[shards], idBytes = firstIdByte[shards];
+            if (idBytes > Integer.MAX_VALUE || rows * 8 > Integer.MAX_VALUE) {
+                throw new IllegalStateException("too many campaigns for one export file");
+            }
+
+            long[] offsets = columnOffsets(rows, idBytes);
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < shards; i++) {
+                    final int shard = i;
+                    tasks.add(pool.submit(() -> {
+                        writeShard(out, offsets, shardAggs[shard], dictionary, firstRow[shard], firstIdByte[shard]);
+                        return null;
+                    }));
+                }
+                MmapCsvIngest.await(tasks);
+
+                ColumnWriter w = new ColumnWriter(out, ByteBuffer.allocate(ALIGN));
+                w.at(offsets[ID_OFFSETS] + 4 * rows).putInt((int) idBytes);
+                w.at(0).putLong(MAGIC).putInt(VERSION).putInt(HEADER_LENGTH).putLong(rows).putLong(idBytes);
+                w.flush();
+                // an empty last column leaves the tail unwritten
+                if (out.size() < offsets[WIDTHS.length]) {
+                    w.at(offsets[WIDTHS.length] - 1).put(new byte[1]);
+                    w.flush();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return rows;
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // a writer per column, each positioned at this shard's slice; ids and numbers in separate passes over
+    // the slots, as a single pass that also gathers id bytes from the dictionary ran slower
+    private static void writeShard(FileChannel out, long[] offsets, AggTable t, CampaignDictionary dictionary,
+                                   long firstRow, long firstIdByte) {
+        ColumnWriter[] w = new ColumnWriter[WIDTHS.length];
+        for (int c = 0; c < w.length; c++) {
+            w[c] = new ColumnWriter(out, ByteBuffer.allocateDirect(BUFFER / WIDTHS.length))
+                    .at(offsets[c] + (c == ID_BYTES ? firstIdByte : WIDTHS[c] * firstRow));
+        }
+        long idByte = firstIdByte;
+        for (int s = 0; s < t.capacity(); s++) {
+            if (!t.isUsed(s)) continue;
+            w[ID_OFFSETS].putInt((int) idByte);
+            idByte += dictionary.nameLength((int) t.keyAt(s));
+        }
+        for (int s = 0; s < t.capacity(); s++) {
+            if (t.isUsed(s)) w[ID_BYTES].putName(dictionary, (int) t.keyAt(s));
+        }
+        for (int s = 0; s < t.capacity(); s++) {
+            if (!t.isUsed(s)) continue;
+            long imp = t.impressionsAt(s), clk = t.clicksAt(s), conv = t.conversionsAt(s);
+            double sp = t.spendAt(s);
+            w[IMPRESSIONS].putLong(imp);
+            w[CLICKS].putLong(clk);
+            w[SPEND].putDouble(sp);
+            w[CONVERSIONS].putLong(conv);
+            w[CTR].putDouble(Metric.CTR.value(imp, clk, sp, conv));
+            w[CPA].putDouble(Metric.CPA.value(imp, clk, sp, conv));
+        }
+        for (ColumnWriter c : w) c.flush();
+    }
+
+    // positional writes through one buffer; threads share the channel but each writes its own ranges
+    private static final class ColumnWriter {
+        private final FileChannel ch;
+        private final ByteBuffer buf;
+        private long pos;
+
+        ColumnWriter(FileChannel ch, ByteBuffer buf) {
+            this.ch = ch;
+            this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ColumnWriter at(long pos) {
+            flush();
+            this.pos = pos;
+            return this;
+        }
+
+        ColumnWriter putInt(int v) {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(v);
+            return this;
+        }
+
+        ColumnWriter putLong(long v) {
+            if (buf.remaining() < 8) flush();
+            buf.putLong(v);
+            return this;
+        }
+
+        ColumnWriter putDouble(double v) {
+            if (buf.remaining() < 8) flush();
+            buf.putDouble(v);
+            return this;
+        }
+
+        ColumnWriter put(byte[] v) {
+            if (buf.remaining() < v.length) flush();
+            buf.put(v);
+            return this;
+        }
+
+        // ids are at most 64 KB, well under the buffer
+        void putName(CampaignDictionary dictionary, int id) {
+            if (buf.remaining() < dictionary.nameLength(id)) flush();
+            dictionary.putName(id, buf);
+        }
+
+        void flush() {
+            buf.flip();
+            try {
+                while (buf.hasRemaining()) pos += ch.write(buf, pos);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            buf.clear();
+        }
+    }
+
+    // ======== Read ========
+
+    /** Maps an export file; throws IllegalStateException when it is not one or is truncated. */
+    public static AggregateExport open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            while (head.hasRemaining() && ch.read(head) >= 0) {
+                // header is read whole or the file is too short
+            }
+            head.flip();
+            if (head.remaining() < 16 || head.getLong() != MAGIC) throw new IllegalStateException("not an export file");
+            int version = head.getInt();
+            if (version != VERSION) throw new IllegalStateException("unsupported export version " + version);
+            if (head.getInt() != HEADER_LENGTH) throw new IllegalStateException("export header corrupt");
+            long rows = head.getLong(), idBytes = head.getLong();
+            if (rows < 0 || idBytes < 0 || rows * 8 > Integer.MAX_VALUE || idBytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("export header corrupt");
+            }
+
+            long[] offsets = columnOffsets(rows, idBytes);
+            if (ch.size() != offsets[WIDTHS.length]) throw new IllegalStateException("export truncated");
+            ByteBuffer[] columns = new ByteBuffer[WIDTHS.length];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = ch.map(FileChannel.MapMode.READ_ONLY, offsets[c], offsets[c + 1] - offsets[c])
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new AggregateExport(rows, columns);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("export truncated");
+        }
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public String campaignId(int row) {
+        int from = idOffsets.get(row), to = idOffsets.get(row + 1);
+        byte[] id = new byte[to - from];
+        idBytes.get(from, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    public long impressions(int row) {
+        return impressions.get(row);
+    }
+
+    public long clicks(int row) {
+        return clicks.get(row);
+    }
+
+    public double spend(int row) {
+        return spend.get(row);
+    }
+
+    public long conversions(int row) {
+        return conversions.get(row);
+    }
+
+    public double ctr(int row) {
+        return ctr.get(row);
+    }
+
+    /** NaN for a campaign without conversions. */
+    public double cpa(int row) {
+        return cpa.get(row);
+    }
+}
@@ -2,11 +2,26 @@ package org.example.app;
 
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
-import org.example.model.Agg;
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DailyKey;
 import org.example.model.Args;
 import org.example.model.BatchDispatchRowProcessor;
+import org.example.model.BatchPool;
+import org.example.model.ExecutorMode;
+import org.example.model.IngestMode;
+import org.example.model.InputFileStats;
+import org.example.model.Metric;
+import org.example.model.PipelineEvents;
+import org.example.model.PipelineMetrics;
+import org.example.model.QueueImpl;
 import org.example.model.Result;
 import org.example.model.RowBatch;
+import org.example.model.ShardRouter;
+import org.example.util.CompressedInput;
+import org.example.util.CsvByteScanner;
+import org.example.util.CsvChunker;
+import org.example.util.ReadAheadInputStream;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
@@ -14,74 +29,123 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AggregatorApp {
 
     public static void main(String[] args) throws Exception {
         Args a = Args.parse(args);
+        if (a.getExecutor() == ExecutorMode.VIRTUAL
+                && System.getProperty("jdk.virtualThreadScheduler.parallelism") == null) {
+            // carriers = --threads; must be set before the first virtual thread starts
+            System.setProperty("jdk.virtualThreadScheduler.parallelism", Integer.toString(a.getThreads()));
+        }
+
+        if (a.getServePort() >= 0) {
+            serve(a);
+            return;
+        }
 
         long t0 = System.nanoTime();
 
         Files.createDirectories(a.getOutputDir());
+        if (a.isApproximate()) {
+            runApproximate(a, t0);
+            return;
+        }
+        if (a.getPartitions() > 0) {
+            runPartition(a, t0);
+            return;
+        }
 
-        final int shards = Math.max(1, a.getThreads());
+        final int shards = a.getShards();
         final int batchSize = a.getBatchSize();
 
-        @SuppressWarnings("unchecked")
-        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
-        for (int i = 0; i < shards; i++) {
-            queues[i] = new ArrayBlockingQueue<>(a.getQueueCapacity());
-        }
+        // campaign ids are interned once into dense ints; names are only resolved for the results
+        CampaignDictionary dictionary = new CampaignDictionary();
 
-        @SuppressWarnings("unchecked")
-        Map<String, Agg>[] shardMaps = new Map[shards];
-        for (int i = 0; i < shards; i++) {
-            shardMaps[i] = new HashMap<>(1 << 16);
-        }
+        RankingEngine ranking = new RankingEngine(a.getTopK(), a.getMetrics(), a.getMinImpressions(), a.getMinClicks());
+        Map<Metric, List<Result>> ranked = null;
 
-        ExecutorService pool = Executors.newFixedThreadPool(shards);
-        for (int i = 0; i < shards; i++) {
-            final int shard = i;
-            pool.submit(() -> workerLoop(queues[shard], shardMaps[shard]));
-        }
+        // bounded memory: shard tables spill sorted runs to disk and are merged for the ranking
+        ShardSpiller spiller = a.getShardMemoryMB() > 0
+                ? new ShardSpiller(a.getSpillDir(), shards, a.getShardMemoryMB() * 1024L * 1024L,
+                a.getIngest() == IngestMode.MMAP ? a.getThreads() : 1) : null;
+        AggTable[] shardAggs;
+        try {
+            if (a.getMergeInputs() != null) {
+                long m0 = System.nanoTime();
+                shardAggs = PartialAggregate.merge(a.getMergeInputs(), dictionary, a.getThreads());
+                System.out.printf(Locale.US, "Merge: %d partial files, %d campaigns in %.1f ms%n",
+                        a.getMergeInputs().size(), dictionary.size(), (System.nanoTime() - m0) / 1e6);
+            } else if (a.isIncremental()) {
+                shardAggs = runIncremental(a, dictionary, shards);
+            } else if (a.getCache() != null) {
+                shardAggs = runCached(a, dictionary, shards);
+            } else if (a.getIngest() == IngestMode.MMAP) {
+                System.out.println("Scanner: " + CsvByteScanner.describe());
+                // every thread parses its own chunks (of all input files) into its own shards, merged shard-wise at the end
+                List<InputFileStats> fileStats = new ArrayList<>();
+                shardAggs = MmapCsvIngest.parse(a.getInputs(), dictionary, a.getThreads(), shards, fileStats,
+                        a.getDates(), a.isDaily(), spiller);
+                printFileStats(fileStats);
+            } else {
+                if (a.getIngest() == IngestMode.BYTES) System.out.println("Scanner: " + CsvByteScanner.describe());
+                PipelineResult result = runQueuePipeline(a, dictionary, shards, batchSize,
+                        a.isWorkerTopK() ? ranking : null, spiller);
+                shardAggs = result.shards();
+                ranked = result.ranking();
+            }
 
-        // // Producer: parse CSV streaming và dispatch batch vào shard queues
-        parseCsvStreaming(a.getInput(), queues, shards, batchSize);
+            if (a.isDaily()) {
+                writeDailyCsv(a.getOutputDir().resolve("daily.csv"), shardAggs, dictionary);
+                shardAggs = DailyKey.rollUp(shardAggs);
+            }
+            if (a.getExport() != null) {
+                long e0 = System.nanoTime();
+                long rows = AggregateExport.write(a.getExport(), shardAggs, dictionary, a.getThreads());
+                System.out.printf(Locale.US, "Export: %d campaigns to %s (%.1f MB) in %.1f ms%n", rows, a.getExport(),
+                        Files.size(a.getExport()) / 1024.0 / 1024.0, (System.nanoTime() - e0) / 1e6);
+            }
 
-        // Send poison pills to stop workers
-        for (int i = 0; i < shards; i++) {
-            queues[i].put(RowBatch.getPOISON());
+            // Build top lists from shards (no need merge to 1 big map): every metric in one pass
+            long r0 = System.nanoTime();
+            if (spiller != null) {
+                System.out.println(spiller);
+                ranked = spiller.rank(ranking, dictionary, a.getThreads());
+            } else if (ranked == null) {
+                ranked = ranking.rank(shardAggs, dictionary, a.getThreads());
+            }
+            System.out.printf(Locale.US, "Ranking: %.1f ms after aggregation%s%n", (System.nanoTime() - r0) / 1e6,
+                    a.isWorkerTopK() ? " (worker-local top-K merged)" : spiller != null ? " (merged spill runs)" : "");
+        } finally {
+            if (spiller != null) spiller.close();
         }
-
-        pool.shutdown();
-        if (!pool.awaitTermination(60, TimeUnit.MINUTES)) {
-            pool.shutdownNow();
-            throw new RuntimeException("Workers timeout");
+        for (Map.Entry<Metric, List<Result>> e : ranked.entrySet()) {
+            writeCsv(a.getOutputDir().resolve(e.getKey().fileName(a.getTopK())), e.getValue(), e.getKey());
         }
 
-        // Build top lists from shard maps (no need merge to 1 big map)
-        List<Result> topCtr = top10ByCtr(shardMaps);
-        List<Result> topCpa = top10ByLowestCpa(shardMaps);
-
-        writeCsv(a.getOutputDir().resolve("top10_ctr.csv"), topCtr);
-        writeCsv(a.getOutputDir().resolve("top10_cpa.csv"), topCpa);
-
         long t1 = System.nanoTime();
         double sec = (t1 - t0) / 1_000_000_000.0;
 
@@ -91,105 +155,540 @@ public class AggregatorApp {
                 "Done. Time: %.2fs, approx used memory: %.2f MB%n",
                 sec, used / 1024.0 / 1024.0
         );
+        printFootprint(shardAggs, dictionary);
+    }
+
+    // sketches only: no dictionary or per-campaign tables, memory set by --sketchCounters
+    private static void runApproximate(Args a, long t0) throws Exception {
+        System.out.println("Scanner: " + CsvByteScanner.describe());
+        List<InputFileStats> fileStats = new ArrayList<>();
+        ApproximateIngest sketch = ApproximateIngest.scan(a.getInputs(), a.getThreads(), a.getSketchCounters(),
+                a.getDates(), fileStats);
+        printFileStats(fileStats);
+        System.out.println(sketch);
+        RankingEngine ranking = new RankingEngine(a.getTopK(), a.getMetrics(), a.getMinImpressions(), a.getMinClicks());
+        for (Map.Entry<Metric, List<Result>> e : sketch.rank(ranking).entrySet()) {
+            writeCsv(a.getOutputDir().resolve(e.getKey().fileName(a.getTopK())), e.getValue(), e.getKey());
+        }
+        System.out.printf(Locale.US, "Done. Time: %.2fs, approx used memory: %.2f MB%n",
+                (System.nanoTime() - t0) / 1e9, usedMemoryBytes() / 1024.0 / 1024.0);
     }
 
-    public static void workerLoop(BlockingQueue<RowBatch> q, Map<String, Agg> map) {
+    // one byte range of the input into a partial file for --merge, no top lists
+    private static void runPartition(Args a, long t0) throws Exception {
+        System.out.println("Scanner: " + CsvByteScanner.describe());
+        long[] range = PartialAggregate.range(a.getInput(), a.getPartition(), a.getPartitions());
+        CampaignDictionary dictionary = new CampaignDictionary();
+        AggTable[] shardAggs = MmapCsvIngest.parse(a.getInput(), range[0], range[1], dictionary, a.getThreads(),
+                a.getShards(), a.getDates());
+        Path file = a.getOutputDir().resolve(PartialAggregate.fileName(a.getPartition(), a.getPartitions()));
+        PartialAggregate.write(file, a.getInput(), a.getPartition(), a.getPartitions(), range[0], range[1],
+                a.getDates(), a.isDaily(), shardAggs, dictionary);
+        System.out.printf(Locale.US, "Partition %d/%d: bytes [%d, %d) of %s, %d campaigns -> %s (%.1f MB)%n",
+                a.getPartition(), a.getPartitions(), range[0], range[1], a.getInput().getFileName(), dictionary.size(),
+                file, Files.size(file) / 1024.0 / 1024.0);
+        System.out.printf(Locale.US, "Done. Time: %.2fs, approx used memory: %.2f MB%n",
+                (System.nanoTime() - t0) / 1e9, usedMemoryBytes() / 1024.0 / 1024.0);
+    }
+
+    // runs until the JVM is stopped
+    private static void serve(Args a) throws Exception {
+        AggregatorServer server = new AggregatorServer(a, a.getServePort());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        long t0 = System.nanoTime();
+        server.start(a.getPollMillis());
+        System.out.printf(Locale.US, "Serving http://127.0.0.1:%d (loaded in %.2fs, polling every %d ms)%n",
+                server.port(), (System.nanoTime() - t0) / 1e9, a.getPollMillis());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Resumes from the checkpoint in the output dir: only input bytes after its offset are parsed
+     * (memory-mapped, like --ingest mmap) and merged into the saved aggregates, then the checkpoint
+     * is rewritten. Only complete lines are consumed, so a row still being appended waits for the next run.
+     */
+    static AggTable[] runIncremental(Args a, CampaignDictionary dictionary, int shards) throws Exception {
+        Path checkpoint = a.getOutputDir().resolve(AggregateCheckpoint.FILE_NAME);
+        AggregateCheckpoint.State previous = null;
         try {
-            while (true) {
-                RowBatch b = q.take();
-                if (b.isPoison()) break;
+            previous = AggregateCheckpoint.read(checkpoint, a.getInput(), dictionary, shards);
+        } catch (IllegalStateException e) {
+            System.out.println("Checkpoint ignored (" + e.getMessage() + "), full rebuild");
+        }
 
-                for (int i = 0; i < b.getSize(); i++) {
-                    String id = b.getCampaignId()[i];
-                    Agg agg = map.get(id);
-                    if (agg == null) {
-                        agg = new Agg();
-                        map.put(id, agg);
+        long from = previous == null ? 0 : previous.offset();
+        long to;
+        try (FileChannel ch = FileChannel.open(a.getInput(), StandardOpenOption.READ)) {
+            to = CsvChunker.lastLineEnd(ch, from, ch.size());
+        }
+
+        AggTable[] shardAggs = MmapCsvIngest.parse(a.getInput(), from, to, dictionary, a.getThreads(), shards);
+        if (previous != null) {
+            for (int i = 0; i < shards; i++) shardAggs[i].mergeFrom(previous.shards()[i]);
+        }
+        AggregateCheckpoint.write(checkpoint, a.getInput(), previous, to, shardAggs, dictionary);
+
+        System.out.printf(Locale.US, "Incremental: resumed at byte %d, parsed %d new bytes%n", from, to - from);
+        return shardAggs;
+    }
+
+    /**
+     * Aggregates from the column cache, (re)building it first when it is missing or its inputs
+     * changed. A valid cache is never parsed as CSV again; --ingest only matters without one.
+     */
+    static AggTable[] runCached(Args a, CampaignDictionary dictionary, int shards) throws Exception {
+        ColumnarCache cache = null;
+        try {
+            cache = ColumnarCache.open(a.getCache(), a.getInputs(), a.isCacheVerify());
+        } catch (IllegalStateException e) {
+            System.out.println("Cache ignored (" + e.getMessage() + "), rebuilding");
+        }
+
+        if (cache == null) {
+            long t0 = System.nanoTime();
+            cache = ColumnarCache.build(a.getCache(), a.getInputs());
+            System.out.printf(Locale.US, "Cache: built %s (%d rows, %.1f MB) in %.2fs%n", a.getCache(), cache.rows(),
+                    Files.size(a.getCache()) / 1024.0 / 1024.0, (System.nanoTime() - t0) / 1e9);
+        } else {
+            System.out.printf(Locale.US, "Cache: %s (%d rows)%n", a.getCache(), cache.rows());
+        }
+        return cache.aggregate(dictionary, a.getThreads(), shards, a.getDates(), a.isDaily());
+    }
+
+    // heap cost of the aggregate store vs. what the same entries would take as HashMap<String, Agg>
+    static void printFootprint(AggTable[] shardAggs, CampaignDictionary dictionary) {
+        long entries = 0, tables = 0;
+        for (AggTable t : shardAggs) {
+            entries += t.size();
+            tables += t.footprintBytes();
+        }
+        long dict = dictionary.footprintBytes();
+        long hashMaps = AggTable.hashMapFootprintBytes(entries, dictionary.idBytes());
+        System.out.printf(
+                Locale.US,
+                "Aggregates: %d campaigns, tables %.2f MB + dictionary %.2f MB (HashMap<String, Agg> estimate: %.2f MB)%n",
+                entries, tables / 1024.0 / 1024.0, dict / 1024.0 / 1024.0, hashMaps / 1024.0 / 1024.0
+        );
+    }
+
+    static void printShardLoad(long[] shardRows, int spreadCampaigns) {
+        String rows = shardRows.length <= 16 ? Arrays.toString(shardRows)
+                : shardRows.length + " shards, min " + Arrays.stream(shardRows).min().getAsLong()
+                + " / max " + Arrays.stream(shardRows).max().getAsLong();
+        System.out.printf(
+                Locale.US,
+                "Shard rows: %s (max/mean %.2f, %d hot campaigns spread)%n",
+                rows, ShardRouter.imbalance(shardRows), spreadCampaigns
+        );
+    }
+
+    /** Shard aggregates of the queue pipeline; {@code ranking} is null unless the workers ranked their shards. */
+    record PipelineResult(AggTable[] shards, Map<Metric, List<Result>> ranking) {
+    }
+
+    public static AggTable[] runQueuePipeline(Args a, CampaignDictionary dictionary, int shards, int batchSize)
+            throws Exception {
+        return runQueuePipeline(a, dictionary, shards, batchSize, null).shards();
+    }
+
+    /**
+     * With {@code ranking} set, every worker ranks its own shard right after its poison pill, while
+     * other shards may still be draining; the main thread then only merges shards x K candidates. Campaigns
+     * spread over several shards are left out there and ranked separately once folded back home.
+     */
+    static PipelineResult runQueuePipeline(Args a, CampaignDictionary dictionary, int shards, int batchSize,
+                                           RankingEngine ranking) throws Exception {
+        return runQueuePipeline(a, dictionary, shards, batchSize, ranking, null);
+    }
+
+    /**
+     * With a {@code spiller}, workers spill their table whenever it reaches the budget and once more after
+     * their poison pill: the returned tables are empty and the totals are in the runs. Hot campaigns are
+     * then not spread, since their partial aggregates would end up in other shards' runs.
+     */
+    @SuppressWarnings("unchecked")
+    static PipelineResult runQueuePipeline(Args a, CampaignDictionary dictionary, int shards, int batchSize,
+                                           RankingEngine ranking, ShardSpiller spiller) throws Exception {
+        // one producer per input file, at most --threads of them
+        List<Path> inputs = a.getInputs();
+        int producers = Math.min(inputs.size(), a.getThreads());
+        QueueImpl queueImpl = a.getQueueImpl();
+        if (producers > 1 && queueImpl == QueueImpl.SPSC) {
+            System.out.println("spsc queues need a single producer; using abq for " + producers + " producers");
+            queueImpl = QueueImpl.ABQ;
+        }
+
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) {
+            queues[i] = queueImpl.create(a.getQueueCapacity(), a.getWaitStrategy());
+        }
+        if (queueImpl == QueueImpl.SPSC && Integer.bitCount(a.getQueueCapacity()) != 1) {
+            System.out.println("spsc queue capacity " + a.getQueueCapacity() + " rounded up to "
+                    + queues[0].remainingCapacity());
+        }
+
+        AggTable[] shardAggs = AggTable.newShards(shards);
+        // batches circulate producer -> queue -> worker -> pool, so steady state allocates none;
+        // per shard: a full queue, one batch being filled by each producer and one in the worker
+        BatchPool batches = new BatchPool(shards, a.getQueueCapacity() + producers + 1, batchSize,
+                queueImpl, a.getWaitStrategy());
+
+        // set before the poison pills go out, so every worker sees it once it takes its pill
+        AtomicReference<boolean[]> spreadMask = new AtomicReference<>();
+        RankingEngine.Candidates[] shardTops = new RankingEngine.Candidates[shards];
+
+        PipelineMetrics metrics = new PipelineMetrics(queues, shardAggs, batches);
+        metrics.startProgress(a.getProgressMillis());
+
+        ExecutorService pool = newWorkerPool(a.getExecutor(), shards);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            workers.add(pool.submit(() -> {
+                workerLoop(queues[shard], shardAggs[shard], batches, shard, a.isDaily(), metrics.worker(shard),
+                        spiller);
+                if (spiller != null) spiller.spill(shard, shardAggs[shard]);
+                if (ranking != null) {
+                    shardTops[shard] = ranking.rankShard(shardAggs[shard], dictionary, spreadMask.get());
+                }
+                return null;
+            }));
+        }
+
+        // heavy campaigns are spread over all shards and folded back into their home shard below
+        boolean skewAware = a.isSkewAware() && spiller == null;
+        ShardRouter[] routers = new ShardRouter[producers];
+        List<InputFileStats> fileStats = Collections.synchronizedList(new ArrayList<>());
+        Queue<Path> files = new ConcurrentLinkedQueue<>(inputs);
+        try {
+            if (producers == 1) {
+                routers[0] = new ShardRouter(shards, skewAware);
+                BatchDispatchRowProcessor processor = new BatchDispatchRowProcessor(dictionary, queues, shards,
+                        batchSize, batches, routers[0], a.getDates(), a.isDaily(), a.isCombine());
+                metrics.register(processor.getCounters());
+                produce(a, files, processor, fileStats);
+            } else {
+                ExecutorService producerPool = Executors.newFixedThreadPool(producers);
+                try {
+                    List<Future<?>> tasks = new ArrayList<>();
+                    for (int p = 0; p < producers; p++) {
+                        ShardRouter router = routers[p] = new ShardRouter(shards, skewAware);
+                        BatchDispatchRowProcessor processor = new BatchDispatchRowProcessor(dictionary, queues, shards,
+                                batchSize, batches, router, a.getDates(), a.isDaily(), a.isCombine());
+                        metrics.register(processor.getCounters());
+                        tasks.add(producerPool.submit(() -> {
+                            produce(a, files, processor, fileStats);
+                            return null;
+                        }));
                     }
-                    agg.add(b.getImpressions()[i], b.getClicks()[i], b.getSpend()[i], b.getConversions()[i]);
+                    MmapCsvIngest.await(tasks);
+                } finally {
+                    producerPool.shutdown();
                 }
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            spreadMask.set(spreadMask(routers));
+        } finally {
+            // Send poison pills to stop workers
+            for (int i = 0; i < shards; i++) {
+                queues[i].put(RowBatch.getPOISON());
+            }
+        }
+
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(60, TimeUnit.MINUTES)) {
+                pool.shutdownNow();
+                throw new RuntimeException("Workers timeout");
+            }
+        } finally {
+            metrics.stop();
+        }
+        MmapCsvIngest.await(workers);
+
+        long[] shardRows = new long[shards];
+        for (ShardRouter router : routers) {
+            long[] rows = router.shardRows();
+            for (int i = 0; i < shards; i++) shardRows[i] += rows[i];
         }
+        int[] spreadIds = spreadIds(routers);
+        if (a.isDaily()) DailyKey.mergeSpread(shardAggs, spreadIds);
+        else ShardRouter.mergeSpread(shardAggs, spreadIds);
+        printFileStats(fileStats);
+        printShardLoad(shardRows, spreadIds.length);
+        if (metrics.combinerSummary() != null) System.out.println(metrics.combinerSummary());
+        System.out.println(metrics.summary());
+        if (a.getReport() != null) Files.writeString(a.getReport(), metrics.toJson(), StandardCharsets.UTF_8);
+
+        if (ranking == null) return new PipelineResult(shardAggs, null);
+        List<RankingEngine.Candidates> parts = new ArrayList<>(Arrays.asList(shardTops));
+        parts.add(ranking.rankIds(shardAggs, spreadIds, dictionary));
+        return new PipelineResult(shardAggs, ranking.merge(parts));
     }
 
-    // ======== Top-10 ========
-    public static List<Result> top10ByCtr(Map<String, Agg>[] shardMaps) {
-        PriorityQueue<Result> pq = new PriorityQueue<>(Comparator.comparingDouble(r -> r.getCtr())); // min-heap size 10
-
-        for (Map<String, Agg>
-                m : shardMaps) {
-            for (var e : m.entrySet()) {
-                Result r = new Result(e.getKey(), e.getValue());
-                if (pq.size() < 10) pq.offer(r);
-                else if (r.getCtr() > pq.peek().getCtr()) {
-                    pq.poll();
-                    pq.offer(r);
+    // campaigns any producer spread over several shards
+    private static int[] spreadIds(ShardRouter[] routers) {
+        Set<Integer> spread = new TreeSet<>();
+        for (ShardRouter router : routers) {
+            for (int id : router.spreadIds()) spread.add(id);
+        }
+        return spread.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static boolean[] spreadMask(ShardRouter[] routers) {
+        int[] ids = spreadIds(routers);
+        boolean[] mask = new boolean[ids.length == 0 ? 0 : ids[ids.length - 1] + 1];
+        for (int id : ids) mask[id] = true;
+        return mask;
+    }
+
+    // one producer: takes input files until none are left, all through the same processor
+    private static void produce(Args a, Queue<Path> files, BatchDispatchRowProcessor processor,
+                                List<InputFileStats> fileStats) throws IOException {
+        processor.getCounters().started();
+        for (Path file; (file = files.poll()) != null; ) {
+            InputFileStats stats = new InputFileStats(file, Files.size(file));
+            long rows0 = processor.getRouter().rows();
+            long t0 = System.nanoTime();
+            // // Producer: parse CSV streaming và dispatch batch vào shard queues
+            try (InputStream in = openInput(a, file)) {
+                if (a.getIngest() == IngestMode.BYTES) {
+                    parseCsvBytes(in, processor);
+                } else {
+                    parseCsvStreaming(in, processor);
                 }
+                if (in instanceof ReadAheadInputStream r) stats.recordInput(r.getReadNanos(), r.getWaitNanos());
             }
+            stats.record(t0, System.nanoTime(), processor.getRouter().rows() - rows0);
+            fileStats.add(stats);
+        }
+        processor.getCounters().finished();
+    }
+
+    /**
+     * Plain files are read ahead of the parser on their own thread (--readAheadBlocks, --readAheadBlockKB);
+     * compressed ones always are, by their decompressing thread.
+     */
+    static InputStream openInput(Args a, Path file) throws IOException {
+        if (CompressedInput.isCompressed(file)) return CompressedInput.open(file);
+        if (a.getReadAheadBlocks() > 0) {
+            return ReadAheadInputStream.open(file, a.getReadAheadBlockKB() * 1024, a.getReadAheadBlocks());
+        }
+        return a.getIngest() == IngestMode.BYTES ? Files.newInputStream(file)
+                : new BufferedInputStream(Files.newInputStream(file), 16 * 1024 * 1024);
+    }
+
+    static void printFileStats(List<InputFileStats> fileStats) {
+        List<InputFileStats> sorted = new ArrayList<>(fileStats);
+        sorted.sort(Comparator.comparing(InputFileStats::getFile));
+        for (InputFileStats s : sorted) System.out.println(s);
+    }
+
+    /**
+     * Each shard keeps exactly one worker, so its AggTable stays single-writer either way. Virtual
+     * workers park in take() and free their carrier, so many more shards than cores can share the
+     * carrier ForkJoinPool and an idle shard's core is stolen by a busy one.
+     */
+    static ExecutorService newWorkerPool(ExecutorMode mode, int shards) {
+        if (mode == ExecutorMode.VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("shard-", 0).factory());
         }
+        return Executors.newFixedThreadPool(shards);
+    }
 
-        ArrayList<Result> out = new ArrayList<>(pq);
-        out.sort((a, b) -> Double.compare(b.getCtr(), a.getCtr())); // desc CTR
-        return out;
+    public static void workerLoop(BlockingQueue<RowBatch> q, AggTable table) {
+        workerLoop(q, table, null, 0);
     }
 
-    public static List<Result> top10ByLowestCpa(Map<String, Agg>[] shardMaps) {
-        // max-heap by CPA => keep 10 smallest
-        PriorityQueue<Result> pq = new PriorityQueue<>((a, b) -> Double.compare(b.getCpa(), a.getCpa()));
+    /** Aggregates batches from {@code q} until the poison pill, handing each one back to {@code batches}. */
+    public static void workerLoop(BlockingQueue<RowBatch> q, AggTable table, BatchPool batches, int shard) {
+        workerLoop(q, table, batches, shard, false);
+    }
+
+    /** With {@code daily} rows are aggregated per (campaign, day), see {@link DailyKey}. */
+    public static void workerLoop(BlockingQueue<RowBatch> q, AggTable table, BatchPool batches, int shard,
+                                  boolean daily) {
+        workerLoop(q, table, batches, shard, daily, new PipelineMetrics.Worker(), null);
+    }
 
-        for (Map<String, Agg> m : shardMaps) {
-            for (var e : m.entrySet()) {
-                Result r = new Result(e.getKey(), e.getValue());
-                if (r.getCpa() == null) continue; // exclude conversions=0
-                if (pq.size() < 10) pq.offer(r);
-                else if (r.getCpa() < pq.peek().getCpa()) {
-                    pq.poll();
-                    pq.offer(r);
+    /**
+     * Batches, rows and the time spent waiting on an empty queue go to {@code counters}; with a
+     * {@code spiller} the table is spilled whenever it reaches the budget. If that fails the worker
+     * keeps taking batches until the poison pill, so producers cannot block on its queue, and then rethrows.
+     */
+    public static void workerLoop(BlockingQueue<RowBatch> q, AggTable table, BatchPool batches, int shard,
+                                  boolean daily, PipelineMetrics.Worker counters, ShardSpiller spiller) {
+        counters.started();
+        try {
+            while (true) {
+                // the clock is only read when the queue is empty
+                RowBatch b = q.poll();
+                if (b == null) {
+                    long t0 = System.nanoTime();
+                    PipelineEvents.QueueWait event = PipelineEvents.beginQueueWait("take", shard);
+                    b = q.take();
+                    if (event != null) event.commit();
+                    counters.idle(System.nanoTime() - t0);
                 }
+                if (b.isPoison()) break;
+                counters.batch(b.getSize());
+
+                int[] ids = b.getCampaignId();
+                int[] days = b.getDay();
+                for (int i = 0; i < b.getSize(); i++) {
+                    long key = daily ? DailyKey.of(ids[i], days[i]) : ids[i];
+                    table.add(key, b.getImpressions()[i], b.getClicks()[i], b.getSpend()[i], b.getConversions()[i]);
+                    if (spiller != null) spiller.spillIfFull(shard, table);
+                }
+                if (batches != null) batches.release(shard, b);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            drain(q, batches, shard);
+            throw e;
+        } finally {
+            counters.finished();
         }
+    }
+
+    private static void drain(BlockingQueue<RowBatch> q, BatchPool batches, int shard) {
+        try {
+            for (RowBatch b; !(b = q.take()).isPoison(); ) {
+                if (batches != null) batches.release(shard, b);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ======== Top-10 ========
+    public static List<Result> top10ByCtr(AggTable[] shardAggs, CampaignDictionary dictionary) {
+        return new RankingEngine(10, List.of(Metric.CTR)).rank(shardAggs, dictionary).get(Metric.CTR);
+    }
 
-        ArrayList<Result> out = new ArrayList<>(pq);
-        out.sort(Comparator.comparingDouble(a -> a.getCpa())); // asc CPA
-        return out;
+    /** Lowest CPA first; campaigns without conversions have no CPA and are left out. */
+    public static List<Result> top10ByLowestCpa(AggTable[] shardAggs, CampaignDictionary dictionary) {
+        return new RankingEngine(10, List.of(Metric.CPA)).rank(shardAggs, dictionary).get(Metric.CPA);
     }
 
     // ======== CSV Writer ========
     public static void writeCsv(Path file, List<Result> rows) throws IOException {
+        writeCsv(file, rows, Metric.CTR);
+    }
+
+    /** Metrics other than CTR and CPA get an extra column with the ranked value. */
+    public static void writeCsv(Path file, List<Result> rows, Metric metric) throws IOException {
+        boolean extra = metric != Metric.CTR && metric != Metric.CPA;
         try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
             w.write("campaign_id,total_impressions,total_clicks,total_spend,total_conversions,CTR,CPA");
+            if (extra) w.write("," + metric.name());
             w.newLine();
 
             for (Result r : rows) {
-                String cpaStr = (r.getCpa() == null) ? "" : String.format(Locale.US, "%.2f", r.getCpa());
+                w.write(r.getCampaignId());
+                writeTotals(w, r);
+                if (extra) {
+                    w.write(',');
+                    w.write(String.format(Locale.US, "%.7f", metric.value(r)));
+                }
+                w.newLine();
+            }
+        }
+    }
+
+    // ",impressions,clicks,spend,conversions,CTR,CPA" of one result row
+    private static void writeTotals(BufferedWriter w, Result r) throws IOException {
+        String cpaStr = (r.getCpa() == null) ? "" : String.format(Locale.US, "%.2f", r.getCpa());
+
+        w.write(',');
+        w.write(Long.toString(r.getTotalImpressions()));
+        w.write(',');
+        w.write(Long.toString(r.getTotalClicks()));
+        w.write(',');
+        w.write(String.format(Locale.US, "%.2f", r.getTotalSpend()));
+        w.write(',');
+        w.write(Long.toString(r.getTotalConversions()));
+        w.write(',');
+        w.write(String.format(Locale.US, "%.7f", r.getCtr()));
+        w.write(',');
+        w.write(cpaStr);
+    }
 
+    // ======== Per-day CSV ========
+    /** One row per (campaign, day) of per-day tables, ordered by campaign id and date. */
+    public static void writeDailyCsv(Path file, AggTable[] dailyAggs, CampaignDictionary dictionary)
+            throws IOException {
+        int entries = 0;
+        for (AggTable t : dailyAggs) entries += t.size();
+        long[] keys = new long[entries];
+        int n = 0;
+        for (AggTable t : dailyAggs) {
+            for (int s = 0; s < t.capacity(); s++) if (t.isUsed(s)) keys[n++] = t.keyAt(s);
+        }
+        String[] names = new String[dictionary.size()];
+        for (int id = 0; id < names.length; id++) names[id] = dictionary.name(id);
+        // re-key by the campaign's rank in name order (ids are unique, so are ranks): a plain long sort
+        String[] sorted = names.clone();
+        Arrays.sort(sorted);
+        int[] rank = new int[names.length], idByRank = new int[names.length];
+        for (int id = 0; id < names.length; id++) {
+            rank[id] = Arrays.binarySearch(sorted, names[id]);
+            idByRank[rank[id]] = id;
+        }
+        // the day's sign bit flipped, so negative epoch days still sort first
+        for (int i = 0; i < entries; i++) {
+            keys[i] = DailyKey.of(rank[DailyKey.campaign(keys[i])], DailyKey.day(keys[i]) ^ Integer.MIN_VALUE);
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < entries; i++) {
+            keys[i] = DailyKey.of(idByRank[DailyKey.campaign(keys[i])], DailyKey.day(keys[i]) ^ Integer.MIN_VALUE);
+        }
+
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            w.write("campaign_id,date,total_impressions,total_clicks,total_spend,total_conversions,CTR,CPA");
+            w.newLine();
+            for (long key : keys) {
+                AggTable t = dailyAggs[DailyKey.campaign(key) % dailyAggs.length];
+                int slot = t.find(key);
+                Result r = new Result(names[DailyKey.campaign(key)], t.impressionsAt(slot), t.clicksAt(slot),
+                        t.spendAt(slot), t.conversionsAt(slot));
                 w.write(r.getCampaignId());
                 w.write(',');
-                w.write(Long.toString(r.getTotalImpressions()));
-                w.write(',');
-                w.write(Long.toString(r.getTotalClicks()));
-                w.write(',');
-                w.write(String.format(Locale.US, "%.2f", r.getTotalSpend()));
-                w.write(',');
-                w.write(Long.toString(r.getTotalConversions()));
-                w.write(',');
-                w.write(String.format(Locale.US, "%.7f", r.getCtr()));
-                w.write(',');
-                w.write(cpaStr);
+                w.write(DailyKey.date(key).toString());
+                writeTotals(w, r);
                 w.newLine();
             }
         }
     }
 
     public static void parseCsvStreaming(Path input,
+                                  CampaignDictionary dictionary,
                                   BlockingQueue<RowBatch>[] queues,
                                   int shards,
                                   int batchSize) throws IOException {
+        parseCsvStreaming(input, dictionary, queues, shards, batchSize, null);
+    }
 
+    public static void parseCsvStreaming(Path input,
+                                  CampaignDictionary dictionary,
+                                  BlockingQueue<RowBatch>[] queues,
+                                  int shards,
+                                  int batchSize,
+                                  BatchPool batches) throws IOException {
+        parseCsvStreaming(input, new BatchDispatchRowProcessor(dictionary, queues, shards, batchSize, batches));
+    }
+
+    public static void parseCsvStreaming(Path input, BatchDispatchRowProcessor processor) throws IOException {
+        try (InputStream in = CompressedInput.isCompressed(input) ? CompressedInput.open(input)
+                : new BufferedInputStream(Files.newInputStream(input), 16 * 1024 * 1024)) {
+            parseCsvStreaming(in, processor);
+        }
+    }
+
+    public static void parseCsvStreaming(InputStream in, BatchDispatchRowProcessor processor) throws IOException {
         CsvParserSettings settings = new CsvParserSettings();
         settings.setHeaderExtractionEnabled(true);
         settings.setSkipEmptyLines(true);
@@ -197,14 +696,42 @@ public class AggregatorApp {
         settings.getFormat().setDelimiter(',');
 
         // Processor: custom RowProcessor + batch queue
-        settings.setProcessor(new BatchDispatchRowProcessor(queues, shards, batchSize));
+        settings.setProcessor(processor);
 
-        try (InputStream in = new BufferedInputStream(Files.newInputStream(input), 16 * 1024 * 1024);
-             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
             new CsvParser(settings).parse(reader); // streaming
         }
     }
 
+    /** Same contract as {@link #parseCsvStreaming}, but rows are decoded straight from the raw bytes. */
+    public static void parseCsvBytes(Path input,
+                                     CampaignDictionary dictionary,
+                                     BlockingQueue<RowBatch>[] queues,
+                                     int shards,
+                                     int batchSize) throws IOException {
+        parseCsvBytes(input, dictionary, queues, shards, batchSize, null);
+    }
+
+    public static void parseCsvBytes(Path input,
+                                     CampaignDictionary dictionary,
+                                     BlockingQueue<RowBatch>[] queues,
+                                     int shards,
+                                     int batchSize,
+                                     BatchPool batches) throws IOException {
+        parseCsvBytes(input, new BatchDispatchRowProcessor(dictionary, queues, shards, batchSize, batches));
+    }
+
+    public static void parseCsvBytes(Path input, BatchDispatchRowProcessor processor) throws IOException {
+        try (InputStream in = CompressedInput.open(input)) {
+            parseCsvBytes(in, processor);
+        }
+    }
+
+    public static void parseCsvBytes(InputStream in, BatchDispatchRowProcessor processor) throws IOException {
+        new CsvByteScanner().scan(in, 16 * 1024 * 1024, true, processor);
+        processor.flushAll();
+    }
+
     static long usedMemoryBytes() {
         Runtime rt = Runtime.getRuntime();
         return rt.totalMemory() - rt.freeMemory();
@@ -0,0 +1,352 @@
+package org.example.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+import org.example.model.Result;
+import org.example.util.CompressedInput;
+import org.example.util.CsvChunker;
+import org.example.util.InputFiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the shard aggregates resident and answers queries over HTTP while new rows keep arriving.
+ * <p>
+ * One ingest thread polls the --input spec (and paths added with POST /ingest): new files are parsed
+ * whole, grown files from where the last poll stopped (complete lines only, like --incremental).
+ * Each poll's rows are aggregated into delta tables, merged into copies of the touched shards and
+ * published as a new immutable {@link Snapshot}. Queries run on their own threads against whatever
+ * snapshot is current, so they never wait for ingestion and never see a half-merged poll.
+ * <pre>
+ *   GET  /top?metric=ctr&amp;k=10     top-K of one metric
+ *   GET  /campaign?id=CMP00001     totals of one campaign
+ *   GET  /stats                    snapshot version, campaigns, ingested bytes per file
+ *   POST /ingest?path=more/*.csv   adds an input spec, polled right away
+ * </pre>
+ */
+public class AggregatorServer implements Closeable {
+
+    // largest k a client may ask for, and ranked lists kept per snapshot
+    static final int MAX_K = 10_000;
+    private static final int MAX_CACHED_RANKINGS = 64;
+
+    /**
+     * Published state; its tables are never modified again. Ranked lists are cached per "metric/k" with
+     * the snapshot, so a list ranked from an older snapshot can never be served for a newer one.
+     */
+    record Snapshot(long version, AggTable[] shards, Map<Path, Long> offsets, Map<String, List<Result>> rankings) {
+
+        Snapshot(long version, AggTable[] shards, Map<Path, Long> offsets) {
+            this(version, shards, offsets, new ConcurrentHashMap<>());
+        }
+    }
+
+    private final Args args;
+    private final int shards;
+    private final CampaignDictionary dictionary = new CampaignDictionary();
+    private final CopyOnWriteArrayList<String> specs = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService ingest = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ingest");
+        t.setDaemon(true);
+        return t;
+    });
+    private final HttpServer http;
+
+    // bytes of each file already aggregated; ingest thread only
+    private final Map<Path, Long> offsets = new LinkedHashMap<>();
+    private volatile Snapshot snapshot;
+
+    public AggregatorServer(Args args, int port) throws IOException {
+        this.args = args;
+        this.shards = args.getShards();
+        this.snapshot = new Snapshot(0, AggTable.newShards(shards), Map.of());
+        specs.add(args.getInputSpec());
+
+        http = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        http.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        http.createContext("/top", this::handle);
+        http.createContext("/campaign", this::handle);
+        http.createContext("/stats", this::handle);
+        http.createContext("/ingest", this::handle);
+    }
+
+    /** Loads the inputs, then serves and polls every {@code pollMillis} until closed. */
+    public void start(long pollMillis) throws Exception {
+        poll();
+        http.start();
+        ingest.scheduleWithFixedDelay(this::pollLogged, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        http.stop(0);
+        ingest.shutdownNow();
+    }
+
+    // ======== Ingest ========
+
+    /** Runs one poll on the ingest thread and waits for it. */
+    void pollNow() throws Exception {
+        ingest.submit(() -> {
+            poll();
+            return null;
+        }).get();
+    }
+
+    private void pollLogged() {
+        try {
+            poll();
+        } catch (Exception e) {
+            System.err.println("Ingest failed: " + e);
+        }
+    }
+
+    private void poll() throws Exception {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String spec : specs) {
+            try {
+                files.addAll(InputFiles.resolve(spec));
+            } catch (IllegalArgumentException | UncheckedIOException e) {
+                // a directory or glob may be empty for now
+            }
+        }
+
+        // offsets move only with the deltas: a failing file later in the poll drops the whole poll
+        List<AggTable[]> deltas = new ArrayList<>();
+        Map<Path, Long> staged = new LinkedHashMap<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            long from = offsets.getOrDefault(file, 0L);
+            if (size == from) continue;
+            if (size < from) {
+                System.err.println(file + " shrank below " + from + " bytes; ignored until it grows again");
+                continue;
+            }
+
+            if (CompressedInput.isCompressed(file)) {
+                // cannot be resumed at a byte offset: read once, later growth is ignored
+                if (from > 0) continue;
+                deltas.add(MmapCsvIngest.parse(List.of(file), dictionary, args.getThreads(), shards, null,
+                        args.getDates(), false));
+                staged.put(file, size);
+                continue;
+            }
+            long to;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                to = CsvChunker.lastLineEnd(ch, from, size);
+            }
+            if (to == from) continue;
+            deltas.add(MmapCsvIngest.parse(file, from, to, dictionary, args.getThreads(), shards, args.getDates()));
+            staged.put(file, to);
+        }
+        if (!deltas.isEmpty()) publish(deltas, staged);
+    }
+
+    // copy-on-write per shard: untouched shards are shared with the previous snapshot
+    private void publish(List<AggTable[]> deltas, Map<Path, Long> newOffsets) {
+        Snapshot current = snapshot;
+        AggTable[] next = current.shards().clone();
+        for (int i = 0; i < shards; i++) {
+            for (AggTable[] delta : deltas) {
+                if (delta[i].size() == 0) continue;
+                if (next[i] == current.shards()[i]) next[i] = next[i].copy();
+                next[i].mergeFrom(delta[i]);
+            }
+        }
+        offsets.putAll(newOffsets);
+        snapshot = new Snapshot(current.version() + 1, next, Map.copyOf(offsets));
+    }
+
+    // ======== HTTP ========
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            if (path.equals("/ingest")) {
+                if (!method.equals("POST")) {
+                    respond(ex, 405, error("use POST"));
+                } else if (q.get("path") == null) {
+                    respond(ex, 400, error("missing path"));
+                } else {
+                    specs.addIfAbsent(q.get("path"));
+                    ingest.execute(this::pollLogged);
+                    respond(ex, 202, "{\"accepted\":" + string(q.get("path")) + "}");
+                }
+            } else if (!method.equals("GET")) {
+                respond(ex, 405, error("use GET"));
+            } else if (path.equals("/top")) {
+                top(ex, q);
+            } else if (path.equals("/campaign")) {
+                campaign(ex, q);
+            } else if (path.equals("/stats")) {
+                stats(ex);
+            } else {
+                respond(ex, 404, error("unknown path"));
+            }
+        } catch (RuntimeException e) {
+            respond(ex, 500, error(e.toString()));
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void top(HttpExchange ex, Map<String, String> q) throws IOException {
+        Metric metric;
+        int k;
+        try {
+            metric = Metric.valueOf(q.getOrDefault("metric", "ctr").toUpperCase(Locale.ROOT));
+            k = Integer.parseInt(q.getOrDefault("k", Integer.toString(args.getTopK())));
+        } catch (IllegalArgumentException e) {
+            respond(ex, 400, error("bad metric or k"));
+            return;
+        }
+        if (k <= 0 || k > MAX_K) {
+            respond(ex, 400, error("k must be 1.." + MAX_K));
+            return;
+        }
+        // more than there are campaigns ranks the same list; one cache entry for all such k
+        int limit = Math.max(1, Math.min(k, dictionary.size()));
+
+        Snapshot s = snapshot;
+        String key = metric + "/" + limit;
+        Map<String, List<Result>> rankings = s.rankings();
+        List<Result> top = rankings.get(key);
+        try {
+            if (top == null) {
+                top = new RankingEngine(limit, List.of(metric), args.getMinImpressions(), args.getMinClicks())
+                        .rank(s.shards(), dictionary).get(metric);
+                // clients choose k: beyond a bound, lists are ranked per request instead of kept
+                if (rankings.size() < MAX_CACHED_RANKINGS) rankings.putIfAbsent(key, top);
+            }
+        } catch (RuntimeException e) {
+            respond(ex, 500, error("ranking failed: " + e));
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{\"version\":").append(s.version())
+                .append(",\"metric\":").append(string(metric.name().toLowerCase(Locale.ROOT)))
+                .append(",\"results\":[");
+        for (int i = 0; i < top.size(); i++) {
+            if (i > 0) sb.append(',');
+            result(sb, top.get(i));
+        }
+        respond(ex, 200, sb.append("]}").toString());
+    }
+
+    private void campaign(HttpExchange ex, Map<String, String> q) throws IOException {
+        String name = q.get("id");
+        if (name == null) {
+            respond(ex, 400, error("missing id"));
+            return;
+        }
+        Snapshot s = snapshot;
+        int id = dictionary.find(name);
+        AggTable t = id < 0 ? null : s.shards()[id % shards];
+        int slot = t == null ? -1 : t.find(id);
+        if (slot < 0) {
+            respond(ex, 404, error("unknown campaign"));
+            return;
+        }
+        StringBuilder sb = new StringBuilder("{\"version\":").append(s.version()).append(",\"result\":");
+        result(sb, new Result(name, t.impressionsAt(slot), t.clicksAt(slot), t.spendAt(slot), t.conversionsAt(slot)));
+        respond(ex, 200, sb.append('}').toString());
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        Snapshot s = snapshot;
+        int campaigns = 0;
+        for (AggTable t : s.shards()) campaigns += t.size();
+        StringBuilder sb = new StringBuilder("{\"version\":").append(s.version())
+                .append(",\"campaigns\":").append(campaigns).append(",\"files\":{");
+        boolean first = true;
+        for (Map.Entry<Path, Long> e : s.offsets().entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(string(e.getKey().toString())).append(':').append(e.getValue());
+        }
+        respond(ex, 200, sb.append("}}").toString());
+    }
+
+    private static void result(StringBuilder sb, Result r) {
+        sb.append("{\"campaign_id\":").append(string(r.getCampaignId()))
+                .append(",\"impressions\":").append(r.getTotalImpressions())
+                .append(",\"clicks\":").append(r.getTotalClicks())
+                .append(",\"spend\":").append(String.format(Locale.US, "%.2f", r.getTotalSpend()))
+                .append(",\"conversions\":").append(r.getTotalConversions())
+                .append(",\"ctr\":").append(String.format(Locale.US, "%.7f", r.getCtr()))
+                .append(",\"cpa\":").append(r.getCpa() == null ? "null" : String.format(Locale.US, "%.2f", r.getCpa()))
+                .append('}');
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + string(message) + "}";
+    }
+
+    private static String string(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    private static void respond(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DailyKey;
+import org.example.model.DateRange;
+import org.example.util.CompressedInput;
+import org.example.util.ConvertUtil;
+import org.example.util.CsvByteScanner;
+import org.example.util.FileFingerprint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * The parsed rows of one or more CSV inputs as a memory-mappable column file, so repeated runs
+ * over the same data skip CSV parsing entirely.
+ * <p>
+ * Layout (little-endian): magic "AGGCOL01", version, input count and per input its size, mtime, a
+ * {@link FileFingerprint#sample} and a CRC32C of all its bytes, row count, the campaign ids in
+ * dictionary order (int length, UTF-8 bytes), a CRC32C per column, and a CRC32 of that header. Then
+ * six columns, each 64-byte aligned: campaign (int, index into the ids), date (int, epoch day),
+ * impressions, clicks (long), spend (double), conversions (long).
+ * <p>
+ * The cache is rejected when an input's size, mtime or sample differ or the file is not as long as
+ * its columns; opened with {@code verify}, also when an input's full CRC or a column's CRC differs.
+ */
+public class ColumnarCache {
+    private static final long MAGIC = 0x41474743_4F4C3031L; // "AGGCOL01"
+    private static final int VERSION = 3;
+    private static final int ALIGN = 64;
+    // bytes per row of each column
+    private static final int[] WIDTHS = {4, 4, 8, 8, 8, 8};
+    // rows per mapping: keeps every mapped column region well under the 2 GB MappedByteBuffer limit
+    private static final int SEGMENT_ROWS = 1 << 24;
+    // rows copied out of the mapping per step of the aggregation loop
+    static final int BLOCK_ROWS = 8192;
+
+    private final Path file;
+    private final long rows;
+    private final String[] campaignIds;
+    private final long[] columnOffsets;
+
+    private ColumnarCache(Path file, long rows, String[] campaignIds, long[] columnOffsets) {
+        this.file = file;
+        this.rows = rows;
+        this.campaignIds = campaignIds;
+        this.columnOffsets = columnOffsets;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public int campaigns() {
+        return campaignIds.length;
+    }
+
+    // ======== Open ========
+
+    /** Opens the cache for {@code inputs} without the full checksums, see {@link #open(Path, List, boolean)}. */
+    public static ColumnarCache open(Path file, List<Path> inputs) throws IOException {
+        return open(file, inputs, false);
+    }
+
+    /**
+     * Opens the cache for {@code inputs}. Returns null when there is no cache file; throws
+     * IllegalStateException when it is unreadable or was built from different input files. With
+     * {@code verify} every input and column is read once more and checked against its full CRC32C.
+     */
+    public static ColumnarCache open(Path file, List<Path> inputs, boolean verify) throws IOException {
+        if (!Files.exists(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(ch.size(), 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+            read(ch, head, 0);
+            int headerLength = headerLength(head);
+            ByteBuffer buf = headerLength <= head.capacity() ? head
+                    : read(ch, ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN), 0);
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 0, headerLength - 8);
+            if (crc.getValue() != buf.getLong(headerLength - 8)) {
+                throw new IllegalStateException("cache header checksum mismatch");
+            }
+            buf.position(16);
+            buf.limit(headerLength - 8);
+
+            int count = buf.getInt();
+            if (count != inputs.size()) throw new IllegalStateException("cache was built from " + count + " inputs");
+            for (Path input : inputs) {
+                long size = buf.getLong(), mtime = buf.getLong(), sample = buf.getLong(), content = buf.getLong();
+                try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+                    if (in.size() != size || Files.getLastModifiedTime(input).toMillis() != mtime
+                            || FileFingerprint.sample(in, size) != sample
+                            || verify && FileFingerprint.range(in, 0, size) != content) {
+                        throw new IllegalStateException(input.getFileName() + " changed");
+                    }
+                }
+            }
+            long rows = buf.getLong();
+            String[] ids = new String[buf.getInt()];
+            for (int i = 0; i < ids.length; i++) {
+                byte[] id = new byte[buf.getInt()];
+                buf.get(id);
+                ids[i] = new String(id, StandardCharsets.UTF_8);
+            }
+
+            long[] columnCrcs = new long[WIDTHS.length];
+            for (int c = 0; c < columnCrcs.length; c++) columnCrcs[c] = buf.getLong();
+
+            long[] offsets = columnOffsets(headerLength, rows);
+            if (ch.size() != offsets[offsets.length - 1]) throw new IllegalStateException("cache truncated");
+            for (int c = 0; verify && c < WIDTHS.length; c++) {
+                if (columnCrc(ch, offsets[c], WIDTHS[c] * rows) != columnCrcs[c]) {
+                    throw new IllegalStateException("cache column " + c + " checksum mismatch");
+                }
+            }
+            return new ColumnarCache(file, rows, ids, offsets);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalStateException("cache truncated");
+        }
+    }
+
+    private static int headerLength(ByteBuffer head) {
+        if (head.limit() < 16 || head.getLong(0) != MAGIC) throw new IllegalStateException("not a cache file");
+        if (head.getInt(8) != VERSION) throw new IllegalStateException("unsupported cache version " + head.getInt(8));
+        int length = head.getInt(12);
+        if (length < 8 + 4 + 4 + 4 + 8 + 4 + 8 * WIDTHS.length + 8) throw new IllegalStateException("cache truncated");
+        return length;
+    }
+
+    // CRC32C over a mapping of the column, 1 GB at a time
+    private static long columnCrc(FileChannel ch, long pos, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long done = 0; done < length; ) {
+            long n = Math.min(1 << 30, length - done);
+            crc.update(ch.map(FileChannel.MapMode.READ_ONLY, pos + done, n));
+            done += n;
+        }
+        return crc.getValue();
+    }
+
+    private static ByteBuffer read(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    // start of each column plus the end of the file
+    private static long[] columnOffsets(long headerLength, long rows) {
+        long[] offsets = new long[WIDTHS.length + 1];
+        long pos = headerLength;
+        for (int c = 0; c < WIDTHS.length; c++) {
+            offsets[c] = pos = align(pos);
+            pos += WIDTHS[c] * rows;
+        }
+        offsets[WIDTHS.length] = pos;
+        return offsets;
+    }
+
+    private static long align(long pos) {
+        return (pos + ALIGN - 1) & -ALIGN;
+    }
+
+    // ======== Build ========
+
+    /**
+     * Parses {@code inputs} once and writes their rows to {@code file} (replaced atomically). Each input's
+     * size, mtime and sample are taken before it is read and only that many bytes are parsed, so rows
+     * appended meanwhile are not in the cache and the next open sees the input changed.
+     */
+    public static ColumnarCache build(Path file, List<Path> inputs) throws IOException {
+        CampaignDictionary dictionary = new CampaignDictionary();
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        ColumnWriter[] columns = new ColumnWriter[WIDTHS.length];
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new ColumnWriter(Files.createTempFile(dir, "column", ".tmp"));
+            }
+
+            long[] rows = new long[1];
+            CsvByteScanner.RowHandler writer = (buf, f) -> {
+                columns[0].putInt(dictionary.idOf(buf, f[0], f[1]));
+                columns[1].putInt(ConvertUtil.parseEpochDay(buf, f[2], f[3]));
+                columns[2].putLong(ConvertUtil.parseLong(buf, f[4], f[5]));
+                columns[3].putLong(ConvertUtil.parseLong(buf, f[6], f[7]));
+                columns[4].putDouble(ConvertUtil.parseDouble(buf, f[8], f[9]));
+                columns[5].putLong(ConvertUtil.parseLong(buf, f[10], f[11]));
+                rows[0]++;
+            };
+            long[][] inputInfo = new long[inputs.size()][];
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+                    long mtime = Files.getLastModifiedTime(input).toMillis();
+                    long size = ch.size();
+                    long sample = FileFingerprint.sample(ch, size);
+                    long content;
+                    if (CompressedInput.isCompressed(input)) {
+                        // decoded from the whole file: a change while reading shows in the mtime
+                        content = FileFingerprint.range(ch, 0, size);
+                        try (InputStream in = CompressedInput.open(input)) {
+                            new CsvByteScanner().scan(in, 16 * 1024 * 1024, true, writer);
+                        }
+                    } else {
+                        // the bytes parsed are the bytes hashed: no second pass over the input
+                        CRC32C crc = new CRC32C();
+                        try (InputStream in = new CheckedInputStream(prefix(ch, size), crc)) {
+                            new CsvByteScanner().scan(in, 16 * 1024 * 1024, true, writer);
+                        }
+                        content = crc.getValue();
+                    }
+                    inputInfo[i] = new long[]{size, mtime, sample, content};
+                }
+            }
+
+            long[] crcs = new long[columns.length];
+            for (int c = 0; c < columns.length; c++) crcs[c] = columns[c].finishCrc();
+            byte[] header = header(inputInfo, rows[0], dictionary, crcs);
+            long[] offsets = columnOffsets(header.length, rows[0]);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(ByteBuffer.wrap(header));
+                for (int c = 0; c < columns.length; c++) {
+                    FileChannel column = columns[c].finish();
+                    long pos = offsets[c], end = pos + column.size();
+                    // zero padding up to the aligned column start is implicit: writes past the end fill the gap
+                    for (long n = 0; pos < end; pos += n) {
+                        n = column.transferTo(pos - offsets[c], end - pos, out.position(pos));
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            String[] ids = new String[dictionary.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = dictionary.name(i);
+            return new ColumnarCache(file, rows[0], ids, offsets);
+        } finally {
+            for (ColumnWriter c : columns) {
+                if (c != null) c.delete();
+            }
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // the bytes [0, length) of the channel, however far the file has grown since
+    private static InputStream prefix(FileChannel ch, long length) {
+        return new InputStream() {
+            private long pos;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (pos >= length) return -1;
+                int n = ch.read(ByteBuffer.wrap(b, off, (int) Math.min(len, length - pos)), pos);
+                if (n > 0) pos += n;
+                return n;
+            }
+        };
+    }
+
+    // per input: size, mtime, sample, content CRC
+    private static byte[] header(long[][] inputs, long rows, CampaignDictionary dictionary, long[] columnCrcs) {
+        byte[][] ids = new byte[dictionary.size()][];
+        int length = 8 + 4 + 4 + 4 + 32 * inputs.length + 8 + 4 + 8 * columnCrcs.length + 8;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.name(i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + ids[i].length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putLong(MAGIC).putInt(VERSION).putInt(length).putInt(inputs.length);
+        for (long[] input : inputs) {
+            for (long v : input) buf.putLong(v);
+        }
+        buf.putLong(rows).putInt(ids.length);
+        for (byte[] id : ids) buf.putInt(id.length).put(id);
+        for (long c : columnCrcs) buf.putLong(c);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, length - 8);
+        buf.putLong(crc.getValue());
+        return buf.array();
+    }
+
+    // one column spooled to a temp file through a direct little-endian buffer
+    private static final class ColumnWriter {
+        private final Path path;
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+
+        ColumnWriter(Path path) throws IOException {
+            this.path = path;
+            this.ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void putInt(int v) {
+            if (buf.remaining() < 4) flush();
+            buf.putInt(v);
+        }
+
+        void putLong(long v) {
+            if (buf.remaining() < 8) flush();
+            buf.putLong(v);
+        }
+
+        void putDouble(double v) {
+            if (buf.remaining() < 8) flush();
+            buf.putDouble(v);
+        }
+
+        /** Flushes the column; returns the CRC32C of all its bytes. */
+        long finishCrc() {
+            flush();
+            return crc.getValue();
+        }
+
+        FileChannel finish() {
+            flush();
+            return ch;
+        }
+
+        private void flush() {
+            buf.flip();
+            crc.update(buf.duplicate());
+            try {
+                while (buf.hasRemaining()) ch.write(buf);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            buf.clear();
+        }
+
+        void delete() throws IOException {
+            ch.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // ======== Scan ========
+
+    /** Visits rows block by block; column arrays are only valid for the first {@code n} entries. */
+    public interface BlockVisitor {
+        void block(int n, int[] campaign, int[] date, long[] impressions, long[] clicks, double[] spend, long[] conversions);
+    }
+
+    /**
+     * Aggregates every row into {@code shards} tables keyed by {@code dictionary} ids: {@code threads}
+     * workers each take an equal row range into their own tables, merged shard-wise at the end.
+     */
+    public AggTable[] aggregate(CampaignDictionary dictionary, int threads, int shards)
+            throws IOException, InterruptedException {
+        return aggregate(dictionary, threads, shards, DateRange.ALL, false);
+    }
+
+    /** Same, restricted to {@code dates}; with {@code daily} the tables are keyed by {@link DailyKey}. */
+    public AggTable[] aggregate(CampaignDictionary dictionary, int threads, int shards, DateRange dates,
+                                boolean daily) throws IOException, InterruptedException {
+        int[] remap = new int[campaignIds.length];
+        for (int i = 0; i < remap.length; i++) remap[i] = dictionary.idOf(campaignIds[i]);
+
+        AggTable[][] workerShards = new AggTable[threads][];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                AggTable[] tables = workerShards[w] = AggTable.newShards(shards);
+                long from = rows * w / threads, to = rows * (w + 1) / threads;
+                tasks.add(pool.submit(() -> {
+                    scan(from, to, (n, campaign, date, imp, clk, sp, conv) -> {
+                        for (int i = 0; i < n; i++) {
+                            if (!dates.contains(date[i])) continue;
+                            int id = remap[campaign[i]];
+                            tables[id % shards].add(daily ? DailyKey.of(id, date[i]) : id, imp[i], clk[i], sp[i], conv[i]);
+                        }
+                    });
+                    return null;
+                }));
+            }
+            MmapCsvIngest.await(tasks);
+            return MmapCsvIngest.mergeShards(pool, workerShards);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Streams rows [from, to) through {@code visitor} in blocks of {@link #BLOCK_ROWS}. Campaign
+     * values are indices into this cache's ids, see {@link #campaignId(int)}.
+     */
+    public void scan(long from, long to, BlockVisitor visitor) throws IOException {
+        int[] campaign = new int[BLOCK_ROWS], date = new int[BLOCK_ROWS];
+        long[] imp = new long[BLOCK_ROWS], clk = new long[BLOCK_ROWS], conv = new long[BLOCK_ROWS];
+        double[] sp = new double[BLOCK_ROWS];
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long seg = from; seg < to; seg += SEGMENT_ROWS) {
+                int segRows = (int) Math.min(SEGMENT_ROWS, to - seg);
+                IntBuffer campaignCol = map(ch, 0, seg, segRows).asIntBuffer();
+                IntBuffer dateCol = map(ch, 1, seg, segRows).asIntBuffer();
+                LongBuffer impCol = map(ch, 2, seg, segRows).asLongBuffer();
+                LongBuffer clkCol = map(ch, 3, seg, segRows).asLongBuffer();
+                DoubleBuffer spCol = map(ch, 4, seg, segRows).asDoubleBuffer();
+                LongBuffer convCol = map(ch, 5, seg, segRows).asLongBuffer();
+                for (int done = 0; done < segRows; ) {
+                    int n = Math.min(BLOCK_ROWS, segRows - done);
+                    campaignCol.get(campaign, 0, n);
+                    dateCol.get(date, 0, n);
+                    impCol.get(imp, 0, n);
+                    clkCol.get(clk, 0, n);
+                    spCol.get(sp, 0, n);
+                    convCol.get(conv, 0, n);
+                    visitor.block(n, campaign, date, imp, clk, sp, conv);
+                    done += n;
+                }
+            }
+        }
+    }
+
+    public String campaignId(int index) {
+        return campaignIds[index];
+    }
+
+    private ByteBuffer map(FileChannel ch, int column, long firstRow, int rowCount) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, columnOffsets[column] + WIDTHS[column] * firstRow,
+                (long) WIDTHS[column] * rowCount).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,362 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DailyKey;
+import org.example.model.DateRange;
+import org.example.model.InputFileStats;
+import org.example.util.CompressedInput;
+import org.example.util.ConvertUtil;
+import org.example.util.CsvByteScanner;
+import org.example.util.CsvChunker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Multi-threaded ingest: the input is memory-mapped, split into newline-aligned chunks and every
+ * chunk is parsed straight from bytes by a worker thread into that worker's own shard aggregates. The
+ * per-worker shards are merged shard by shard at the end, so the result has the same layout as the queue pipeline.
+ * <p>
+ * Chunks are split on raw '\n' (see {@link CsvChunker}): a quoted field with a line break that a split
+ * lands in fails the run (see {@link #parseRange}) instead of being parsed as two broken rows.
+ */
+public class MmapCsvIngest {
+    // bytes copied out of the mapping per scan step; grows if a single row is longer
+    static final int WINDOW = 4 * 1024 * 1024;
+    // a single MappedByteBuffer cannot exceed 2 GB
+    static final long MAP_LIMIT = 1L << 30;
+
+    public static AggTable[] parse(Path input, CampaignDictionary dictionary, int threads, int shards)
+            throws IOException, InterruptedException {
+        return parse(List.of(input), dictionary, threads, shards, null);
+    }
+
+    /**
+     * Parses the rows in bytes [from, to) of {@code input} ({@code to < 0} = end of file). {@code from}
+     * must be a row start; the header is only expected when {@code from == 0}.
+     */
+    public static AggTable[] parse(Path input, long from, long to, CampaignDictionary dictionary, int threads,
+                                   int shards) throws IOException, InterruptedException {
+        return parse(input, from, to, dictionary, threads, shards, DateRange.ALL);
+    }
+
+    public static AggTable[] parse(Path input, long from, long to, CampaignDictionary dictionary, int threads,
+                                   int shards, DateRange dates) throws IOException, InterruptedException {
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] bounds = CsvChunker.split(ch, from, to < 0 ? ch.size() : to, threads);
+            List<Chunk> chunks = new ArrayList<>();
+            for (int c = 0; c < threads; c++) {
+                chunks.add(new Chunk(0, bounds[c], bounds[c + 1], c == 0 && from == 0, false));
+            }
+            AggTable[][] workerShards = new AggTable[threads][];
+            scanChunks(List.of(input), List.of(ch), chunks, null, threads,
+                    w -> new ChunkAggregator(dictionary, workerShards[w] = AggTable.newShards(shards), dates, false,
+                            null));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                return mergeShards(pool, workerShards);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Several inputs (each with its own header): every file is split into chunks in proportion to
+     * its size and {@code threads} workers pull chunks from all files, so small and large files are
+     * parsed concurrently. A compressed file is one chunk, streamed through {@link CompressedInput}.
+     * Per-file size, rows and wall time go to {@code stats} when it is not null.
+     */
+    public static AggTable[] parse(List<Path> inputs, CampaignDictionary dictionary, int threads, int shards,
+                                   List<InputFileStats> stats) throws IOException, InterruptedException {
+        return parse(inputs, dictionary, threads, shards, stats, DateRange.ALL, false);
+    }
+
+    /**
+     * Only rows within {@code dates} are aggregated; with {@code daily} the tables are keyed by
+     * {@link DailyKey} (campaign, day) instead of the campaign id.
+     */
+    public static AggTable[] parse(List<Path> inputs, CampaignDictionary dictionary, int threads, int shards,
+                                   List<InputFileStats> stats, DateRange dates, boolean daily)
+            throws IOException, InterruptedException {
+        return parse(inputs, dictionary, threads, shards, stats, dates, daily, null);
+    }
+
+    /**
+     * With a {@code spiller}, every worker table that reaches the budget is spilled, and so are the
+     * remaining entries at the end; the returned tables are empty and the totals are in the runs.
+     */
+    public static AggTable[] parse(List<Path> inputs, CampaignDictionary dictionary, int threads, int shards,
+                                   List<InputFileStats> stats, DateRange dates, boolean daily, ShardSpiller spiller)
+            throws IOException, InterruptedException {
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            InputFileStats[] fileStats = new InputFileStats[inputs.size()];
+            List<Chunk> chunks = chunks(inputs, channels, threads, fileStats);
+            AggTable[][] workerShards = new AggTable[threads][];
+            scanChunks(inputs, channels, chunks, fileStats, threads,
+                    w -> new ChunkAggregator(dictionary, workerShards[w] = AggTable.newShards(shards), dates, daily,
+                            spiller));
+            if (stats != null) stats.addAll(Arrays.asList(fileStats));
+            if (spiller != null) return AggTable.newShards(shards);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                return mergeShards(pool, workerShards);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            for (FileChannel ch : channels) ch.close();
+        }
+    }
+
+    /**
+     * Runs the row handlers of {@code threads} workers (one per worker, from {@code workers}) over
+     * all {@code inputs}, split into chunks as {@link #parse(List, CampaignDictionary, int, int, List)}
+     * does; every handler only ever sees its own worker's rows.
+     */
+    public static void scan(List<Path> inputs, int threads, List<InputFileStats> stats,
+                            IntFunction<? extends ChunkWorker> workers) throws IOException, InterruptedException {
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            InputFileStats[] fileStats = new InputFileStats[inputs.size()];
+            List<Chunk> chunks = chunks(inputs, channels, threads, fileStats);
+            scanChunks(inputs, channels, chunks, fileStats, threads, workers);
+            if (stats != null) stats.addAll(Arrays.asList(fileStats));
+        } finally {
+            for (FileChannel ch : channels) ch.close();
+        }
+    }
+
+    /** Row handler of one ingest worker thread. */
+    public interface ChunkWorker extends CsvByteScanner.RowHandler {
+        /** Rows seen so far, for the per-file stats. */
+        long rows();
+
+        /** Called on the worker's thread once no chunks are left. */
+        default void finish() {
+        }
+    }
+
+    // opens every input (into channels, closed by the caller) and splits plain ones in proportion to their size
+    private static List<Chunk> chunks(List<Path> inputs, List<FileChannel> channels, int threads,
+                                      InputFileStats[] fileStats) throws IOException {
+        long total = 0;
+        for (Path p : inputs) {
+            FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+            channels.add(ch);
+            total += ch.size();
+        }
+
+        List<Chunk> chunks = new ArrayList<>();
+        int compressed = 0;
+        for (int f = 0; f < inputs.size(); f++) {
+            FileChannel ch = channels.get(f);
+            fileStats[f] = new InputFileStats(inputs.get(f), ch.size());
+            if (CompressedInput.isCompressed(inputs.get(f))) {
+                // cannot be split or mapped: one worker streams it while its own thread inflates;
+                // queued first because it is the longest task
+                chunks.add(compressed++, new Chunk(f, 0, ch.size(), true, true));
+                continue;
+            }
+            int parts = (int) Math.max(1, Math.round((double) threads * ch.size() / Math.max(total, 1)));
+            long[] bounds = CsvChunker.split(ch, 0, ch.size(), parts);
+            for (int c = 0; c < parts; c++) chunks.add(new Chunk(f, bounds[c], bounds[c + 1], c == 0, false));
+        }
+        return chunks;
+    }
+
+    // a newline-aligned byte range of one input; header = the range starts with the file's header row;
+    // compressed = the whole (compressed) file, decoded as a stream
+    private record Chunk(int file, long from, long to, boolean header, boolean compressed) {
+    }
+
+    private static void scanChunks(List<Path> inputs, List<FileChannel> channels, List<Chunk> chunks,
+                                   InputFileStats[] fileStats, int threads,
+                                   IntFunction<? extends ChunkWorker> workers) throws IOException, InterruptedException {
+
+        AtomicInteger next = new AtomicInteger();
+        // a chunk that starts inside a quoted field fails on rows its predecessor's failure explains,
+        // so the failure of the earliest chunk is the one reported
+        RuntimeException[] failures = new RuntimeException[chunks.size()];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                // every worker handles all the chunks it takes with its own handler
+                ChunkWorker worker = workers.apply(w);
+                tasks.add(pool.submit(() -> {
+                    for (int i; (i = next.getAndIncrement()) < chunks.size(); ) {
+                        Chunk c = chunks.get(i);
+                        long t0 = System.nanoTime();
+                        long rows0 = worker.rows();
+                        try {
+                            if (c.compressed()) {
+                                try (InputStream in = CompressedInput.open(inputs.get(c.file()))) {
+                                    new CsvByteScanner().scan(in, WINDOW, true, worker);
+                                }
+                            } else {
+                                parseRange(channels.get(c.file()), c.from(), c.to(), c.header(), worker);
+                            }
+                        } catch (RuntimeException e) {
+                            failures[i] = e;
+                            next.set(chunks.size());
+                            return null;
+                        }
+                        if (fileStats != null) fileStats[c.file()].record(t0, System.nanoTime(), worker.rows() - rows0);
+                    }
+                    worker.finish();
+                    return null;
+                }));
+            }
+            await(tasks);
+            for (RuntimeException e : failures) {
+                if (e != null) throw e;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Folds every worker's shard i into worker 0's shard i on {@code pool}; returns worker 0's tables. */
+    static AggTable[] mergeShards(ExecutorService pool, AggTable[][] workerShards)
+            throws IOException, InterruptedException {
+        // shard i of every worker only ever meets shard i of the others
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < workerShards[0].length; i++) {
+            final int shard = i;
+            tasks.add(pool.submit(() -> {
+                AggTable target = workerShards[0][shard];
+                for (int w = 1; w < workerShards.length; w++) {
+                    target.mergeFrom(workerShards[w][shard]);
+                    workerShards[w][shard] = null;
+                }
+                return null;
+            }));
+        }
+        await(tasks);
+        return workerShards[0];
+    }
+
+    /**
+     * Streams rows of the byte range [from, to) of the mapped file into {@code handler}.
+     * {@code from} must be the start of a row; the first row is skipped when it is the header.
+     * Throws IllegalStateException when {@code to} is short of the end of the file and falls inside a
+     * quoted field (a line break in quotes), as the rest of that row is not in the range.
+     */
+    public static void parseRange(FileChannel ch, long from, long to, boolean skipHeader,
+                                  CsvByteScanner.RowHandler handler) throws IOException {
+        CsvByteScanner scanner = new CsvByteScanner();
+        byte[] buf = new byte[(int) Math.min(WINDOW, Math.max(to - from, 16))];
+        int len = 0;
+        boolean header = skipHeader;
+        // before the end of the file the range ends with a '\n', so only a row in quotes is left over
+        boolean endOfFile = to >= ch.size();
+
+        for (long pos = from; pos < to; ) {
+            long mapLen = Math.min(MAP_LIMIT, to - pos);
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, pos, mapLen);
+            pos += mapLen;
+
+            while (mapped.hasRemaining()) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int n = Math.min(buf.length - len, mapped.remaining());
+                mapped.get(buf, len, n);
+                len += n;
+                boolean last = endOfFile && pos >= to && !mapped.hasRemaining();
+
+                int start = 0;
+                if (header) {
+                    start = CsvByteScanner.skipLine(buf, 0, len);
+                    if (start < 0) {
+                        if (!last) continue;
+                        start = len;
+                    }
+                    header = false;
+                }
+                int consumed = scanner.scan(buf, start, len, last, handler);
+                System.arraycopy(buf, consumed, buf, 0, len - consumed);
+                len -= consumed;
+            }
+        }
+        if (len > 0) {
+            throw new IllegalStateException("quoted field with a line break in the row at byte " + (to - len)
+                    + ": mmap splits the input on line breaks, use --ingest stream or bytes");
+        }
+    }
+
+    static void await(List<Future<?>> tasks) throws IOException, InterruptedException {
+        for (Future<?> f : tasks) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException io) throw io;
+                if (cause instanceof RuntimeException re) throw re;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    static class ChunkAggregator implements ChunkWorker {
+        // schema fixed: campaign_id,date,impressions,clicks,spend,conversions
+        private final CampaignDictionary dictionary;
+        private final AggTable[] shardAggs;
+        private final DateRange dates;
+        private final boolean daily;
+        private final ShardSpiller spiller; // null = tables grow without bound
+        private long rows;
+
+        ChunkAggregator(CampaignDictionary dictionary, AggTable[] shardAggs, DateRange dates, boolean daily,
+                        ShardSpiller spiller) {
+            this.dictionary = dictionary;
+            this.shardAggs = shardAggs;
+            this.dates = dates;
+            this.daily = daily;
+            this.spiller = spiller;
+        }
+
+        @Override
+        public void row(byte[] buf, int[] f) {
+            rows++;
+            // the date is compared as bytes: a filtered-out row costs no number parsing
+            if (!dates.isAll() && !dates.contains(buf, f[2], f[3])) return;
+            int id = dictionary.idOf(buf, f[0], f[1]);
+            long imp = ConvertUtil.parseLong(buf, f[4], f[5]);
+            long clk = ConvertUtil.parseLong(buf, f[6], f[7]);
+            double sp = ConvertUtil.parseDouble(buf, f[8], f[9]);
+            long conv = ConvertUtil.parseLong(buf, f[10], f[11]);
+
+            long key = daily ? DailyKey.of(id, ConvertUtil.parseEpochDay(buf, f[2], f[3])) : id;
+            int shard = id % shardAggs.length;
+            shardAggs[shard].add(key, imp, clk, sp, conv);
+            if (spiller != null) spiller.spillIfFull(shard, shardAggs[shard]);
+        }
+
+        @Override
+        public long rows() {
+            return rows;
+        }
+
+        // with a spiller, what is left in the tables becomes the last runs
+        @Override
+        public void finish() {
+            if (spiller == null) return;
+            for (int s = 0; s < shardAggs.length; s++) spiller.spill(s, shardAggs[s]);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DateRange;
+import org.example.util.CsvChunker;
+import org.example.util.FileFingerprint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Per-campaign totals of one partition (a newline-aligned byte range) of the input, written by a
+ * {@code --partition i/N} run and combined by {@link #merge}, so N processes on any number of machines
+ * produce the aggregates of one run.
+ * <p>
+ * Layout (big-endian): magic "AGGPART1", version, partition i, partition count N, input size, input
+ * fingerprint ({@link FileFingerprint#sample}, so no process reads more than its own range and two
+ * 64 KB windows), the byte range [from, to), the --from/--to epoch days
+ * ({@link DateRange#fromDay()}), the --daily flag, section count; then per section its entry count,
+ * byte length and CRC32; then the sections. A campaign's section is fixed by a hash of its id bytes, so
+ * section s of every file only ever meets section s of the others. Per entry: id length (int), id bytes
+ * and the four sums.
+ */
+public class PartialAggregate {
+    private static final long MAGIC = 0x41474750_41525431L; // "AGGPART1"
+    private static final int VERSION = 3;
+    // fixed, so processes run with different --threads/--shards still agree
+    static final int SECTIONS = 64;
+    private static final int HEADER_LENGTH = 8 + 4 + 4 + 4 + 8 + 8 + 8 + 8 + 4 + 4 + 1 + 4;
+    private static final int DIRECTORY_ENTRY = 4 + 8 + 8;
+
+    /** The partition header of a file; {@code partition} counts from 1, the days are as in {@link DateRange}. */
+    public record Header(int partition, int partitions, long inputSize, long fingerprint, long from, long to,
+                         int fromDay, int toDay, boolean daily) {
+
+        public DateRange dates() {
+            return DateRange.ofEpochDays(fromDay, toDay);
+        }
+    }
+
+    public static String fileName(int partition, int partitions) {
+        return "part-" + partition + "-of-" + partitions + ".agg";
+    }
+
+    /** Bytes [from, to) of partition {@code partition} (1..partitions) of the file: the same in every process. */
+    public static long[] range(Path input, int partition, int partitions) throws IOException {
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] bounds = CsvChunker.split(ch, 0, ch.size(), partitions);
+            return new long[]{bounds[partition - 1], bounds[partition]};
+        }
+    }
+
+    // ======== Write ========
+
+    /**
+     * Writes the totals of {@code shardAggs} for partition {@code partition} of {@code input}, aggregated
+     * over {@code dates} (per day when {@code daily}); replaced atomically.
+     */
+    public static void write(Path file, Path input, int partition, int partitions, long from, long to,
+                             DateRange dates, boolean daily, AggTable[] shardAggs, CampaignDictionary dictionary)
+            throws IOException {
+        long inputSize, fingerprint;
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            inputSize = ch.size();
+            fingerprint = FileFingerprint.sample(ch, inputSize);
+        }
+
+        ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[SECTIONS];
+        DataOutputStream[] sections = new DataOutputStream[SECTIONS];
+        int[] entries = new int[SECTIONS];
+        for (int s = 0; s < SECTIONS; s++) sections[s] = new DataOutputStream(bytes[s] = new ByteArrayOutputStream());
+        for (AggTable t : shardAggs) {
+            for (int slot = 0; slot < t.capacity(); slot++) {
+                if (!t.isUsed(slot)) continue;
+                byte[] name = dictionary.name((int) t.keyAt(slot)).getBytes(StandardCharsets.UTF_8);
+                int s = section(name, 0, name.length);
+                DataOutputStream out = sections[s];
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(t.impressionsAt(slot));
+                out.writeLong(t.clicksAt(slot));
+                out.writeDouble(t.spendAt(slot));
+                out.writeLong(t.conversionsAt(slot));
+                entries[s]++;
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(partition);
+            out.writeInt(partitions);
+            out.writeLong(inputSize);
+            out.writeLong(fingerprint);
+            out.writeLong(from);
+            out.writeLong(to);
+            out.writeInt(dates.fromDay());
+            out.writeInt(dates.toDay());
+            out.writeBoolean(daily);
+            out.writeInt(SECTIONS);
+            for (int s = 0; s < SECTIONS; s++) {
+                CRC32 crc = new CRC32();
+                crc.update(bytes[s].toByteArray());
+                out.writeInt(entries[s]);
+                out.writeLong(bytes[s].size());
+                out.writeLong(crc.getValue());
+            }
+            for (ByteArrayOutputStream b : bytes) b.writeTo(out);
+        }
+        // a merge in the shared directory never sees a half-written file
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int section(byte[] id, int from, int to) {
+        return CampaignDictionary.hash(id, from, to) & (SECTIONS - 1);
+    }
+
+    // ======== Read ========
+
+    /** Reads the header of a partial file; throws IllegalStateException when it is not one. */
+    public static Header header(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return header(ch, file);
+        }
+    }
+
+    private static Header header(FileChannel ch, Path file) throws IOException {
+        ByteBuffer buf = read(ch, 0, (int) Math.min(HEADER_LENGTH, ch.size()));
+        try {
+            if (buf.getLong() != MAGIC) throw new IllegalStateException(file + " is not a partial aggregate file");
+            int version = buf.getInt();
+            if (version != VERSION) throw new IllegalStateException(file + ": unsupported version " + version);
+            Header h = new Header(buf.getInt(), buf.getInt(), buf.getLong(), buf.getLong(), buf.getLong(), buf.getLong(),
+                    buf.getInt(), buf.getInt(), buf.get() != 0);
+            if (buf.getInt() != SECTIONS) throw new IllegalStateException(file + ": unexpected section count");
+            if (h.partitions() <= 0 || h.partition() < 1 || h.partition() > h.partitions()) {
+                throw new IllegalStateException(file + ": header corrupt");
+            }
+            return h;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException(file + " truncated");
+        }
+    }
+
+    /**
+     * Combines the partial files of all N partitions of one input into {@link #SECTIONS} tables (one per
+     * section, merged by up to {@code threads} threads), interning the ids into {@code dictionary}.
+     * Throws IllegalStateException unless the files are partitions 1..N of the same input, each exactly once,
+     * all written with the same --from/--to and --daily.
+     */
+    public static AggTable[] merge(List<Path> files, CampaignDictionary dictionary, int threads)
+            throws IOException, InterruptedException {
+        if (files.isEmpty()) throw new IllegalStateException("no partial files");
+        List<FileChannel> channels = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, SECTIONS)));
+        try {
+            Header[] byPartition = null;
+            long[][] directories = new long[files.size()][];
+            for (int f = 0; f < files.size(); f++) {
+                FileChannel ch = FileChannel.open(files.get(f), StandardOpenOption.READ);
+                channels.add(ch);
+                Header h = header(ch, files.get(f));
+                if (byPartition == null) byPartition = new Header[h.partitions()];
+                Header first = firstOf(byPartition);
+                if (first != null && (h.partitions() != first.partitions() || h.inputSize() != first.inputSize()
+                        || h.fingerprint() != first.fingerprint())) {
+                    throw new IllegalStateException(files.get(f) + " is a partition of another input or split");
+                }
+                if (first != null && (h.fromDay() != first.fromDay() || h.toDay() != first.toDay()
+                        || h.daily() != first.daily())) {
+                    throw new IllegalStateException(files.get(f) + " was written for dates " + h.dates()
+                            + (h.daily() ? " per day" : "") + ", partition " + first.partition() + " for "
+                            + first.dates() + (first.daily() ? " per day" : "") + ": rerun with the same --from/--to/--daily");
+                }
+                if (byPartition[h.partition() - 1] != null) {
+                    throw new IllegalStateException("partition " + h.partition() + "/" + h.partitions() + " given twice");
+                }
+                byPartition[h.partition() - 1] = h;
+                directories[f] = directory(ch, files.get(f));
+            }
+            for (int p = 0; p < byPartition.length; p++) {
+                if (byPartition[p] == null) {
+                    throw new IllegalStateException("partition " + (p + 1) + "/" + byPartition.length + " is missing");
+                }
+                long expectedFrom = p == 0 ? 0 : byPartition[p - 1].to();
+                if (byPartition[p].from() != expectedFrom) throw new IllegalStateException("partitions do not line up");
+            }
+            Header last = byPartition[byPartition.length - 1];
+            if (last.to() != last.inputSize()) throw new IllegalStateException("partitions do not line up");
+
+            AggTable[] tables = new AggTable[SECTIONS];
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int s = 0; s < SECTIONS; s++) {
+                final int section = s;
+                tasks.add(pool.submit(() -> {
+                    // at least the largest file's entries; grows if campaigns do not repeat across partitions
+                    long entries = 0;
+                    for (long[] dir : directories) entries = Math.max(entries, dir[4 * section]);
+                    AggTable table = new AggTable((int) entries);
+                    for (int f = 0; f < files.size(); f++) {
+                        readSection(channels.get(f), files.get(f), directories[f], section, table, dictionary);
+                    }
+                    tables[section] = table;
+                    return null;
+                }));
+            }
+            MmapCsvIngest.await(tasks);
+            return tables;
+        } finally {
+            pool.shutdown();
+            for (FileChannel ch : channels) ch.close();
+        }
+    }
+
+    private static Header firstOf(Header[] headers) {
+        for (Header h : headers) {
+            if (h != null) return h;
+        }
+        return null;
+    }
+
+    // per section: entries, file offset, length, crc
+    private static long[] directory(FileChannel ch, Path file) throws IOException {
+        ByteBuffer buf = read(ch, HEADER_LENGTH, SECTIONS * DIRECTORY_ENTRY);
+        long[] dir = new long[SECTIONS * 4];
+        long pos = HEADER_LENGTH + (long) SECTIONS * DIRECTORY_ENTRY;
+        try {
+            for (int s = 0; s < SECTIONS; s++) {
+                dir[4 * s] = buf.getInt();
+                dir[4 * s + 1] = pos;
+                dir[4 * s + 2] = buf.getLong();
+                dir[4 * s + 3] = buf.getLong();
+                if (dir[4 * s] < 0 || dir[4 * s + 2] < 0 || dir[4 * s + 2] > Integer.MAX_VALUE) {
+                    throw new IllegalStateException(file + ": header corrupt");
+                }
+                pos += dir[4 * s + 2];
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException(file + " truncated");
+        }
+        if (pos != ch.size()) throw new IllegalStateException(file + " truncated");
+        return dir;
+    }
+
+    private static void readSection(FileChannel ch, Path file, long[] dir, int s, AggTable table,
+                                    CampaignDictionary dictionary) throws IOException {
+        ByteBuffer buf = read(ch, dir[4 * s + 1], (int) dir[4 * s + 2]);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.limit());
+        if (crc.getValue() != dir[4 * s + 3]) throw new IllegalStateException(file + ": checksum mismatch");
+        try {
+            for (long e = 0; e < dir[4 * s]; e++) {
+                int len = buf.getInt();
+                if (len < 0 || len > buf.remaining()) throw new IllegalStateException(file + ": section corrupt");
+                int id = dictionary.idOf(buf.array(), buf.position(), buf.position() + len);
+                buf.position(buf.position() + len);
+                table.add(id, buf.getLong(), buf.getLong(), buf.getDouble(), buf.getLong());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException(file + ": section corrupt");
+        }
+        if (buf.hasRemaining()) throw new IllegalStateException(file + ": section corrupt");
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) >= 0) {
+            // a short read is retried until the end of the file
+        }
+        return buf.flip();
+    }
+}
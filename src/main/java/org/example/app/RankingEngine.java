@@ -0,0 +1,205 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+import org.example.model.Result;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Top-K lists for several metrics in one pass over the aggregates. Every shard table is scanned once
+ * (shards in parallel) into one bounded heap per metric; the per-shard heaps are then merged. Values
+ * are computed from the primitive columns, and a {@link Result} is only built for an entry that
+ * enters a heap. Ties rank by campaign id, so the lists do not depend on scan order.
+ */
+public class RankingEngine {
+    private final int k;
+    private final Metric[] metrics;
+    private final long minImpressions;
+    private final long minClicks;
+
+    public RankingEngine(int k, List<Metric> metrics, long minImpressions, long minClicks) {
+        if (k <= 0) throw new IllegalArgumentException("k must be > 0");
+        this.k = k;
+        this.metrics = metrics.toArray(new Metric[0]);
+        this.minImpressions = minImpressions;
+        this.minClicks = minClicks;
+    }
+
+    public RankingEngine(int k, List<Metric> metrics) {
+        this(k, metrics, 0, 0);
+    }
+
+    /** Per-metric bounded heaps of one part of the aggregates; combined by {@link #merge}. */
+    public static final class Candidates {
+        private final Heap[] heaps;
+
+        private Candidates(Heap[] heaps) {
+            this.heaps = heaps;
+        }
+    }
+
+    /** Best first, one list per requested metric (in request order); shards scanned on the calling thread. */
+    public Map<Metric, List<Result>> rank(AggTable[] shardAggs, CampaignDictionary dictionary) {
+        List<Candidates> perShard = new ArrayList<>();
+        for (AggTable t : shardAggs) perShard.add(rankShard(t, dictionary, null));
+        return merge(perShard);
+    }
+
+    /** Same, with the shards scanned by up to {@code threads} threads. */
+    public Map<Metric, List<Result>> rank(AggTable[] shardAggs, CampaignDictionary dictionary, int threads)
+            throws IOException, InterruptedException {
+        int workers = Math.min(threads, shardAggs.length);
+        if (workers <= 1) return rank(shardAggs, dictionary);
+
+        Candidates[] perShard = new Candidates[shardAggs.length];
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < shardAggs.length; i++) {
+                final int shard = i;
+                tasks.add(pool.submit(() -> perShard[shard] = rankShard(shardAggs[shard], dictionary, null)));
+            }
+            MmapCsvIngest.await(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        return merge(Arrays.asList(perShard));
+    }
+
+    /**
+     * Top-K candidates of one shard table (keyed by campaign id). Campaigns with {@code skip[id]} set
+     * are left out, e.g. ones whose aggregates are still split over several shards; may be null.
+     */
+    public Candidates rankShard(AggTable t, CampaignDictionary dictionary, boolean[] skip) {
+        Heap[] heaps = newHeaps();
+        for (int s = 0; s < t.capacity(); s++) {
+            if (!t.isUsed(s)) continue;
+            long id = t.keyAt(s);
+            if (skip != null && id < skip.length && skip[(int) id]) continue;
+            offer(heaps, id, t.impressionsAt(s), t.clicksAt(s), t.spendAt(s), t.conversionsAt(s), dictionary);
+        }
+        return new Candidates(heaps);
+    }
+
+    /** Candidates among just {@code ids}, each looked up in its home shard {@code id % shards}. */
+    public Candidates rankIds(AggTable[] shardAggs, int[] ids, CampaignDictionary dictionary) {
+        Heap[] heaps = newHeaps();
+        for (int id : ids) {
+            AggTable t = shardAggs[id % shardAggs.length];
+            int slot = t.find(id);
+            if (slot >= 0) {
+                offer(heaps, id, t.impressionsAt(slot), t.clicksAt(slot), t.spendAt(slot), t.conversionsAt(slot),
+                        dictionary);
+            }
+        }
+        return new Candidates(heaps);
+    }
+
+    /**
+     * Candidates of entries fed one at a time (final totals, each campaign once), e.g. from a merge of
+     * spilled runs; {@link Collector#candidates()} hands them to {@link #merge}.
+     */
+    public Collector collector(CampaignDictionary dictionary) {
+        return new Collector(newHeaps(), dictionary);
+    }
+
+    public final class Collector implements AggTable.Visitor {
+        private final Heap[] heaps;
+        private final CampaignDictionary dictionary;
+
+        private Collector(Heap[] heaps, CampaignDictionary dictionary) {
+            this.heaps = heaps;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public void visit(long key, long impressions, long clicks, double spend, long conversions) {
+            offer(heaps, key, impressions, clicks, spend, conversions, dictionary);
+        }
+
+        public Candidates candidates() {
+            return new Candidates(heaps);
+        }
+    }
+
+    /** Final lists from partial candidates that together cover every campaign exactly once. */
+    public Map<Metric, List<Result>> merge(List<Candidates> parts) {
+        Map<Metric, List<Result>> out = new EnumMap<>(Metric.class);
+        for (int m = 0; m < metrics.length; m++) {
+            Heap merged = new Heap(metrics[m], k);
+            for (Candidates c : parts) {
+                for (Result r : c.heaps[m].pq) merged.offer(r);
+            }
+            out.put(metrics[m], merged.sorted());
+        }
+        return out;
+    }
+
+    private Heap[] newHeaps() {
+        Heap[] heaps = new Heap[metrics.length];
+        for (int m = 0; m < metrics.length; m++) heaps[m] = new Heap(metrics[m], k);
+        return heaps;
+    }
+
+    private void offer(Heap[] heaps, long key, long imp, long clk, double sp, long conv,
+                       CampaignDictionary dictionary) {
+        if (imp < minImpressions || clk < minClicks) return;
+        Result r = null;
+        for (Heap h : heaps) {
+            double v = h.metric.value(imp, clk, sp, conv);
+            if (!h.accepts(v)) continue;
+            if (r == null) r = new Result(dictionary.name((int) key), imp, clk, sp, conv);
+            h.offer(r);
+        }
+    }
+
+    // bounded heap of the best k; the head is the worst kept entry
+    private static final class Heap {
+        final Metric metric;
+        final int k;
+        final Comparator<Result> order; // best first
+        final PriorityQueue<Result> pq;
+
+        Heap(Metric metric, int k) {
+            this.metric = metric;
+            this.k = k;
+            Comparator<Result> byValue = Comparator.comparingDouble(metric::value);
+            this.order = (metric.isAscending() ? byValue : byValue.reversed()).thenComparing(Result::getCampaignId);
+            this.pq = new PriorityQueue<>(k + 1, order.reversed());
+        }
+
+        // cheap pre-check on the value alone; equal values still need the tie-break
+        boolean accepts(double v) {
+            if (Double.isNaN(v)) return false;
+            return pq.size() < k || !metric.better(metric.value(pq.peek()), v);
+        }
+
+        void offer(Result r) {
+            if (Double.isNaN(metric.value(r))) return;
+            if (pq.size() < k) {
+                pq.offer(r);
+            } else if (order.compare(r, pq.peek()) < 0) {
+                pq.poll();
+                pq.offer(r);
+            }
+        }
+
+        List<Result> sorted() {
+            List<Result> out = new ArrayList<>(pq);
+            out.sort(order);
+            return out;
+        }
+    }
+}
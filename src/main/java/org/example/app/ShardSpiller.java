@@ -0,0 +1,235 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+import org.example.model.Result;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded-memory aggregation: a shard table that reaches the per-shard budget is written out as a
+ * run of (id, sums) entries sorted by id and cleared, keeping its columns for the next rows. At the
+ * end the runs of every shard are k-way merged, equal ids summed, and each campaign's totals go
+ * straight into the {@link RankingEngine}'s heaps, so no table ever holds more than the budget.
+ * <p>
+ * Runs are keyed by dictionary id, so the {@link CampaignDictionary} (id bytes + ~12 bytes per
+ * campaign) stays resident; the aggregate columns (~53 bytes per campaign) are what is bounded.
+ * Every campaign must only ever be added to its home shard {@code id % shards}.
+ */
+public class ShardSpiller implements Closeable {
+    // key + four sums
+    private static final int ENTRY_BYTES = 40;
+    // per open run while merging, and per spilling thread
+    private static final int BUFFER = 64 * 1024 / ENTRY_BYTES * ENTRY_BYTES;
+
+    private final Path dir;
+    private final int entriesPerTable;
+    private final int tablesPerShard;
+    private final List<List<Path>> runs = new ArrayList<>();
+    private final AtomicInteger runCount = new AtomicInteger();
+    private final AtomicLong spilledEntries = new AtomicLong();
+    private final AtomicLong spillNanos = new AtomicLong();
+
+    /** Runs go to a fresh directory under {@code parent}, removed by {@link #close()}. */
+    public ShardSpiller(Path parent, int shards, long bytesPerShard) throws IOException {
+        this(parent, shards, bytesPerShard, 1);
+    }
+
+    /**
+     * Same, for {@code tablesPerShard} tables of one shard filling at the same time (one per mmap
+     * worker): they share the shard's budget, so each may reach a {@code tablesPerShard}-th of it.
+     */
+    public ShardSpiller(Path parent, int shards, long bytesPerShard, int tablesPerShard) throws IOException {
+        Files.createDirectories(parent);
+        this.dir = Files.createTempDirectory(parent, "spill");
+        this.entriesPerTable = AggTable.entriesWithin(bytesPerShard / tablesPerShard);
+        this.tablesPerShard = tablesPerShard;
+        for (int i = 0; i < shards; i++) runs.add(new ArrayList<>());
+    }
+
+    /** Entries a table may reach before it has to be spilled. */
+    public int entriesPerTable() {
+        return entriesPerTable;
+    }
+
+    /** Spills {@code t} if it has reached the budget. */
+    public void spillIfFull(int shard, AggTable t) {
+        if (t.size() >= entriesPerTable) spill(shard, t);
+    }
+
+    /** Writes the entries of {@code t} (shard {@code shard}) as one sorted run and clears it. */
+    public void spill(int shard, AggTable t) {
+        if (t.size() == 0) return;
+        long t0 = System.nanoTime();
+        long[] keys = new long[t.size()];
+        int n = 0;
+        for (int s = 0; s < t.capacity(); s++) {
+            if (t.isUsed(s)) keys[n++] = t.keyAt(s);
+        }
+        Arrays.sort(keys);
+
+        Path file = dir.resolve("shard" + shard + "-" + runCount.getAndIncrement() + ".run");
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.nativeOrder());
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long key : keys) {
+                int slot = t.find(key);
+                buf.putLong(key)
+                        .putLong(t.impressionsAt(slot))
+                        .putLong(t.clicksAt(slot))
+                        .putDouble(t.spendAt(slot))
+                        .putLong(t.conversionsAt(slot));
+                if (!buf.hasRemaining()) write(out, buf);
+            }
+            write(out, buf);
+        } catch (IOException e) {
+            throw new UncheckedIOException("spill to " + file + " failed", e);
+        }
+        t.clear();
+        List<Path> shardRuns = runs.get(shard);
+        synchronized (shardRuns) {
+            shardRuns.add(file);
+        }
+        spilledEntries.addAndGet(n);
+        spillNanos.addAndGet(System.nanoTime() - t0);
+    }
+
+    /** Merges every shard's runs (shards in parallel on up to {@code threads} threads) into top-K lists. */
+    public Map<Metric, List<Result>> rank(RankingEngine ranking, CampaignDictionary dictionary, int threads)
+            throws IOException, InterruptedException {
+        RankingEngine.Candidates[] perShard = new RankingEngine.Candidates[runs.size()];
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs.size())));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i++) {
+                final int shard = i;
+                tasks.add(pool.submit(() -> {
+                    RankingEngine.Collector collector = ranking.collector(dictionary);
+                    merge(runs.get(shard), collector);
+                    perShard[shard] = collector.candidates();
+                    return null;
+                }));
+            }
+            MmapCsvIngest.await(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        return ranking.merge(Arrays.asList(perShard));
+    }
+
+    /** k-way merge of sorted runs: every id reaches {@code out} once, with its sums over all runs. */
+    static void merge(List<Path> files, AggTable.Visitor out) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>((x, y) -> Long.compare(x.key, y.key));
+        try {
+            for (Path f : files) {
+                Run r = new Run(f);
+                if (r.next()) heap.add(r);
+                else r.close();
+            }
+            while (!heap.isEmpty()) {
+                Run r = heap.poll();
+                long key = r.key, imp = r.imp, clk = r.clk, conv = r.conv;
+                double sp = r.sp;
+                advance(heap, r);
+                while (!heap.isEmpty() && heap.peek().key == key) {
+                    Run same = heap.poll();
+                    imp += same.imp;
+                    clk += same.clk;
+                    sp += same.sp;
+                    conv += same.conv;
+                    advance(heap, same);
+                }
+                out.visit(key, imp, clk, sp, conv);
+            }
+        } finally {
+            for (Run r : heap) r.close();
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+
+    private static void advance(PriorityQueue<Run> heap, Run r) throws IOException {
+        if (r.next()) heap.add(r);
+        else r.close();
+    }
+
+    public int runs() {
+        return runCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "Spill: %d runs, %d entries (%.1f MB) in %.0f ms, budget %d entries per table (%d table%s per shard)",
+                runs(), spilledEntries.get(), spilledEntries.get() * ENTRY_BYTES / 1024.0 / 1024.0, spillNanos.get() / 1e6,
+                entriesPerTable, tablesPerShard, tablesPerShard == 1 ? "" : "s");
+    }
+
+    /** Deletes the run files and their directory. */
+    @Override
+    public void close() throws IOException {
+        for (List<Path> shardRuns : runs) {
+            for (Path f : shardRuns) Files.deleteIfExists(f);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // cursor over one run file: native-order entries, no header, length = entries x 40 bytes
+    private static final class Run implements Closeable {
+        private final FileChannel in;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER).order(ByteOrder.nativeOrder());
+        long key, imp, clk, conv;
+        double sp;
+
+        Run(Path file) throws IOException {
+            in = FileChannel.open(file, StandardOpenOption.READ);
+            buf.limit(0);
+        }
+
+        boolean next() throws IOException {
+            if (!buf.hasRemaining()) {
+                buf.clear();
+                while (buf.hasRemaining() && in.read(buf) >= 0) {
+                    // fill the buffer, so it always ends on an entry boundary
+                }
+                buf.flip();
+                if (!buf.hasRemaining()) return false;
+                if (buf.remaining() % ENTRY_BYTES != 0) throw new IOException("truncated spill run");
+            }
+            key = buf.getLong();
+            imp = buf.getLong();
+            clk = buf.getLong();
+            sp = buf.getDouble();
+            conv = buf.getLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
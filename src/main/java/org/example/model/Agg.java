@@ -11,6 +11,10 @@ public class Agg {
         conversions += conv;
     }
 
+    public void merge(Agg other) {
+        add(other.impressions, other.clicks, other.spend, other.conversions);
+    }
+
     public long getImpressions() {
         return impressions;
     }
@@ -0,0 +1,239 @@
+package org.example.model;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing aggregation table in structure-of-arrays layout: keys and the four running sums
+ * live in parallel primitive columns, so an entry costs ~40 bytes / load factor instead of a
+ * HashMap node + boxed key + Agg object. Linear probing, power-of-two capacity, keys must be >= 0.
+ * Not thread-safe: every shard (or chunk) owns its own table.
+ */
+public class AggTable {
+    public interface Visitor {
+        void visit(long key, long impressions, long clicks, double spend, long conversions);
+    }
+
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] impressions, clicks, conversions;
+    private double[] spend;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+
+    public AggTable() {
+        this(1 << 12);
+    }
+
+    public AggTable(int expectedEntries) {
+        allocate(tableSizeFor(expectedEntries));
+    }
+
+    public static AggTable[] newShards(int shards) {
+        AggTable[] out = new AggTable[shards];
+        for (int i = 0; i < shards; i++) out[i] = new AggTable();
+        return out;
+    }
+
+    public void add(long key, long imp, long clk, double sp, long conv) {
+        int slot = slotOf(key);
+        impressions[slot] += imp;
+        clicks[slot] += clk;
+        spend[slot] += sp;
+        conversions[slot] += conv;
+    }
+
+    /** Returns the slot of {@code key}, inserting an empty entry if it is not present yet. */
+    public int slotOf(long key) {
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return i;
+            if (k == EMPTY) {
+                if (size >= resizeAt) {
+                    grow();
+                    return slotOf(key);
+                }
+                keys[i] = key;
+                size++;
+                return i;
+            }
+        }
+    }
+
+    /** Returns the slot of {@code key}, or -1 when absent. */
+    public int find(long key) {
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return i;
+            if (k == EMPTY) return -1;
+        }
+    }
+
+    /** Removes {@code key} and its sums; returns false when absent. */
+    public boolean remove(long key) {
+        int hole = find(key);
+        if (hole < 0) return false;
+        // backward-shift deletion: pull later entries of the probe run into the hole so lookups stay valid
+        for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                move(j, hole);
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        impressions[hole] = 0;
+        clicks[hole] = 0;
+        spend[hole] = 0;
+        conversions[hole] = 0;
+        size--;
+        return true;
+    }
+
+    public void mergeFrom(AggTable other) {
+        for (int s = 0; s < other.keys.length; s++) {
+            if (other.keys[s] == EMPTY) continue;
+            add(other.keys[s], other.impressions[s], other.clicks[s], other.spend[s], other.conversions[s]);
+        }
+    }
+
+    public void forEach(Visitor v) {
+        for (int s = 0; s < keys.length; s++) {
+            if (keys[s] != EMPTY) v.visit(keys[s], impressions[s], clicks[s], spend[s], conversions[s]);
+        }
+    }
+
+    /** Independent copy with the same layout. */
+    public AggTable copy() {
+        AggTable c = new AggTable(MIN_CAPACITY);
+        c.keys = keys.clone();
+        c.impressions = impressions.clone();
+        c.clicks = clicks.clone();
+        c.spend = spend.clone();
+        c.conversions = conversions.clone();
+        c.mask = mask;
+        c.shift = shift;
+        c.size = size;
+        c.resizeAt = resizeAt;
+        return c;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(impressions, 0);
+        Arrays.fill(clicks, 0);
+        Arrays.fill(spend, 0);
+        Arrays.fill(conversions, 0);
+        size = 0;
+    }
+
+    // ======== slot access (for scans without a callback) ========
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public long impressionsAt(int slot) {
+        return impressions[slot];
+    }
+
+    public long clicksAt(int slot) {
+        return clicks[slot];
+    }
+
+    public double spendAt(int slot) {
+        return spend[slot];
+    }
+
+    public long conversionsAt(int slot) {
+        return conversions[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Most entries a table can hold without its columns growing past {@code bytes}: the resize
+     * threshold of the largest capacity that fits (at least the minimum table's).
+     */
+    public static int entriesWithin(long bytes) {
+        int cap = MIN_CAPACITY;
+        while (cap < (1 << 30) && 5 * (16L + 8L * cap * 2) <= bytes) cap <<= 1;
+        return (int) (cap * 0.75);
+    }
+
+    /** Bytes held by the columns (array headers included). */
+    public long footprintBytes() {
+        return 5 * (16L + 8L * keys.length);
+    }
+
+    /**
+     * Estimated heap cost of the same entries as {@code HashMap<String, Agg>} with compressed oops:
+     * table slot at 0.75 load (~5.3 B) + Node (32 B) + String (24 B) + its byte[] (16 B + id bytes,
+     * 8-byte aligned) + Agg (48 B).
+     */
+    public static long hashMapFootprintBytes(long entries, long totalIdBytes) {
+        long buckets = Long.highestOneBit(Math.max(1, entries * 4 / 3 - 1)) << 1;
+        long perEntry = 32 + 24 + 16 + 48 + 4; // + average byte[] alignment padding
+        return entries * perEntry + totalIdBytes + 16 + 4 * buckets;
+    }
+
+    private int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        impressions[to] = impressions[from];
+        clicks[to] = clicks[from];
+        spend[to] = spend[from];
+        conversions[to] = conversions[from];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys, oldImp = impressions, oldClk = clicks, oldConv = conversions;
+        double[] oldSpend = spend;
+        allocate(keys.length * 2);
+        for (int s = 0; s < oldKeys.length; s++) {
+            long k = oldKeys[s];
+            if (k == EMPTY) continue;
+            int i = hash(k);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = k;
+            impressions[i] = oldImp[s];
+            clicks[i] = oldClk[s];
+            spend[i] = oldSpend[s];
+            conversions[i] = oldConv[s];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        impressions = new long[capacity];
+        clicks = new long[capacity];
+        spend = new double[capacity];
+        conversions = new long[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) (capacity * 0.75);
+    }
+
+    private static int tableSizeFor(int expectedEntries) {
+        long needed = (long) Math.ceil(Math.max(expectedEntries, 1) / 0.75);
+        int cap = MIN_CAPACITY;
+        while (cap < needed) cap <<= 1;
+        return cap;
+    }
+}
@@ -1,16 +1,62 @@
 package org.example.model;
 
+import org.example.util.CompressedInput;
+import org.example.util.InputFiles;
+import org.example.util.WaitStrategy;
+
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public class Args {
     private final Path input;
+    private List<Path> inputs;
     private final Path outputDir;
     private final int threads;
     private final int batchSize;
     private final int queueCapacity;
+    // mmap is opt-in: its chunk split fails on a quoted field holding a line break
+    private IngestMode ingest = IngestMode.STREAM;
+    private QueueImpl queueImpl = QueueImpl.ABQ;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private boolean skewAware = true;
+    private int shards;
+    private ExecutorMode executor = ExecutorMode.PLATFORM;
+    private boolean incremental;
+    private Path cache;
+    private boolean cacheVerify;
+    private DateRange dates = DateRange.ALL;
+    private boolean daily;
+    private int topK = 10;
+    private List<Metric> metrics = List.of(Metric.CTR, Metric.CPA);
+    private long minImpressions;
+    private long minClicks;
+    private boolean workerTopK;
+    private String inputSpec;
+    private int servePort = -1;
+    private int pollMillis = 1000;
+    private int progressMillis;
+    private Path report;
+    private int shardMemoryMB;
+    private Path spillDir;
+    private boolean combine;
+    private Path export;
+    private int readAheadBlocks = 4;
+    private int readAheadBlockKB = 4096;
+    private boolean approximate;
+    private int sketchCounters = 65536;
+    private int partition;
+    private int partitions;
+    private List<Path> mergeInputs;
 
     Args(Path input, Path outputDir, int threads, int batchSize, int queueCapacity) {
         this.input = input;
@@ -32,7 +78,10 @@ public class Args {
             }
         }
 
-        Path input = getPath(m, "--input", true);
+        // --merge reads partial files in place of --input
+        List<Path> mergeInputs = m.containsKey("--merge") ? getMergeInputs(m, "--merge") : null;
+        if (mergeInputs != null && m.containsKey("--input")) usageAndExit("--merge reads partial files; drop --input");
+        List<Path> inputs = mergeInputs != null ? mergeInputs : getInputs(m, "--input");
         Path output = getPath(m, "--output", true);
         int threads = getInt(m, "--threads", Runtime.getRuntime().availableProcessors());
         int batchSize = getInt(m, "--batchSize", 4096);
@@ -42,7 +91,139 @@ public class Args {
         if (batchSize <= 0) usageAndExit("--batchSize must be > 0");
         if (queueCap <= 0) usageAndExit("--queueCapacity must be > 0");
 
-        return new Args(input, output, threads, batchSize, queueCap);
+        Args a = new Args(inputs.get(0), output, threads, batchSize, queueCap);
+        a.inputs = inputs;
+        a.ingest = getEnum(m, "--ingest", IngestMode.class, a.ingest);
+        a.queueImpl = getEnum(m, "--queueImpl", QueueImpl.class, a.queueImpl);
+        a.waitStrategy = getEnum(m, "--waitStrategy", WaitStrategy.class, a.waitStrategy);
+        a.skewAware = getBoolean(m, "--skewAware", a.skewAware);
+        a.shards = getInt(m, "--shards", threads);
+        if (a.shards <= 0) usageAndExit("--shards must be > 0");
+        a.executor = getEnum(m, "--executor", ExecutorMode.class, a.executor);
+        // spinning shard workers never unmount: with more of them than carriers (--threads), producers starve
+        if (a.waitStrategy == WaitStrategy.SPIN && a.executor == ExecutorMode.VIRTUAL && a.shards > threads) {
+            usageAndExit("--waitStrategy spin with --executor virtual needs --shards <= --threads (carrier threads);"
+                    + " use --waitStrategy yield|park");
+        }
+        a.incremental = getBoolean(m, "--incremental", a.incremental);
+        if (a.incremental && (inputs.size() > 1 || CompressedInput.isCompressed(inputs.get(0)))) {
+            usageAndExit("--incremental needs a single uncompressed input file");
+        }
+        a.cache = getPath(m, "--cache", false);
+        if (a.cache != null && a.incremental) usageAndExit("--cache and --incremental cannot be combined");
+        a.cacheVerify = getBoolean(m, "--cacheVerify", a.cacheVerify);
+        if (a.cacheVerify && a.cache == null) usageAndExit("--cacheVerify needs --cache");
+        LocalDate from = getDate(m, "--from"), to = getDate(m, "--to");
+        if (from != null && to != null && from.isAfter(to)) usageAndExit("--from must not be after --to");
+        a.dates = new DateRange(from, to);
+        a.daily = getBoolean(m, "--daily", a.daily);
+        if (a.incremental && (!a.dates.isAll() || a.daily)) {
+            usageAndExit("--incremental aggregates all dates per campaign; drop --from/--to/--daily");
+        }
+        a.topK = getInt(m, "--topK", a.topK);
+        if (a.topK <= 0) usageAndExit("--topK must be > 0");
+        a.metrics = getMetrics(m, "--metrics", a.metrics);
+        a.minImpressions = getInt(m, "--minImpressions", 0);
+        a.minClicks = getInt(m, "--minClicks", 0);
+        if (a.minImpressions < 0 || a.minClicks < 0) usageAndExit("--minImpressions/--minClicks must be >= 0");
+        a.inputSpec = m.get("--input");
+        a.servePort = getInt(m, "--serve", a.servePort);
+        a.pollMillis = getInt(m, "--pollMillis", a.pollMillis);
+        if (a.pollMillis <= 0) usageAndExit("--pollMillis must be > 0");
+        if (a.servePort >= 0 && (a.incremental || a.cache != null || a.daily)) {
+            usageAndExit("--serve keeps its own live aggregates; drop --incremental/--cache/--daily");
+        }
+        a.workerTopK = getBoolean(m, "--workerTopK", a.workerTopK);
+        if (a.workerTopK && (a.ingest == IngestMode.MMAP || a.incremental || a.cache != null || a.daily
+                || a.servePort >= 0)) {
+            usageAndExit("--workerTopK needs --ingest stream|bytes, without --daily/--cache/--incremental");
+        }
+        a.progressMillis = getInt(m, "--progressMillis", a.progressMillis);
+        if (a.progressMillis < 0) usageAndExit("--progressMillis must be >= 0");
+        a.report = getPath(m, "--report", false);
+        a.shardMemoryMB = getInt(m, "--shardMemoryMB", a.shardMemoryMB);
+        if (a.shardMemoryMB < 0) usageAndExit("--shardMemoryMB must be >= 0");
+        a.spillDir = getPath(m, "--spillDir", false);
+        if (a.spillDir == null) a.spillDir = output;
+        if (a.shardMemoryMB > 0 && (a.incremental || a.cache != null || a.daily || a.workerTopK || a.servePort >= 0)) {
+            usageAndExit("--shardMemoryMB cannot be combined with --incremental/--cache/--daily/--workerTopK/--serve");
+        }
+        a.combine = getBoolean(m, "--combine", a.combine);
+        boolean queuePipeline = a.ingest != IngestMode.MMAP && !a.incremental && a.cache == null && a.servePort < 0;
+        if ((a.progressMillis > 0 || a.report != null) && !queuePipeline) {
+            usageAndExit("--progressMillis/--report instrument the queue pipeline: use --ingest stream|bytes,"
+                    + " without --cache/--incremental/--serve");
+        }
+        a.readAheadBlocks = getInt(m, "--readAheadBlocks", a.readAheadBlocks);
+        if (a.readAheadBlocks < 0) usageAndExit("--readAheadBlocks must be >= 0");
+        a.readAheadBlockKB = getInt(m, "--readAheadBlockKB", a.readAheadBlockKB);
+        if (a.readAheadBlockKB <= 0) usageAndExit("--readAheadBlockKB must be > 0");
+        a.export = getPath(m, "--export", false);
+        if (a.export != null && (a.shardMemoryMB > 0 || a.servePort >= 0)) {
+            usageAndExit("--export needs the aggregates in memory: drop --shardMemoryMB/--serve");
+        }
+        if (a.combine && !queuePipeline) {
+            usageAndExit("--combine sums rows before the shard queues: use --ingest stream|bytes,"
+                    + " without --cache/--incremental/--serve");
+        }
+        a.approximate = getBoolean(m, "--approximate", a.approximate);
+        a.sketchCounters = getInt(m, "--sketchCounters", a.sketchCounters);
+        if (a.sketchCounters <= 0) usageAndExit("--sketchCounters must be > 0");
+        if (a.approximate && (a.incremental || a.cache != null || a.daily || a.servePort >= 0 || a.shardMemoryMB > 0
+                || a.export != null || a.workerTopK || a.combine || a.progressMillis > 0 || a.report != null)) {
+            usageAndExit("--approximate keeps only sketches: drop --incremental/--cache/--daily/--serve/--shardMemoryMB"
+                    + "/--export/--workerTopK/--combine/--progressMillis/--report");
+        }
+        int[] partition = getPartition(m, "--partition");
+        if (partition != null) {
+            a.partition = partition[0];
+            a.partitions = partition[1];
+            if (inputs.size() > 1 || CompressedInput.isCompressed(inputs.get(0))) {
+                usageAndExit("--partition needs a single uncompressed input file");
+            }
+        }
+        a.mergeInputs = mergeInputs;
+        if ((a.partitions > 0 || mergeInputs != null) && (a.incremental || a.cache != null || a.daily
+                || a.servePort >= 0 || a.shardMemoryMB > 0 || a.workerTopK || a.combine || a.approximate
+                || a.progressMillis > 0 || a.report != null)) {
+            usageAndExit("--partition/--merge aggregate campaign totals: drop --incremental/--cache/--daily/--serve"
+                    + "/--shardMemoryMB/--workerTopK/--combine/--approximate/--progressMillis/--report");
+        }
+        if (mergeInputs != null && !a.dates.isAll()) {
+            usageAndExit("--merge sums the partial files as written: give --from/--to to the --partition runs");
+        }
+        if (a.partitions > 0 && (mergeInputs != null || a.export != null)) {
+            usageAndExit("--partition only writes its partial file; --merge and --export go to the merge run");
+        }
+        return a;
+    }
+
+    // a directory means its partial files
+    static List<Path> getMergeInputs(Map<String, String> m, String key) {
+        String v = m.get(key);
+        Path dir = Paths.get(v);
+        if (Files.isDirectory(dir)) v = dir.resolve("*.agg").toString();
+        try {
+            return InputFiles.resolve(v);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            usageAndExit(e.getMessage());
+            return List.of();
+        }
+    }
+
+    // "i/N", 1 <= i <= N
+    static int[] getPartition(Map<String, String> m, String key) {
+        String v = m.get(key);
+        if (v == null) return null;
+        int slash = v.indexOf('/');
+        try {
+            int i = Integer.parseInt(v.substring(0, Math.max(slash, 0)).trim());
+            int n = Integer.parseInt(v.substring(slash + 1).trim());
+            if (slash > 0 && n > 0 && i >= 1 && i <= n) return new int[]{i, n};
+        } catch (NumberFormatException ignored) {
+        }
+        usageAndExit("Invalid value for " + key + " (i/N, 1 <= i <= N): " + v);
+        return null;
     }
 
     static Path getPath(Map<String, String> m, String key, boolean required) {
@@ -54,6 +235,17 @@ public class Args {
         return Paths.get(v);
     }
 
+    static List<Path> getInputs(Map<String, String> m, String key) {
+        String v = m.get(key);
+        if (v == null) usageAndExit("Missing " + key);
+        try {
+            return InputFiles.resolve(v);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            usageAndExit(e.getMessage());
+            return List.of();
+        }
+    }
+
     static int getInt(Map<String, String> m, String key, int def) {
         String v = m.get(key);
         if (v == null) return def;
@@ -65,18 +257,81 @@ public class Args {
         }
     }
 
+    static boolean getBoolean(Map<String, String> m, String key, boolean def) {
+        String v = m.get(key);
+        if (v == null) return def;
+        if (v.equalsIgnoreCase("true")) return true;
+        if (v.equalsIgnoreCase("false")) return false;
+        usageAndExit("Invalid boolean for " + key + ": " + v);
+        return def;
+    }
+
+    static LocalDate getDate(Map<String, String> m, String key) {
+        String v = m.get(key);
+        if (v == null) return null;
+        try {
+            LocalDate d = LocalDate.parse(v.trim());
+            if (d.getYear() < 0 || d.getYear() > 9999) usageAndExit("Year out of range for " + key + ": " + v);
+            return d;
+        } catch (DateTimeParseException e) {
+            usageAndExit("Invalid date for " + key + " (yyyy-MM-dd): " + v);
+            return null;
+        }
+    }
+
+    static List<Metric> getMetrics(Map<String, String> m, String key, List<Metric> def) {
+        String v = m.get(key);
+        if (v == null) return def;
+        Set<Metric> metrics = new LinkedHashSet<>();
+        for (String name : v.split(",")) {
+            if (name.isBlank()) continue;
+            metrics.add(getEnum(Map.of(key, name), key, Metric.class, null));
+        }
+        if (metrics.isEmpty()) usageAndExit("--metrics needs at least one metric");
+        return List.copyOf(metrics);
+    }
+
+    static <E extends Enum<E>> E getEnum(Map<String, String> m, String key, Class<E> type, E def) {
+        String v = m.get(key);
+        if (v == null) return def;
+        try {
+            return Enum.valueOf(type, v.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            usageAndExit("Invalid value for " + key + ": " + v);
+            return def;
+        }
+    }
+
     static void usageAndExit(String msg) {
         System.err.println(msg);
         System.err.println("Usage:");
-        System.err.println("  java -jar aggregator.jar --input ad_data.csv --output results/ " +
-                "[--threads 8] [--batchSize 4096] [--queueCapacity 50]");
+        System.err.println("  java -jar aggregator.jar --input ad_data.csv|dir/|'data/*.csv'|a.csv,b.csv --output results/ " +
+                "[--threads 8] [--batchSize 4096] [--queueCapacity 50 (spsc: next power of two)] [--ingest stream|mmap|bytes]" +
+                " [--queueImpl abq|spsc] [--waitStrategy spin|yield|park]" +
+                " [--skewAware true|false]" +
+                " [--shards 64] [--executor platform|virtual] [--incremental true|false]" +
+                " [--cache ad_data.colcache] [--cacheVerify true|false] [--from 2025-01-01] [--to 2025-01-07] [--daily true|false]" +
+                " [--topK 10] [--metrics ctr,cpa,spend,conversions,cvr,cpc] [--minImpressions 0] [--minClicks 0]" +
+                " [--workerTopK true|false] [--serve 8080] [--pollMillis 1000]" +
+                " [--progressMillis 1000] [--report pipeline.json] (queue pipeline only) [--shardMemoryMB 64 (per shard, over all workers)] [--spillDir /tmp]" +
+                " [--combine true|false] [--export results/aggregates.bin]" +
+                " [--readAheadBlocks 4] [--readAheadBlockKB 4096]" +
+                " [--approximate true|false] [--sketchCounters 65536] [--partition 1/4]");
+        System.err.println("  java -jar aggregator.jar --merge results/parts/|'parts/*.agg'|a.agg,b.agg --output results/ " +
+                "[--threads 8] [--topK 10] [--metrics ctr,cpa] [--minImpressions 0] [--minClicks 0]" +
+                " [--export results/aggregates.bin]");
         System.exit(2);
     }
 
+    /** The first input file; the only one unless --input named several. */
     public Path getInput() {
         return input;
     }
 
+    public List<Path> getInputs() {
+        return inputs;
+    }
+
     public Path getOutputDir() {
         return outputDir;
     }
@@ -92,4 +347,159 @@ public class Args {
     public int getQueueCapacity() {
         return queueCapacity;
     }
-}
\ No newline at end of file
+
+    public IngestMode getIngest() {
+        return ingest;
+    }
+
+    public QueueImpl getQueueImpl() {
+        return queueImpl;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public boolean isSkewAware() {
+        return skewAware;
+    }
+
+    /** Logical shards (one queue + one aggregate table each); defaults to --threads. */
+    public int getShards() {
+        return shards;
+    }
+
+    public ExecutorMode getExecutor() {
+        return executor;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** Column cache file of the parsed inputs, or null when not caching. */
+    public Path getCache() {
+        return cache;
+    }
+
+    /** Whether a cache hit re-reads every input and column to check their full checksums. */
+    public boolean isCacheVerify() {
+        return cacheVerify;
+    }
+
+    /** Inclusive --from/--to range; {@link DateRange#ALL} when neither is given. */
+    public DateRange getDates() {
+        return dates;
+    }
+
+    /** Aggregate per (campaign, day) and write daily.csv next to the top-10 files. */
+    public boolean isDaily() {
+        return daily;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    /** Ranked metrics, one top-K file each; defaults to ctr,cpa. */
+    public List<Metric> getMetrics() {
+        return metrics;
+    }
+
+    /** Campaigns below either volume are left out of every ranking. */
+    public long getMinImpressions() {
+        return minImpressions;
+    }
+
+    public long getMinClicks() {
+        return minClicks;
+    }
+
+    /** Queue workers rank their own shard as soon as they drain it. */
+    public boolean isWorkerTopK() {
+        return workerTopK;
+    }
+
+    /** The --input value as given, re-resolved by server mode to pick up new files. */
+    public String getInputSpec() {
+        return inputSpec;
+    }
+
+    /** HTTP port of server mode (0 = any free port), or -1 for a one-shot run. */
+    public int getServePort() {
+        return servePort;
+    }
+
+    /** How often server mode looks for new and grown input files. */
+    public int getPollMillis() {
+        return pollMillis;
+    }
+
+    /** Period of the pipeline progress line, 0 = off. */
+    public int getProgressMillis() {
+        return progressMillis;
+    }
+
+    /** File for the JSON pipeline report, or null. */
+    public Path getReport() {
+        return report;
+    }
+
+    /**
+     * Per-shard table budget in MB, shared by the shard's tables of all mmap workers; 0 = tables grow
+     * as needed, nothing is spilled.
+     */
+    public int getShardMemoryMB() {
+        return shardMemoryMB;
+    }
+
+    /** Where spill runs are written (in a temporary subdirectory); defaults to the output dir. */
+    public Path getSpillDir() {
+        return spillDir;
+    }
+
+    /** Sum rows per campaign on the producers before they are queued to the shards. */
+    public boolean isCombine() {
+        return combine;
+    }
+
+    /** File for the column export of every campaign's totals, or null. */
+    public Path getExport() {
+        return export;
+    }
+
+    /** Blocks the queue pipeline reads ahead of the parser per plain input file; 0 = read on the parse thread. */
+    public int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    /** Size of one read-ahead block in KB. */
+    public int getReadAheadBlockKB() {
+        return readAheadBlockKB;
+    }
+
+    /** Rank from fixed-size per-worker sketches instead of exact per-campaign totals. */
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /** Heavy-hitter counters per sketch in --approximate mode. */
+    public int getSketchCounters() {
+        return sketchCounters;
+    }
+
+    /** This run's partition of the input, from 1; see {@link #getPartitions()}. */
+    public int getPartition() {
+        return partition;
+    }
+
+    /** Number of partitions the input is split into for --partition, or 0 for the whole input. */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /** Partial files to merge instead of parsing an input, or null. */
+    public List<Path> getMergeInputs() {
+        return mergeInputs;
+    }
+}
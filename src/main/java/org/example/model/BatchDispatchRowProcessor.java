@@ -3,17 +3,25 @@ package org.example.model;
 import com.univocity.parsers.common.ParsingContext;
 import com.univocity.parsers.common.processor.RowProcessor;
 import org.example.util.ConvertUtil;
+import org.example.util.CsvByteScanner;
 
+import java.time.LocalDate;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
-public class BatchDispatchRowProcessor implements RowProcessor {
+/**
+ * Producer side of the queue pipeline: parses rows and hands them to the shard workers in
+ * {@link RowBatch}es. With the combiner on, rows are first summed per campaign (per campaign and
+ * day in per-day mode) in a small table per shard, and the batches carry those partial sums
+ * instead of single rows; workers add them up either way.
+ */
+public class BatchDispatchRowProcessor implements RowProcessor, CsvByteScanner.RowHandler {
     private final BlockingQueue<RowBatch>[] queues;
     private final int shards;
     private final int batchSize;
 
     // schema fixed: campaign_id,date,impressions,clicks,spend,conversions
     private static final int IDX_CAMPAIGN = 0;
+    private static final int IDX_DATE = 1;
     private static final int IDX_IMP = 2;
     private static final int IDX_CLICKS = 3;
     private static final int IDX_SPEND = 4;
@@ -21,15 +29,76 @@ public class BatchDispatchRowProcessor implements RowProcessor {
 
     private final RowBatch[] currentBatchPerShard;
 
-    // optional: counting for debug
-    private final AtomicInteger rowsSeen = new AtomicInteger();
+    private final CampaignDictionary dictionary;
+    private final BatchPool pool; // null = allocate a fresh batch per flush
+    private final ShardRouter router;
+    private final DateRange dates;
+    private final boolean daily; // batches carry the epoch day of every row
 
-    public BatchDispatchRowProcessor(BlockingQueue<RowBatch>[] queues, int shards, int batchSize) {
+    // this producer's rows, flushes and queue stalls; see PipelineMetrics
+    private final PipelineMetrics.Producer counters;
+
+    // ======== combiner ========
+    // a window ends when the table holds a batch worth of keys, or after this many batches worth of rows
+    private static final int WINDOW_BATCHES = 64;
+    // fewer rows per key than this and summing costs more than shipping the rows as they are
+    private static final double MIN_ROWS_PER_KEY = 2.0;
+    // a shard whose combiner switched off tries again after this many batches of single rows
+    private static final int RETRY_AFTER_BATCHES = 32;
+
+    private final AggTable[] combiners; // null = combiner off
+    private final boolean[] combining;
+    private final int[] windowRows;
+    private final int[] retryIn;
+
+    public BatchDispatchRowProcessor(CampaignDictionary dictionary, BlockingQueue<RowBatch>[] queues,
+                                     int shards, int batchSize) {
+        this(dictionary, queues, shards, batchSize, null);
+    }
+
+    /** Batches are taken from {@code pool}; workers must hand them back with {@link BatchPool#release}. */
+    public BatchDispatchRowProcessor(CampaignDictionary dictionary, BlockingQueue<RowBatch>[] queues,
+                                     int shards, int batchSize, BatchPool pool) {
+        this(dictionary, queues, shards, batchSize, pool, new ShardRouter(shards, false));
+    }
+
+    public BatchDispatchRowProcessor(CampaignDictionary dictionary, BlockingQueue<RowBatch>[] queues,
+                                     int shards, int batchSize, BatchPool pool, ShardRouter router) {
+        this(dictionary, queues, shards, batchSize, pool, router, DateRange.ALL, false);
+    }
+
+    /** Rows outside {@code dates} are dropped before their numbers are parsed. */
+    public BatchDispatchRowProcessor(CampaignDictionary dictionary, BlockingQueue<RowBatch>[] queues,
+                                     int shards, int batchSize, BatchPool pool, ShardRouter router,
+                                     DateRange dates, boolean daily) {
+        this(dictionary, queues, shards, batchSize, pool, router, dates, daily, false);
+    }
+
+    /** With {@code combine}, rows are summed per key before they are shipped; see the class comment. */
+    public BatchDispatchRowProcessor(CampaignDictionary dictionary, BlockingQueue<RowBatch>[] queues,
+                                     int shards, int batchSize, BatchPool pool, ShardRouter router,
+                                     DateRange dates, boolean daily, boolean combine) {
+        this.dictionary = dictionary;
+        this.router = router;
+        this.dates = dates;
+        this.daily = daily;
         this.queues = queues;
         this.shards = shards;
         this.batchSize = batchSize;
+        this.pool = pool;
+        this.counters = new PipelineMetrics.Producer(shards);
         this.currentBatchPerShard = new RowBatch[shards];
-        for (int i = 0; i < shards; i++) currentBatchPerShard[i] = new RowBatch(batchSize);
+        for (int i = 0; i < shards; i++) currentBatchPerShard[i] = nextBatch(i);
+        this.combiners = combine ? new AggTable[shards] : null;
+        this.combining = new boolean[shards];
+        this.windowRows = new int[shards];
+        this.retryIn = new int[shards];
+        if (combine) {
+            for (int i = 0; i < shards; i++) {
+                combiners[i] = new AggTable(batchSize);
+                combining[i] = true;
+            }
+        }
     }
 
     @Override
@@ -40,39 +109,125 @@ public class BatchDispatchRowProcessor implements RowProcessor {
     @Override
     public void rowProcessed(String[] row, ParsingContext context) {
         // row length expected 6
-        String id = row[IDX_CAMPAIGN];
-        long imp = Long.parseLong(row[IDX_IMP]);
-        long clk = Long.parseLong(row[IDX_CLICKS]);
-        double sp = Double.parseDouble(row[IDX_SPEND]);
-        long conv = Long.parseLong(row[IDX_CONV]);
+        counters.row();
+        if (!dates.isAll() && !dates.contains(row[IDX_DATE])) return;
+        int id = dictionary.idOf(row[IDX_CAMPAIGN]);
+        int day = daily ? (int) LocalDate.parse(row[IDX_DATE]).toEpochDay() : 0;
+        long imp = ConvertUtil.parseLongFast(row[IDX_IMP]);
+        long clk = ConvertUtil.parseLongFast(row[IDX_CLICKS]);
+        double sp = ConvertUtil.parseDoubleFast(row[IDX_SPEND]);
+        long conv = ConvertUtil.parseLongFast(row[IDX_CONV]);
 
-        int shard = (id.hashCode() & 0x7fffffff) % shards;
+        dispatch(id, day, imp, clk, sp, conv);
+    }
+
+    /** Byte path: fields are decoded straight from the scanner's buffer, no String per field. */
+    @Override
+    public void row(byte[] buf, int[] f) {
+        counters.row();
+        if (!dates.isAll() && !dates.contains(buf, f[IDX_DATE * 2], f[IDX_DATE * 2 + 1])) return;
+        int id = dictionary.idOf(buf, f[IDX_CAMPAIGN * 2], f[IDX_CAMPAIGN * 2 + 1]);
+        int day = daily ? ConvertUtil.parseEpochDay(buf, f[IDX_DATE * 2], f[IDX_DATE * 2 + 1]) : 0;
+        long imp = ConvertUtil.parseLong(buf, f[IDX_IMP * 2], f[IDX_IMP * 2 + 1]);
+        long clk = ConvertUtil.parseLong(buf, f[IDX_CLICKS * 2], f[IDX_CLICKS * 2 + 1]);
+        double sp = ConvertUtil.parseDouble(buf, f[IDX_SPEND * 2], f[IDX_SPEND * 2 + 1]);
+        long conv = ConvertUtil.parseLong(buf, f[IDX_CONV * 2], f[IDX_CONV * 2 + 1]);
+
+        dispatch(id, day, imp, clk, sp, conv);
+    }
+
+    private void dispatch(int id, int day, long imp, long clk, double sp, long conv) {
+        int shard = router.route(id);
+        if (combining[shard]) {
+            AggTable c = combiners[shard];
+            c.add(daily ? DailyKey.of(id, day) : id, imp, clk, sp, conv);
+            windowRows[shard]++;
+            if (c.size() >= batchSize || windowRows[shard] >= batchSize * WINDOW_BATCHES) flushCombiner(shard, true);
+            return;
+        }
         RowBatch b = currentBatchPerShard[shard];
-        b.add(id, imp, clk, sp, conv);
+        b.add(id, day, imp, clk, sp, conv);
 
-        if (b.isFull()) flushShard(shard);
+        if (b.isFull()) {
+            flushShard(shard);
+            if (combiners != null && --retryIn[shard] == 0) combining[shard] = true;
+        }
+    }
 
-        rowsSeen.incrementAndGet();
+    // ships the window's partial sums; a full window also decides whether the next one is worth combining
+    private void flushCombiner(int shard, boolean adapt) {
+        AggTable c = combiners[shard];
+        int rows = windowRows[shard];
+        int keys = c.size();
+        for (int s = 0; s < c.capacity(); s++) {
+            if (!c.isUsed(s)) continue;
+            long key = c.keyAt(s);
+            RowBatch b = currentBatchPerShard[shard];
+            b.add(daily ? DailyKey.campaign(key) : (int) key, daily ? DailyKey.day(key) : 0,
+                    c.impressionsAt(s), c.clicksAt(s), c.spendAt(s), c.conversionsAt(s));
+            if (b.isFull()) flushShard(shard);
+        }
+        c.clear();
+        windowRows[shard] = 0;
+        counters.combined(rows, keys);
+        if (adapt && rows < keys * MIN_ROWS_PER_KEY) {
+            combining[shard] = false;
+            retryIn[shard] = RETRY_AFTER_BATCHES;
+            counters.combinerOff();
+        }
     }
 
     @Override
     public void processEnded(ParsingContext context) {
-        // flush remaining partial batches
+        flushAll();
+    }
+
+    public ShardRouter getRouter() {
+        return router;
+    }
+
+    public PipelineMetrics.Producer getCounters() {
+        return counters;
+    }
+
+    // flush remaining partial batches
+    public void flushAll() {
+        if (combiners != null) {
+            for (int shard = 0; shard < shards; shard++) {
+                if (combiners[shard].size() > 0) flushCombiner(shard, false);
+            }
+        }
         for (int shard = 0; shard < shards; shard++) {
             if (!currentBatchPerShard[shard].isEmpty()) flushShard(shard);
         }
-        // You can print count if you want:
-        // System.out.println("Rows processed: " + rowsSeen.get());
     }
 
     private void flushShard(int shard) {
         RowBatch full = currentBatchPerShard[shard];
         try {
-            queues[shard].put(full);
+            // the clock is only read when the queue is full
+            if (!queues[shard].offer(full)) {
+                long t0 = System.nanoTime();
+                PipelineEvents.QueueWait event = PipelineEvents.beginQueueWait("put", shard);
+                queues[shard].put(full);
+                if (event != null) event.commit();
+                counters.blocked(System.nanoTime() - t0);
+            }
+            counters.flushed(shard);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        currentBatchPerShard[shard] = nextBatch(shard);
+    }
+
+    private RowBatch nextBatch(int shard) {
+        if (pool == null) return new RowBatch(batchSize);
+        try {
+            return pool.acquire(shard);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
-        currentBatchPerShard[shard] = new RowBatch(batchSize);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package org.example.model;
+
+import org.example.util.WaitStrategy;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded set of {@link RowBatch}es per shard that circulate producer -> shard queue -> worker -> pool.
+ * Batches are created on demand up to the per-shard limit (so many mostly idle shards stay cheap)
+ * and reused after that; when a shard's batches are all in flight the producer blocks in
+ * {@link #acquire(int)}, which is the pipeline's backpressure.
+ */
+public class BatchPool {
+    private final BlockingQueue<RowBatch>[] free;
+    private final AtomicIntegerArray created;
+    private final int batchesPerShard;
+    private final int batchSize;
+    private final AtomicLong exhausted = new AtomicLong();
+
+    public BatchPool(int shards, int batchesPerShard, int batchSize) {
+        this(shards, batchesPerShard, batchSize, QueueImpl.ABQ, WaitStrategy.PARK);
+    }
+
+    /** The return path is one worker to one producer per shard, so it can use the same queue type as the shards. */
+    @SuppressWarnings("unchecked")
+    public BatchPool(int shards, int batchesPerShard, int batchSize, QueueImpl queueImpl, WaitStrategy wait) {
+        if (batchesPerShard < 2) throw new IllegalArgumentException("batchesPerShard must be >= 2");
+        this.batchesPerShard = batchesPerShard;
+        this.batchSize = batchSize;
+        created = new AtomicIntegerArray(shards);
+        free = new BlockingQueue[shards];
+        for (int s = 0; s < shards; s++) free[s] = queueImpl.create(batchesPerShard, wait);
+    }
+
+    /** Pool sized so the shard queues, not the pool, fill up first: queue + one filling + one in the worker. */
+    public static BatchPool forQueues(int shards, int queueCapacity, int batchSize) {
+        return new BatchPool(shards, queueCapacity + 2, batchSize);
+    }
+
+    public static BatchPool forQueues(int shards, int queueCapacity, int batchSize,
+                                      QueueImpl queueImpl, WaitStrategy wait) {
+        return new BatchPool(shards, queueCapacity + 2, batchSize, queueImpl, wait);
+    }
+
+    /** Returns an empty batch for {@code shard}, waiting for a worker to release one if none is free. */
+    public RowBatch acquire(int shard) throws InterruptedException {
+        RowBatch b = free[shard].poll();
+        if (b == null && tryCreate(shard)) return new RowBatch(batchSize);
+        if (b == null) {
+            exhausted.incrementAndGet();
+            b = free[shard].take();
+        }
+        return b;
+    }
+
+    /** Called by the worker once the batch has been aggregated. */
+    public void release(int shard, RowBatch b) {
+        if (b.isPoison()) return;
+        b.reset();
+        if (!free[shard].offer(b)) throw new IllegalStateException("batch released twice to shard " + shard);
+    }
+
+    /** Batches a producer can still get for {@code shard} without waiting. */
+    public int available(int shard) {
+        return free[shard].size() + batchesPerShard - created.get(shard);
+    }
+
+    /** How often the producer found a shard's pool empty and had to wait. */
+    public long exhaustedCount() {
+        return exhausted.get();
+    }
+
+    // several producers (one per input file) may share the pool
+    private boolean tryCreate(int shard) {
+        for (int n = created.get(shard); n < batchesPerShard; n = created.get(shard)) {
+            if (created.compareAndSet(shard, n, n + 1)) return true;
+        }
+        return false;
+    }
+}
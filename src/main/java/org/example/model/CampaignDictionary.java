@@ -0,0 +1,153 @@
+package org.example.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns raw campaign-id bytes into dense int ids (0, 1, 2, ... in order of first sight).
+ * The key bytes are kept in one arena and only turned back into a String by {@link #name(int)}.
+ * <p>
+ * Lookups of known ids are lock-free, so every producer thread can share one dictionary:
+ * an id's bytes are written before its slot is published with release semantics, and a table is
+ * never mutated after it has been replaced by a larger one. Inserts are serialized.
+ */
+public class CampaignDictionary {
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final class Table {
+        final int[] slots;   // id + 1, 0 = empty; load factor <= 0.5
+        final int mask;
+        final int[] hashes;
+        final int[] offsets; // id bytes are arena[offsets[id], offsets[id + 1])
+        final byte[] arena;
+
+        Table(int capacity, int arenaCapacity) {
+            slots = new int[Integer.highestOneBit(capacity) * 2];
+            mask = slots.length - 1;
+            hashes = new int[capacity];
+            offsets = new int[capacity + 1];
+            arena = new byte[arenaCapacity];
+        }
+    }
+
+    private volatile Table table = new Table(1024, 1 << 16);
+    private volatile int size;
+    private int arenaSize;   // guarded by this
+
+    public int idOf(byte[] buf, int from, int to) {
+        int h = hash(buf, from, to);
+        Table t = table;
+        for (int i = h & t.mask; ; i = (i + 1) & t.mask) {
+            int id = (int) SLOT.getAcquire(t.slots, i) - 1;
+            if (id < 0) return insert(buf, from, to, h);
+            if (matches(t, id, h, buf, from, to)) return id;
+        }
+    }
+
+    public int idOf(String campaignId) {
+        byte[] b = campaignId.getBytes(StandardCharsets.UTF_8);
+        return idOf(b, 0, b.length);
+    }
+
+    /** The id of an already interned campaign, or -1; never inserts. */
+    public int find(String campaignId) {
+        byte[] b = campaignId.getBytes(StandardCharsets.UTF_8);
+        int h = hash(b, 0, b.length);
+        Table t = table;
+        for (int i = h & t.mask; ; i = (i + 1) & t.mask) {
+            int id = (int) SLOT.getAcquire(t.slots, i) - 1;
+            if (id < 0) return -1;
+            if (matches(t, id, h, b, 0, b.length)) return id;
+        }
+    }
+
+    public String name(int id) {
+        Table t = table;
+        return new String(t.arena, t.offsets[id], t.offsets[id + 1] - t.offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /** UTF-8 length of {@link #name(int)}. */
+    public int nameLength(int id) {
+        Table t = table;
+        return t.offsets[id + 1] - t.offsets[id];
+    }
+
+    /** Copies the id's UTF-8 bytes into {@code out}, without decoding them. */
+    public void putName(int id, ByteBuffer out) {
+        Table t = table;
+        out.put(t.arena, t.offsets[id], t.offsets[id + 1] - t.offsets[id]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Total bytes of all interned ids. */
+    public synchronized long idBytes() {
+        return arenaSize;
+    }
+
+    /** Bytes held by the hash slots, per-id columns and the key arena. */
+    public long footprintBytes() {
+        Table t = table;
+        return 16L + 4L * t.slots.length + 2 * (16L + 4L * t.hashes.length) + 16L + t.arena.length;
+    }
+
+    public static int hash(byte[] buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) h = 31 * h + buf[i];
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(Table t, int id, int h, byte[] buf, int from, int to) {
+        int start = t.offsets[id], end = t.offsets[id + 1];
+        return t.hashes[id] == h && end - start == to - from
+                && Arrays.equals(t.arena, start, end, buf, from, to);
+    }
+
+    private synchronized int insert(byte[] buf, int from, int to, int h) {
+        int len = to - from;
+        Table t = table;
+        int id = size;
+        if (id == t.hashes.length || arenaSize + len > t.arena.length) {
+            t = grow(t, id, len);
+            table = t;
+        }
+
+        int i = h & t.mask;
+        for (; ; i = (i + 1) & t.mask) {
+            int e = t.slots[i] - 1;
+            if (e < 0) break;
+            if (matches(t, e, h, buf, from, to)) return e; // raced with another producer
+        }
+
+        System.arraycopy(buf, from, t.arena, arenaSize, len);
+        t.hashes[id] = h;
+        arenaSize += len;
+        t.offsets[id + 1] = arenaSize;
+        SLOT.setRelease(t.slots, i, id + 1);
+        size = id + 1;
+        return id;
+    }
+
+    private Table grow(Table old, int count, int extraBytes) {
+        int capacity = count == old.hashes.length ? count * 2 : old.hashes.length;
+        int arenaCapacity = Math.max(old.arena.length, arenaSize + extraBytes);
+        if (arenaSize + extraBytes > old.arena.length) arenaCapacity = Math.max(arenaCapacity, old.arena.length * 2);
+
+        Table t = new Table(capacity, arenaCapacity);
+        System.arraycopy(old.hashes, 0, t.hashes, 0, count);
+        System.arraycopy(old.offsets, 0, t.offsets, 0, count + 1);
+        System.arraycopy(old.arena, 0, t.arena, 0, arenaSize);
+        for (int id = 0; id < count; id++) {
+            int i = t.hashes[id] & t.mask;
+            while (t.slots[i] != 0) i = (i + 1) & t.mask;
+            t.slots[i] = id + 1;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-(campaign, day) keys for {@link AggTable}: the dictionary id in the high 32 bits and the epoch
+ * day in the low 32 bits, so the key stays a non-negative long and no per-row key object or string
+ * is built. A campaign's home shard is still {@code id % shards}, so all its days share one shard.
+ */
+public class DailyKey {
+
+    public static long of(int campaign, int epochDay) {
+        return (long) campaign << 32 | (epochDay & 0xffffffffL);
+    }
+
+    public static int campaign(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int day(long key) {
+        return (int) key;
+    }
+
+    public static LocalDate date(long key) {
+        return LocalDate.ofEpochDay(day(key));
+    }
+
+    /** Per-campaign totals of per-day tables, shard by shard. */
+    public static AggTable[] rollUp(AggTable[] daily) {
+        AggTable[] totals = new AggTable[daily.length];
+        for (int s = 0; s < daily.length; s++) {
+            AggTable t = totals[s] = new AggTable();
+            daily[s].forEach((key, imp, clk, sp, conv) -> t.add(campaign(key), imp, clk, sp, conv));
+        }
+        return totals;
+    }
+
+    /** {@link ShardRouter#mergeSpread} for per-day tables: moves every day of the spread campaigns home. */
+    public static void mergeSpread(AggTable[] shardAggs, int[] ids) {
+        if (ids.length == 0) return;
+        int shards = shardAggs.length;
+        int maxId = 0;
+        for (int id : ids) maxId = Math.max(maxId, id);
+        boolean[] spread = new boolean[maxId + 1];
+        for (int id : ids) spread[id] = true;
+
+        for (int s = 0; s < shards; s++) {
+            AggTable t = shardAggs[s];
+            // collect first: removing reorders the slots still to be visited
+            List<Long> moved = new ArrayList<>();
+            for (int slot = 0; slot < t.capacity(); slot++) {
+                if (!t.isUsed(slot)) continue;
+                int id = campaign(t.keyAt(slot));
+                if (id <= maxId && spread[id] && id % shards != s) moved.add(t.keyAt(slot));
+            }
+            for (long key : moved) {
+                int slot = t.find(key);
+                shardAggs[campaign(key) % shards].add(key, t.impressionsAt(slot), t.clicksAt(slot), t.spendAt(slot),
+                        t.conversionsAt(slot));
+                t.remove(key);
+            }
+        }
+    }
+}
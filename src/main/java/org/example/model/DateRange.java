@@ -0,0 +1,84 @@
+package org.example.model;
+
+import org.example.util.ConvertUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Inclusive [from, to] filter on the date column; either end may be open. ISO dates (yyyy-MM-dd)
+ * order like their bytes, so rows are tested on the raw field before anything is parsed; other
+ * spellings fall back to a real date parse.
+ */
+public class DateRange {
+    public static final DateRange ALL = new DateRange(null, null);
+
+    private final LocalDate from, to;
+    private final String fromText, toText;
+    private final byte[] fromBytes, toBytes;
+    private final int fromDay, toDay;
+
+    public DateRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        this.fromText = iso(from);
+        this.toText = iso(to);
+        this.fromBytes = fromText == null ? null : fromText.getBytes(StandardCharsets.US_ASCII);
+        this.toBytes = toText == null ? null : toText.getBytes(StandardCharsets.US_ASCII);
+        this.fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        this.toDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+    }
+
+    /** The range of {@link #fromDay()} .. {@link #toDay()}, with the same sentinels for an open end. */
+    public static DateRange ofEpochDays(int fromDay, int toDay) {
+        return new DateRange(fromDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(fromDay),
+                toDay == Integer.MAX_VALUE ? null : LocalDate.ofEpochDay(toDay));
+    }
+
+    /** First epoch day in the range, Integer.MIN_VALUE when open. */
+    public int fromDay() {
+        return fromDay;
+    }
+
+    /** Last epoch day in the range, Integer.MAX_VALUE when open. */
+    public int toDay() {
+        return toDay;
+    }
+
+    public boolean isAll() {
+        return from == null && to == null;
+    }
+
+    public boolean contains(byte[] buf, int start, int end) {
+        if (end - start != 10 || buf[start + 4] != '-' || buf[start + 7] != '-') {
+            return contains(ConvertUtil.parseEpochDay(buf, start, end));
+        }
+        return (fromBytes == null || Arrays.compare(buf, start, end, fromBytes, 0, 10) >= 0)
+                && (toBytes == null || Arrays.compare(buf, start, end, toBytes, 0, 10) <= 0);
+    }
+
+    /** Same test for the String fields of the univocity path. */
+    public boolean contains(String date) {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return contains((int) LocalDate.parse(date).toEpochDay());
+        }
+        return (fromText == null || date.compareTo(fromText) >= 0) && (toText == null || date.compareTo(toText) <= 0);
+    }
+
+    public boolean contains(int epochDay) {
+        return epochDay >= fromDay && epochDay <= toDay;
+    }
+
+    @Override
+    public String toString() {
+        return (from == null ? "..." : fromText) + " to " + (to == null ? "..." : toText);
+    }
+
+    // only 4-digit years have the 10-byte form that compares bytewise
+    private static String iso(LocalDate d) {
+        if (d == null) return null;
+        if (d.getYear() < 0 || d.getYear() > 9999) throw new IllegalArgumentException("Year out of range: " + d);
+        return d.toString();
+    }
+}
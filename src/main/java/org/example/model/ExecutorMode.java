@@ -0,0 +1,8 @@
+package org.example.model;
+
+public enum ExecutorMode {
+    // one platform thread per shard
+    PLATFORM,
+    // one virtual thread per shard, multiplexed on the JDK's work-stealing carrier pool (--threads carriers)
+    VIRTUAL
+}
@@ -0,0 +1,10 @@
+package org.example.model;
+
+public enum IngestMode {
+    // memory-mapped input, newline-aligned chunks parsed from bytes on every thread
+    MMAP,
+    // single univocity producer feeding the shard queues
+    STREAM,
+    // single producer decoding rows straight from bytes into the shard queues
+    BYTES
+}
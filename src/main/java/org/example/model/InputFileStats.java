@@ -0,0 +1,61 @@
+package org.example.model;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/** Size, rows and wall time of one input file, for the per-file throughput report. */
+public class InputFileStats {
+    private final Path file;
+    private final long bytes;
+    private long rows;
+    private long startNanos = Long.MAX_VALUE;
+    private long endNanos = Long.MIN_VALUE;
+    // read-ahead input only: reader thread inside the file, parser waiting for it; -1 = not measured
+    private long readNanos = -1;
+    private long waitNanos = -1;
+
+    public InputFileStats(Path file, long bytes) {
+        this.file = file;
+        this.bytes = bytes;
+    }
+
+    /** Records one parsed piece of the file; pieces may be parsed concurrently. */
+    public synchronized void record(long startNanos, long endNanos, long rows) {
+        this.startNanos = Math.min(this.startNanos, startNanos);
+        this.endNanos = Math.max(this.endNanos, endNanos);
+        this.rows += rows;
+    }
+
+    /** Records the read-ahead timings of the file: time spent reading it, and time the parser waited for it. */
+    public synchronized void recordInput(long readNanos, long waitNanos) {
+        this.readNanos = readNanos;
+        this.waitNanos = waitNanos;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    public synchronized double getSeconds() {
+        return endNanos < startNanos ? 0 : (endNanos - startNanos) / 1_000_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        double mb = bytes / 1024.0 / 1024.0;
+        double sec = getSeconds();
+        String line = String.format(Locale.US, "Input %s: %.1f MB, %d rows in %.2fs (%.1f MB/s)",
+                file.getFileName(), mb, getRows(), sec, sec == 0 ? 0 : mb / sec);
+        if (waitNanos < 0) return line;
+        return line + String.format(Locale.US, ", read %.0f ms, parser waited on input %.0f ms / parsed %.0f ms",
+                readNanos / 1e6, waitNanos / 1e6, Math.max(0, sec * 1e3 - waitNanos / 1e6));
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.model;
+
+import java.util.Locale;
+
+/** Ranking metrics over a campaign's totals. NaN means undefined (e.g. CPA without conversions): never ranked. */
+public enum Metric {
+    // clicks / impressions, highest first; 0 without impressions
+    CTR(false) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return imp == 0 ? 0.0 : (double) clk / imp;
+        }
+    },
+    // spend / conversions, lowest first
+    CPA(true) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return conv == 0 ? Double.NaN : sp / conv;
+        }
+    },
+    SPEND(false) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return sp;
+        }
+    },
+    CONVERSIONS(false) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return conv;
+        }
+    },
+    // conversions / clicks, highest first
+    CVR(false) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return clk == 0 ? Double.NaN : (double) conv / clk;
+        }
+    },
+    // spend / clicks, lowest first
+    CPC(true) {
+        @Override
+        public double value(long imp, long clk, double sp, long conv) {
+            return clk == 0 ? Double.NaN : sp / clk;
+        }
+    };
+
+    private final boolean ascending;
+
+    Metric(boolean ascending) {
+        this.ascending = ascending;
+    }
+
+    public abstract double value(long imp, long clk, double sp, long conv);
+
+    public double value(Result r) {
+        return value(r.getTotalImpressions(), r.getTotalClicks(), r.getTotalSpend(), r.getTotalConversions());
+    }
+
+    /** True when lower values rank first (costs). */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /** True when {@code a} ranks strictly before {@code b}. */
+    public boolean better(double a, double b) {
+        return ascending ? a < b : a > b;
+    }
+
+    /** Output file of the top {@code k} list, e.g. top10_ctr.csv. */
+    public String fileName(int k) {
+        return "top" + k + "_" + name().toLowerCase(Locale.ROOT) + ".csv";
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR events of the queue pipeline. They cost nothing unless a recording is running
+ * ({@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}); see {@link PipelineMetrics}.
+ */
+public class PipelineEvents {
+
+    /** A producer blocked on a full shard queue, or a worker on an empty one. */
+    @Name("org.example.QueueWait")
+    @Label("Queue Wait")
+    @Category({"Aggregator", "Pipeline"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class QueueWait extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Shard")
+        int shard;
+
+        public QueueWait(String operation, int shard) {
+            this.operation = operation;
+            this.shard = shard;
+        }
+    }
+
+    private static final EventType QUEUE_WAIT = EventType.getEventType(QueueWait.class);
+
+    /**
+     * A begun {@link QueueWait}, or null when no recording has it enabled, so a wait allocates nothing
+     * without JFR; commit it when the wait ends.
+     */
+    public static QueueWait beginQueueWait(String operation, int shard) {
+        if (!QUEUE_WAIT.isEnabled()) return null;
+        QueueWait event = new QueueWait(operation, shard);
+        event.begin();
+        return event;
+    }
+
+    /** Pipeline totals so far, emitted at the recording's period. */
+    @Name("org.example.PipelineProgress")
+    @Label("Pipeline Progress")
+    @Category({"Aggregator", "Pipeline"})
+    @Period("1 s")
+    @StackTrace(false)
+    public static class Progress extends Event {
+        @Label("Rows Parsed")
+        long rows;
+        @Label("Batches Aggregated")
+        long batches;
+        @Label("Queued Batches")
+        int queued;
+        @Label("Put Blocked")
+        @Timespan(Timespan.NANOSECONDS)
+        long putBlocked;
+        @Label("Take Idle")
+        @Timespan(Timespan.NANOSECONDS)
+        long takeIdle;
+        @Label("Aggregate Tables")
+        @DataAmount
+        long tableBytes;
+    }
+}
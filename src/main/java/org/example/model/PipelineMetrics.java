@@ -0,0 +1,346 @@
+package org.example.model;
+
+import jdk.jfr.FlightRecorder;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the queue pipeline spends its time: parse rate and queue stalls per producer, batches and idle
+ * time per worker, queue depth and table size per shard. Every thread writes only its own counters
+ * (plain fields, no atomics) and the clock is read only when a queue operation has to wait, so the
+ * hot path costs a few increments. Progress lines read the counters racily; totals are exact once
+ * the stage is done. The same numbers go to the JFR {@link PipelineEvents.Progress} event.
+ */
+public class PipelineMetrics {
+
+    /** Counters of one producer thread; only that thread writes them. */
+    public static final class Producer {
+        private final long[] flushes;
+        private long rows;
+        private long blockedPuts;
+        private long putBlockedNanos;
+        private long combinedRows;
+        private long combinedKeys;
+        private int combinerOff;
+        private long startNanos;
+        private long endNanos;
+
+        public Producer(int shards) {
+            this.flushes = new long[shards];
+        }
+
+        public void started() {
+            if (startNanos == 0) startNanos = System.nanoTime();
+        }
+
+        public void finished() {
+            endNanos = System.nanoTime();
+        }
+
+        /** One row parsed, whether or not it passes the date filter. */
+        public void row() {
+            rows++;
+        }
+
+        public void flushed(int shard) {
+            flushes[shard]++;
+        }
+
+        /** A put that found the queue full and waited {@code nanos}. */
+        public void blocked(long nanos) {
+            blockedPuts++;
+            putBlockedNanos += nanos;
+        }
+
+        /** A combiner window summed {@code rows} rows into {@code keys} batch entries. */
+        public void combined(long rows, long keys) {
+            combinedRows += rows;
+            combinedKeys += keys;
+        }
+
+        /** A shard's combiner saw too little repetition and switched off for a while. */
+        public void combinerOff() {
+            combinerOff++;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getPutBlockedNanos() {
+            return putBlockedNanos;
+        }
+
+        public long getCombinedRows() {
+            return combinedRows;
+        }
+
+        public long getCombinedEntries() {
+            return combinedKeys;
+        }
+
+        public int getCombinerOff() {
+            return combinerOff;
+        }
+
+        long wallNanos() {
+            return startNanos == 0 ? 0 : (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+        }
+    }
+
+    /** Counters of one shard worker; only that worker writes them. */
+    public static final class Worker {
+        private long batches;
+        private long rows;
+        private long idleTakes;
+        private long takeIdleNanos;
+        private long startNanos;
+        private long endNanos;
+
+        public void started() {
+            startNanos = System.nanoTime();
+        }
+
+        public void finished() {
+            endNanos = System.nanoTime();
+        }
+
+        public void batch(int rows) {
+            batches++;
+            this.rows += rows;
+        }
+
+        /** A take that found the queue empty and waited {@code nanos}. */
+        public void idle(long nanos) {
+            idleTakes++;
+            takeIdleNanos += nanos;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getTakeIdleNanos() {
+            return takeIdleNanos;
+        }
+
+        long wallNanos() {
+            return startNanos == 0 ? 0 : (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+        }
+    }
+
+    private final BlockingQueue<RowBatch>[] queues;
+    private final AggTable[] tables;
+    private final BatchPool pool;
+    private final List<Producer> producers = new CopyOnWriteArrayList<>();
+    private final Worker[] workers;
+    private final long startNanos = System.nanoTime();
+    private long endNanos;
+
+    // queue depth seen by the progress samples
+    private final int[] maxDepth;
+    private final long[] depthSum;
+    private long samples;
+    private long lastRows;
+    private long lastSampleNanos = startNanos;
+
+    private ScheduledExecutorService progress;
+    private final Runnable jfrHook = this::emitProgressEvent;
+
+    public PipelineMetrics(BlockingQueue<RowBatch>[] queues, AggTable[] tables, BatchPool pool) {
+        this.queues = queues;
+        this.tables = tables;
+        this.pool = pool;
+        this.workers = new Worker[queues.length];
+        for (int i = 0; i < workers.length; i++) workers[i] = new Worker();
+        this.maxDepth = new int[queues.length];
+        this.depthSum = new long[queues.length];
+        FlightRecorder.addPeriodicEvent(PipelineEvents.Progress.class, jfrHook);
+    }
+
+    public void register(Producer producer) {
+        producers.add(producer);
+    }
+
+    public Worker worker(int shard) {
+        return workers[shard];
+    }
+
+    /** Prints {@link #progressLine()} every {@code millis} (0 = never) until {@link #stop()}. */
+    public void startProgress(long millis) {
+        if (millis <= 0) return;
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> System.out.println(progressLine()), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the progress line and the JFR event; call once producers and workers are done. */
+    public void stop() {
+        endNanos = System.nanoTime();
+        if (progress != null) progress.shutdownNow();
+        FlightRecorder.removePeriodicEvent(jfrHook);
+    }
+
+    public long rows() {
+        long rows = 0;
+        for (Producer p : producers) rows += p.rows;
+        return rows;
+    }
+
+    /** Rows/s since the previous line, queued batches, stall times and table sizes so far. */
+    public synchronized String progressLine() {
+        long now = System.nanoTime();
+        long rows = rows();
+        double rate = (rows - lastRows) * 1e9 / Math.max(1, now - lastSampleNanos);
+        lastRows = rows;
+        lastSampleNanos = now;
+
+        int queued = 0;
+        for (int i = 0; i < queues.length; i++) {
+            int depth = queues[i].size();
+            maxDepth[i] = Math.max(maxDepth[i], depth);
+            depthSum[i] += depth;
+            queued += depth;
+        }
+        samples++;
+        long campaigns = 0;
+        for (AggTable t : tables) campaigns += t.size();
+        return String.format(Locale.US,
+                "Progress: %.1fs, %d rows (%.2fM rows/s), %d/%d batches queued, put blocked %.0f ms,"
+                        + " take idle %.0f ms, %d table entries",
+                (now - startNanos) / 1e9, rows, rate / 1e6, queued, queues.length * capacity(),
+                putBlockedNanos() / 1e6, takeIdleNanos() / 1e6, campaigns);
+    }
+
+    /**
+     * Parsing (and dispatch) run on the producers, aggregation on the workers: producers that wait on
+     * full queues point at the workers, workers that wait on empty queues point at the producers.
+     */
+    public String bottleneck() {
+        double blocked = share(putBlockedNanos(), producerNanos());
+        double idle = share(takeIdleNanos(), workerNanos());
+        if (blocked > 0.2) return String.format(Locale.US, "aggregation (producers blocked %.0f%%)", blocked * 100);
+        if (idle > 0.5) return String.format(Locale.US, "parsing (workers idle %.0f%%)", idle * 100);
+        return "balanced";
+    }
+
+    /** One line for the end of the run. */
+    public String summary() {
+        double sec = elapsedNanos() / 1e9;
+        return String.format(Locale.US,
+                "Pipeline: %.2fM rows/s parsed, producers blocked %.0f%% of their time, workers idle %.0f%%"
+                        + " -> bottleneck: %s",
+                rows() / Math.max(sec, 1e-9) / 1e6, share(putBlockedNanos(), producerNanos()) * 100,
+                share(takeIdleNanos(), workerNanos()) * 100, bottleneck());
+    }
+
+    /** Rows summed by the producers' combiners and the batch entries they became; null if none ran. */
+    public String combinerSummary() {
+        long rows = 0, keys = 0, off = 0;
+        for (Producer p : producers) {
+            rows += p.combinedRows;
+            keys += p.combinedKeys;
+            off += p.combinerOff;
+        }
+        if (rows == 0) return null;
+        return String.format(Locale.US, "Combiner: %d rows -> %d batch entries (%.1fx), %d of %d rows combined,"
+                        + " switched off %d times", rows, keys, (double) rows / Math.max(1, keys), rows, rows(), off);
+    }
+
+    /** The full report: totals, every producer and every shard. */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n");
+        double sec = elapsedNanos() / 1e9;
+        sb.append(String.format(Locale.US, "  \"seconds\": %.3f,\n  \"rows\": %d,\n  \"rowsPerSecond\": %.0f,\n",
+                sec, rows(), rows() / Math.max(sec, 1e-9)));
+        sb.append("  \"bottleneck\": \"").append(bottleneck()).append("\",\n");
+        sb.append("  \"poolExhausted\": ").append(pool == null ? 0 : pool.exhaustedCount()).append(",\n");
+        sb.append("  \"progressSamples\": ").append(samples).append(",\n");
+
+        sb.append("  \"producers\": [");
+        for (int i = 0; i < producers.size(); i++) {
+            Producer p = producers.get(i);
+            long puts = 0;
+            for (long f : p.flushes) puts += f;
+            double psec = p.wallNanos() / 1e9;
+            sb.append(i == 0 ? "\n" : ",\n").append(String.format(Locale.US,
+                    "    {\"rows\": %d, \"seconds\": %.3f, \"rowsPerSecond\": %.0f, \"batches\": %d,"
+                            + " \"blockedPuts\": %d, \"putBlockedMs\": %.1f, \"combinedRows\": %d,"
+                            + " \"combinedEntries\": %d, \"combinerOff\": %d}",
+                    p.rows, psec, p.rows / Math.max(psec, 1e-9), puts, p.blockedPuts, p.putBlockedNanos / 1e6,
+                    p.combinedRows, p.combinedKeys, p.combinerOff));
+        }
+        sb.append("\n  ],\n");
+
+        sb.append("  \"shards\": [");
+        for (int s = 0; s < workers.length; s++) {
+            Worker w = workers[s];
+            long flushed = 0;
+            for (Producer p : producers) flushed += p.flushes[s];
+            sb.append(s == 0 ? "\n" : ",\n").append(String.format(Locale.US,
+                    "    {\"shard\": %d, \"batchesFlushed\": %d, \"batchesAggregated\": %d, \"rows\": %d,"
+                            + " \"idleTakes\": %d, \"takeIdleMs\": %.1f, \"busyMs\": %.1f,"
+                            + " \"maxQueueDepth\": %d, \"meanQueueDepth\": %.1f, \"tableEntries\": %d}",
+                    s, flushed, w.batches, w.rows, w.idleTakes, w.takeIdleNanos / 1e6,
+                    (w.wallNanos() - w.takeIdleNanos) / 1e6, maxDepth[s],
+                    samples == 0 ? 0.0 : (double) depthSum[s] / samples, tables[s].size()));
+        }
+        return sb.append("\n  ]\n}\n").toString();
+    }
+
+    private void emitProgressEvent() {
+        PipelineEvents.Progress e = new PipelineEvents.Progress();
+        e.rows = rows();
+        for (Worker w : workers) e.batches += w.batches;
+        for (BlockingQueue<RowBatch> q : queues) e.queued += q.size();
+        e.putBlocked = putBlockedNanos();
+        e.takeIdle = takeIdleNanos();
+        for (AggTable t : tables) e.tableBytes += t.footprintBytes();
+        e.commit();
+    }
+
+    private int capacity() {
+        return queues.length == 0 ? 0 : queues[0].size() + queues[0].remainingCapacity();
+    }
+
+    private long elapsedNanos() {
+        return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    private long putBlockedNanos() {
+        long n = 0;
+        for (Producer p : producers) n += p.putBlockedNanos;
+        return n;
+    }
+
+    private long producerNanos() {
+        long n = 0;
+        for (Producer p : producers) n += p.wallNanos();
+        return n;
+    }
+
+    private long takeIdleNanos() {
+        long n = 0;
+        for (Worker w : workers) n += w.takeIdleNanos;
+        return n;
+    }
+
+    private long workerNanos() {
+        long n = 0;
+        for (Worker w : workers) n += w.wallNanos();
+        return n;
+    }
+
+    private static double share(long part, long whole) {
+        return whole <= 0 ? 0 : (double) part / whole;
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.model;
+
+import org.example.util.SpscRingQueue;
+import org.example.util.WaitStrategy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public enum QueueImpl {
+    // java.util.concurrent.ArrayBlockingQueue: lock + conditions per put/take
+    ABQ,
+    // lock-free single-producer/single-consumer ring; each shard queue has exactly one of each
+    SPSC;
+
+    public <E> BlockingQueue<E> create(int capacity, WaitStrategy wait) {
+        return this == SPSC ? new SpscRingQueue<>(capacity, wait) : new ArrayBlockingQueue<>(capacity);
+    }
+}
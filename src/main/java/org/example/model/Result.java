@@ -8,11 +8,15 @@ public class Result {
     private final Double cpa;      // spend / conversions (null if conversions == 0)
 
     public Result(String id, Agg a) {
+        this(id, a.getImpressions(), a.getClicks(), a.getSpend(), a.getConversions());
+    }
+
+    public Result(String id, long impressions, long clicks, double spend, long conversions) {
         this.campaignId = id;
-        this.totalImpressions = a.getImpressions();
-        this.totalClicks = a.getClicks();
-        this.totalSpend = a.getSpend();
-        this.totalConversions = a.getConversions();
+        this.totalImpressions = impressions;
+        this.totalClicks = clicks;
+        this.totalSpend = spend;
+        this.totalConversions = conversions;
         this.ctr = (totalImpressions == 0) ? 0.0 : ((double) totalClicks) / totalImpressions;
         this.cpa = (totalConversions == 0) ? null : (totalSpend / totalConversions);
     }
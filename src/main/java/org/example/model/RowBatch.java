@@ -3,7 +3,8 @@ package org.example.model;
 public class RowBatch {
     private static final RowBatch POISON = new RowBatch(0, true);
 
-    private final String[] campaignId;
+    private final int[] campaignId;      // CampaignDictionary ids
+    private final int[] day;             // epoch days, only filled in per-day mode
     private final long[] impressions, clicks, conversions;
     private final double[] spend;
     private int size = 0;
@@ -15,14 +16,15 @@ public class RowBatch {
 
     private RowBatch(int capacity, boolean poison) {
         this.poison = poison;
-        this.campaignId = poison ? null : new String[capacity];
+        this.campaignId = poison ? null : new int[capacity];
+        this.day = poison ? null : new int[capacity];
         this.impressions = poison ? null : new long[capacity];
         this.clicks = poison ? null : new long[capacity];
         this.conversions = poison ? null : new long[capacity];
         this.spend = poison ? null : new double[capacity];
     }
 
-    public void add(String id, long imp, long clk, double sp, long conv) {
+    public void add(int id, long imp, long clk, double sp, long conv) {
         int i = size++;
         campaignId[i] = id;
         impressions[i] = imp;
@@ -31,6 +33,16 @@ public class RowBatch {
         conversions[i] = conv;
     }
 
+    public void add(int id, int epochDay, long imp, long clk, double sp, long conv) {
+        day[size] = epochDay;
+        add(id, imp, clk, sp, conv);
+    }
+
+    /** Makes the batch reusable; the columns are overwritten by the next {@link #add} calls. */
+    public void reset() {
+        size = 0;
+    }
+
     boolean isFull() {
         return size == campaignId.length;
     }
@@ -43,10 +55,14 @@ public class RowBatch {
         return POISON;
     }
 
-    public String[] getCampaignId() {
+    public int[] getCampaignId() {
         return campaignId;
     }
 
+    public int[] getDay() {
+        return day;
+    }
+
     public long[] getImpressions() {
         return impressions;
     }
@@ -0,0 +1,145 @@
+package org.example.model;
+
+import java.util.Arrays;
+
+/**
+ * Picks the shard for a row. Normally a campaign always goes to its home shard {@code id % shards};
+ * with skew handling on, a space-saving summary over sampled rows finds campaigns that carry more
+ * than half a shard's fair share, and their rows are then spread round-robin over all shards.
+ * The partial aggregates of those campaigns must be folded back with {@link #mergeSpread} once the
+ * workers are done. Used by the single producer thread only.
+ */
+public class ShardRouter {
+    // 1 in SAMPLE_EVERY rows feeds the summary
+    private static final int SAMPLE_EVERY = 16;
+    // sampled rows per evaluation; counters are halved afterwards so the summary follows the input
+    private static final int WINDOW = 1024;
+    private static final int TRACKED = 64;
+
+    private final int shards;
+    private final boolean skewAware;
+    private final long[] shardRows;
+
+    // space-saving summary: TRACKED (id, count, overestimate) entries
+    private final int[] trackedIds = new int[TRACKED];
+    private final long[] counts = new long[TRACKED];
+    private final long[] errors = new long[TRACKED];
+    private int tracked;
+    private int sampled;
+    private long routed;
+
+    private boolean[] hot = new boolean[0];
+    private int[] spread = new int[4];
+    private int spreadCount;
+    private int next;
+
+    public ShardRouter(int shards, boolean skewAware) {
+        this.shards = shards;
+        this.skewAware = skewAware && shards > 1;
+        this.shardRows = new long[shards];
+    }
+
+    public int route(int id) {
+        int shard;
+        if (!skewAware) {
+            shard = id % shards;
+        } else {
+            if ((routed++ & (SAMPLE_EVERY - 1)) == 0) sample(id);
+            if (id < hot.length && hot[id]) {
+                shard = next;
+                if (++next == shards) next = 0;
+            } else {
+                shard = id % shards;
+            }
+        }
+        shardRows[shard]++;
+        return shard;
+    }
+
+    /** Rows routed so far. */
+    public long rows() {
+        long total = 0;
+        for (long r : shardRows) total += r;
+        return total;
+    }
+
+    /** Rows routed to each shard so far. */
+    public long[] shardRows() {
+        return shardRows.clone();
+    }
+
+    /** Campaign ids whose rows were spread over several shards. */
+    public int[] spreadIds() {
+        return Arrays.copyOf(spread, spreadCount);
+    }
+
+    /** Moves every spread campaign's partial aggregates into its home shard. */
+    public static void mergeSpread(AggTable[] shardAggs, int[] ids) {
+        int shards = shardAggs.length;
+        for (int id : ids) {
+            AggTable home = shardAggs[id % shards];
+            for (int s = 0; s < shards; s++) {
+                AggTable t = shardAggs[s];
+                if (t == home) continue;
+                int slot = t.find(id);
+                if (slot < 0) continue;
+                home.add(id, t.impressionsAt(slot), t.clicksAt(slot), t.spendAt(slot), t.conversionsAt(slot));
+                t.remove(id);
+            }
+        }
+    }
+
+    /** max / mean of the per-shard row counts; 1.0 is a perfect balance. */
+    public static double imbalance(long[] shardRows) {
+        long max = 0, total = 0;
+        for (long r : shardRows) {
+            max = Math.max(max, r);
+            total += r;
+        }
+        return total == 0 ? 1.0 : max * (double) shardRows.length / total;
+    }
+
+    private void sample(int id) {
+        int i = indexOf(id);
+        if (i >= 0) {
+            counts[i]++;
+        } else if (tracked < TRACKED) {
+            trackedIds[tracked] = id;
+            counts[tracked] = 1;
+            errors[tracked] = 0;
+            tracked++;
+        } else {
+            // evict the minimum; the newcomer inherits its count as possible overestimate
+            int min = 0;
+            for (int j = 1; j < TRACKED; j++) if (counts[j] < counts[min]) min = j;
+            trackedIds[min] = id;
+            errors[min] = counts[min];
+            counts[min]++;
+        }
+        if (++sampled == WINDOW) evaluate();
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < tracked; i++) if (trackedIds[i] == id) return i;
+        return -1;
+    }
+
+    private void evaluate() {
+        // guaranteed count above half a shard's fair share of the window
+        long threshold = WINDOW / (2L * shards);
+        for (int i = 0; i < tracked; i++) {
+            if (counts[i] - errors[i] > threshold) markHot(trackedIds[i]);
+            counts[i] >>= 1;
+            errors[i] >>= 1;
+        }
+        sampled = 0;
+    }
+
+    private void markHot(int id) {
+        if (id < hot.length && hot[id]) return;
+        if (id >= hot.length) hot = Arrays.copyOf(hot, Math.max(id + 1, hot.length * 2));
+        hot[id] = true;
+        if (spreadCount == spread.length) spread = Arrays.copyOf(spread, spreadCount * 2);
+        spread[spreadCount++] = id;
+    }
+}
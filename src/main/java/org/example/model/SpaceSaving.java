@@ -0,0 +1,246 @@
+package org.example.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters (Metwally et al.) over campaign ids in fixed memory: at most
+ * {@code capacity} counters, each holding a campaign's row count, the part of that count it may have
+ * inherited without seeing the rows ({@code error}), and the sums of the rows it did see since it was
+ * last admitted. A new campaign takes over the counter with the lowest count once all are in use.
+ * <p>
+ * For N rows and m counters: count - error &lt;= true rows &lt;= count, error &lt;= N / m, and every
+ * campaign with more than N / m rows holds a counter. The sums are exact for a counter with error 0
+ * and otherwise miss the rows of at most {@code error} rows. {@link #merge} keeps the same bounds
+ * over the combined N (Cafaro et al., parallel Space Saving).
+ */
+public class SpaceSaving {
+
+    /** Visits one counter; {@code key} is the campaign id's UTF-8 bytes. */
+    public interface Visitor {
+        void visit(byte[] key, long count, long error, long imp, long clk, double sp, long conv);
+    }
+
+    /** Hash of every campaign id passed to {@link #add}; parts to be merged must agree on it. */
+    public static long hash(byte[] buf, int from, int to) {
+        return HyperLogLog.hash(buf, from, to);
+    }
+
+    private final int capacity;
+    private final byte[][] keys;
+    private final long[] hashes;
+    private final long[] counts, errors, impressions, clicks, conversions;
+    private final double[] spend;
+    private int size;
+    private long rows;
+
+    // min-heap of counter indices by count, and each counter's place in it
+    private final int[] heap, heapPos;
+    // linear probing: counter index + 1, 0 = empty; at most half full
+    private final int[] slots;
+    private final int mask;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+        this.keys = new byte[capacity][];
+        this.hashes = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.impressions = new long[capacity];
+        this.clicks = new long[capacity];
+        this.conversions = new long[capacity];
+        this.spend = new double[capacity];
+        this.heap = new int[capacity];
+        this.heapPos = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity) * 4];
+        this.mask = slots.length - 1;
+    }
+
+    /** Counts one row of the campaign whose id is the bytes [from, to), with {@code hash} from {@link #hash}. */
+    public void add(byte[] buf, int from, int to, long hash, long imp, long clk, double sp, long conv) {
+        rows++;
+        int slot = find(buf, from, to, hash);
+        int c;
+        if (slots[slot] != 0) {
+            c = slots[slot] - 1;
+            counts[c]++;
+            impressions[c] += imp;
+            clicks[c] += clk;
+            spend[c] += sp;
+            conversions[c] += conv;
+            siftDown(heapPos[c]);
+            return;
+        }
+        if (size < capacity) {
+            c = size++;
+            heap[c] = c;
+            heapPos[c] = c;
+            counts[c] = 1;
+            errors[c] = 0;
+            siftUp(c);
+        } else {
+            // the campaign with the fewest rows hands its counter over, count included
+            c = heap[0];
+            delete(find(keys[c], 0, keys[c].length, hashes[c]));
+            slot = find(buf, from, to, hash);
+            errors[c] = counts[c];
+            counts[c]++;
+            siftDown(0);
+        }
+        keys[c] = Arrays.copyOfRange(buf, from, to);
+        hashes[c] = hash;
+        impressions[c] = imp;
+        clicks[c] = clk;
+        spend[c] = sp;
+        conversions[c] = conv;
+        slots[slot] = c + 1;
+    }
+
+    // the slot holding the key, or the empty slot where it would go
+    private int find(byte[] buf, int from, int to, long hash) {
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            int e = slots[i] - 1;
+            if (e < 0) return i;
+            if (hashes[e] == hash && Arrays.equals(keys[e], 0, keys[e].length, buf, from, to)) return i;
+        }
+    }
+
+    // backward-shift deletion keeps every probe chain unbroken without tombstones
+    private void delete(int slot) {
+        int i = slot;
+        for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = (int) hashes[slots[j] - 1] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                slots[i] = slots[j];
+                i = j;
+            }
+        }
+        slots[i] = 0;
+    }
+
+    private void siftUp(int pos) {
+        int c = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[c]) break;
+            place(pos, heap[parent]);
+            pos = parent;
+        }
+        place(pos, c);
+    }
+
+    private void siftDown(int pos) {
+        int c = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[heap[child]] >= counts[c]) break;
+            place(pos, heap[child]);
+            pos = child;
+        }
+        place(pos, c);
+    }
+
+    private void place(int pos, int c) {
+        heap[pos] = c;
+        heapPos[c] = pos;
+    }
+
+    /**
+     * Combines summaries of disjoint parts of the input into one of {@code capacity} counters. A campaign
+     * missing from a full part may have had up to that part's minimum count there, so it is credited
+     * that much (as count and error); the {@code capacity} largest counts are kept.
+     */
+    public static SpaceSaving merge(List<SpaceSaving> parts, int capacity) {
+        long[] floors = new long[parts.size()];
+        long floorSum = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            floors[p] = parts.get(p).minCount();
+            floorSum += floors[p];
+        }
+
+        // per campaign: count and error sums over the parts that hold it, plus the floors of the others
+        Map<String, Entry> union = new HashMap<>();
+        for (int p = 0; p < parts.size(); p++) {
+            long floor = floors[p];
+            parts.get(p).forEach((key, count, error, imp, clk, sp, conv) -> {
+                Entry e = union.computeIfAbsent(new String(key, StandardCharsets.UTF_8), k -> new Entry(key));
+                e.count += count - floor;
+                e.error += error - floor;
+                e.imp += imp;
+                e.clk += clk;
+                e.sp += sp;
+                e.conv += conv;
+            });
+        }
+        List<Entry> entries = new ArrayList<>(union.values());
+        entries.sort((x, y) -> Long.compare(y.count, x.count));
+
+        SpaceSaving out = new SpaceSaving(capacity);
+        for (SpaceSaving part : parts) out.rows += part.rows;
+        for (int i = 0; i < Math.min(capacity, entries.size()); i++) {
+            Entry e = entries.get(i);
+            int c = out.size++;
+            long hash = hash(e.key, 0, e.key.length);
+            out.keys[c] = e.key;
+            out.hashes[c] = hash;
+            out.counts[c] = e.count + floorSum;
+            out.errors[c] = e.error + floorSum;
+            out.impressions[c] = e.imp;
+            out.clicks[c] = e.clk;
+            out.spend[c] = e.sp;
+            out.conversions[c] = e.conv;
+            out.slots[out.find(e.key, 0, e.key.length, hash)] = c + 1;
+            out.heap[c] = c;
+            out.siftUp(c);
+        }
+        return out;
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        long count, error, imp, clk, conv;
+        double sp;
+
+        Entry(byte[] key) {
+            this.key = key;
+        }
+    }
+
+    public void forEach(Visitor v) {
+        for (int c = 0; c < size; c++) {
+            v.visit(keys[c], counts[c], errors[c], impressions[c], clicks[c], spend[c], conversions[c]);
+        }
+    }
+
+    /** Lowest count held, or 0 while not all counters are in use (an absent campaign was never seen). */
+    public long minCount() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    /** Largest error of any counter; at most {@link #rows()} / capacity. */
+    public long maxError() {
+        long max = 0;
+        for (int c = 0; c < size; c++) max = Math.max(max, errors[c]);
+        return max;
+    }
+
+    /** Rows counted, over all merged parts. */
+    public long rows() {
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens plain, .gz, .zip (first file entry) and .zst inputs as a stream of CSV bytes. Compressed
+ * inputs are decoded on their own thread through a {@link ReadAheadInputStream}, so inflating and
+ * parsing overlap. gzip and zip use the JDK; zstd needs zstd-jni on the classpath (mvn -Pzstd).
+ */
+public class CompressedInput {
+    static final int BLOCK_SIZE = 1024 * 1024;
+    static final int BLOCKS = 8;
+    private static final String ZSTD_STREAM = "com.github.luben.zstd.ZstdInputStream";
+
+    public static boolean isCompressed(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".gz") || name.endsWith(".zip") || name.endsWith(".zst");
+    }
+
+    public static InputStream open(Path file) throws IOException {
+        if (!isCompressed(file)) return Files.newInputStream(file);
+        return new ReadAheadInputStream(decoder(file), BLOCK_SIZE, BLOCKS, "decompress-" + file.getFileName());
+    }
+
+    /** Decompressing stream on the calling thread. */
+    static InputStream decoder(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        try {
+            if (name.endsWith(".gz")) return new GZIPInputStream(raw, 1 << 16);
+            if (name.endsWith(".zip")) return firstEntry(new ZipInputStream(raw), file);
+            return zstd(raw);
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private static InputStream firstEntry(ZipInputStream zip, Path file) throws IOException {
+        for (ZipEntry e; (e = zip.getNextEntry()) != null; ) {
+            if (!e.isDirectory()) return zip;
+        }
+        throw new IOException("No file entry in " + file);
+    }
+
+    private static InputStream zstd(InputStream raw) throws IOException {
+        Constructor<?> ctor;
+        try {
+            ctor = Class.forName(ZSTD_STREAM).getConstructor(InputStream.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalArgumentException(".zst input needs zstd-jni on the classpath (build with -Pzstd)");
+        }
+        try {
+            return (InputStream) ctor.newInstance(raw);
+        } catch (ReflectiveOperationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Cannot open zstd stream", cause);
+        }
+    }
+}
@@ -1,29 +1,216 @@
 package org.example.util;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
 public class ConvertUtil {
+    // largest mantissa and power of ten that are both exact in a double (Clinger's fast path)
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     public static long parseLongFast(String s) {
-        long v = 0;
-        for (int i = 0; i < s.length(); i++) v = v * 10 + (s.charAt(i) - '0');
-        return v;
+        return parseLong(s, 0, s.length());
     }
 
     public static double parseDoubleFast(String s) {
-        long intPart = 0, fracPart = 0, div = 1;
-        boolean dot = false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '.') {
-                dot = true;
-                continue;
+        return parseDouble(s, 0, s.length());
+    }
+
+    /** Parses an optionally signed decimal long from buf[from, to) without allocating. */
+    public static long parseLong(byte[] buf, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+        if (i >= to) throw malformed(buf, from, to);
+
+        // accumulate negatively so Long.MIN_VALUE parses without overflow
+        long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multMin = limit / 10;
+        long v = 0;
+        for (; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9 || v < multMin) throw malformed(buf, from, to);
+            v *= 10;
+            if (v < limit + d) throw malformed(buf, from, to);
+            v -= d;
+        }
+        return neg ? v : -v;
+    }
+
+    public static long parseLong(CharSequence s, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) neg = s.charAt(i++) == '-';
+        if (i >= to) throw malformed(s, from, to);
+
+        long limit = neg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multMin = limit / 10;
+        long v = 0;
+        for (; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9 || v < multMin) throw malformed(s, from, to);
+            v *= 10;
+            if (v < limit + d) throw malformed(s, from, to);
+            v -= d;
+        }
+        return neg ? v : -v;
+    }
+
+    /**
+     * Parses a decimal double (sign, fraction and exponent allowed) from buf[from, to).
+     * Values whose mantissa and exponent are exactly representable are computed in place;
+     * anything else is handed to {@link Double#parseDouble} so rounding stays correct.
+     */
+    public static double parseDouble(byte[] buf, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean any = false, exact = true;
+        for (; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) break;
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + d;
+                if (mantissa != 0) digits++;
+            } else {
+                exact = false;
+            }
+        }
+        if (i < to && buf[i] == '.') {
+            for (i++; i < to; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) break;
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                    if (mantissa != 0) digits++;
+                    scale--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (!any) return slowDouble(buf, from, to);
+
+        if (i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+            int j = i + 1;
+            boolean expNeg = false;
+            if (j < to && (buf[j] == '-' || buf[j] == '+')) expNeg = buf[j++] == '-';
+            if (j >= to) throw malformed(buf, from, to);
+            int exp = 0;
+            for (; j < to; j++) {
+                int d = buf[j] - '0';
+                if (d < 0 || d > 9) throw malformed(buf, from, to);
+                if (exp < 100_000) exp = exp * 10 + d;
+            }
+            scale += expNeg ? -exp : exp;
+            i = j;
+        }
+        if (i != to || !exact || mantissa > MAX_EXACT_MANTISSA || scale < -22 || scale > 22) {
+            return slowDouble(buf, from, to);
+        }
+        double v = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+        return neg ? -v : v;
+    }
+
+    public static double parseDouble(CharSequence s, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) neg = s.charAt(i++) == '-';
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean any = false, exact = true;
+        for (; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) break;
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + d;
+                if (mantissa != 0) digits++;
+            } else {
+                exact = false;
+            }
+        }
+        if (i < to && s.charAt(i) == '.') {
+            for (i++; i < to; i++) {
+                int d = s.charAt(i) - '0';
+                if (d < 0 || d > 9) break;
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                    if (mantissa != 0) digits++;
+                    scale--;
+                } else {
+                    exact = false;
+                }
             }
-            int d = c - '0';
-            if (!dot) intPart = intPart * 10 + d;
-            else {
-                fracPart = fracPart * 10 + d;
-                div *= 10;
+        }
+        if (!any) return Double.parseDouble(s.subSequence(from, to).toString());
+
+        if (i < to && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean expNeg = false;
+            if (j < to && (s.charAt(j) == '-' || s.charAt(j) == '+')) expNeg = s.charAt(j++) == '-';
+            if (j >= to) throw malformed(s, from, to);
+            int exp = 0;
+            for (; j < to; j++) {
+                int d = s.charAt(j) - '0';
+                if (d < 0 || d > 9) throw malformed(s, from, to);
+                if (exp < 100_000) exp = exp * 10 + d;
             }
+            scale += expNeg ? -exp : exp;
+            i = j;
         }
-        return intPart + (fracPart / (double) div);
+        if (i != to || !exact || mantissa > MAX_EXACT_MANTISSA || scale < -22 || scale > 22) {
+            return Double.parseDouble(s.subSequence(from, to).toString());
+        }
+        double v = scale < 0 ? mantissa / POW10[-scale] : mantissa * POW10[scale];
+        return neg ? -v : v;
+    }
+
+    // rare inputs (NaN, Infinity, hex, 19+ significant digits) and malformed text go through the JDK
+    private static double slowDouble(byte[] buf, int from, int to) {
+        return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Parses an ISO date (yyyy-MM-dd) from buf[from, to) into days since 1970-01-01. The common
+     * fixed-width form is decoded in place; anything else goes through {@link LocalDate#parse}.
+     */
+    public static int parseEpochDay(byte[] buf, int from, int to) {
+        if (to - from == 10 && buf[from + 4] == '-' && buf[from + 7] == '-') {
+            int y = digits(buf, from, from + 4), m = digits(buf, from + 5, from + 7), d = digits(buf, from + 8, to);
+            if (y >= 0 && m >= 0 && d >= 0) return (int) LocalDate.of(y, m, d).toEpochDay();
+        }
+        return (int) LocalDate.parse(new String(buf, from, to - from, StandardCharsets.UTF_8)).toEpochDay();
+    }
+
+    // unsigned decimal of buf[from, to), -1 when a byte is not a digit
+    private static int digits(byte[] buf, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static NumberFormatException malformed(byte[] buf, int from, int to) {
+        return new NumberFormatException("For input string: \""
+                + new String(buf, from, to - from, StandardCharsets.UTF_8) + "\"");
+    }
+
+    private static NumberFormatException malformed(CharSequence s, int from, int to) {
+        return new NumberFormatException("For input string: \"" + s.subSequence(from, to) + "\"");
     }
 
     public static long usedMemoryBytes() {
@@ -0,0 +1,229 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits raw CSV bytes into rows of the fixed 6-column schema without decoding them.
+ * Field bounds are reported as [start, end) pairs into the caller's buffer, with surrounding
+ * whitespace trimmed like univocity does by default. Quoted fields
+ * have their quotes stripped and escaped quotes ("") unescaped in place, so the buffer must
+ * be writable. Extra columns are ignored; rows with fewer columns are rejected.
+ * <p>
+ * With a {@link DelimiterIndex} the block is first indexed in chunks (all ',' '\n' '"' positions at
+ * once, over whole vector lanes) and field ends are taken from that list; a row that starts a
+ * quoted field still goes through the byte-by-byte slow path.
+ */
+public class CsvByteScanner {
+    public static final int COLUMNS = 6;
+
+    public interface RowHandler {
+        void row(byte[] buf, int[] fields);
+    }
+
+    // bytes indexed per step, so the position list stays small
+    private static final int CHUNK = 16 * 1024;
+
+    private final int[] fields = new int[COLUMNS * 2];
+    private final DelimiterIndex index; // null = test every byte in the row loop
+    private final int[] positions;
+    private int count;
+    private int cursor;
+    private int indexedTo;
+
+    /** Uses {@link DelimiterIndex#VECTOR} when the vector module is loaded, else the byte loop. */
+    public CsvByteScanner() {
+        this(DelimiterIndex.VECTOR);
+    }
+
+    /** "vector (256-bit)" or "scalar": what {@link #CsvByteScanner()} uses in this JVM. */
+    public static String describe() {
+        return DelimiterIndex.VECTOR == null ? "scalar" : DelimiterIndex.VECTOR.describe();
+    }
+
+    public CsvByteScanner(DelimiterIndex index) {
+        this.index = index;
+        this.positions = index == null ? null : new int[CHUNK];
+    }
+
+    /**
+     * Scans rows in buf[from, to) and returns the offset of the first byte that was not consumed.
+     * Unless {@code last} is set, a trailing row without its line terminator is left unconsumed
+     * so the caller can carry it over into the next block.
+     */
+    public int scan(byte[] buf, int from, int to, boolean last, RowHandler handler) {
+        count = cursor = 0;
+        indexedTo = from;
+        int pos = from;
+        while (pos < to) {
+            int next = scanRow(buf, pos, to, last, handler);
+            if (next < 0) break;
+            pos = next;
+        }
+        return pos;
+    }
+
+    /**
+     * Streams every row of {@code in} into {@code handler}, reading it in blocks of
+     * {@code blockSize} bytes; the first line is dropped when {@code skipHeader} is set.
+     */
+    public void scan(InputStream in, int blockSize, boolean skipHeader, RowHandler handler) throws IOException {
+        byte[] buf = new byte[blockSize];
+        int len = 0;
+        boolean header = skipHeader;
+        boolean last = false;
+        while (!last) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) last = true;
+            else len += n;
+
+            int start = 0;
+            if (header) {
+                start = skipLine(buf, 0, len);
+                if (start < 0) {
+                    if (!last) continue;
+                    start = len;
+                }
+                header = false;
+            }
+            int consumed = scan(buf, start, len, last, handler);
+            System.arraycopy(buf, consumed, buf, 0, len - consumed);
+            len -= consumed;
+        }
+    }
+
+    /** Returns the offset just past the first line terminator at or after {@code from}, or -1. */
+    public static int skipLine(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '\n') return i + 1;
+        }
+        return -1;
+    }
+
+    private int scanRow(byte[] buf, int start, int to, boolean last, RowHandler handler) {
+        int pos = start;
+        int n = 0;
+        while (true) {
+            if (pos < to && buf[pos] == '"') return scanQuotedRow(buf, start, to, last, handler);
+
+            int s = pos;
+            if (index == null) {
+                while (pos < to && buf[pos] != ',' && buf[pos] != '\n') pos++;
+            } else {
+                pos = fieldEnd(buf, pos, to);
+            }
+            if (pos >= to && !last) return -1;
+
+            int e = pos;
+            while (e > s && (buf[e - 1] & 0xff) <= ' ') e--;
+            while (s < e && (buf[s] & 0xff) <= ' ') s++;
+            if (n == 0 && e == s && (pos >= to || buf[pos] == '\n')) {
+                return pos >= to ? to : pos + 1; // empty line
+            }
+            if (n < COLUMNS) {
+                fields[n * 2] = s;
+                fields[n * 2 + 1] = e;
+            }
+            n++;
+
+            if (pos >= to || buf[pos] == '\n') {
+                emit(buf, n, handler);
+                return pos >= to ? to : pos + 1;
+            }
+            pos++; // ','
+        }
+    }
+
+    // the next ',' or '\n' at or after from, or to; a '"' inside an unquoted field is an ordinary byte
+    private int fieldEnd(byte[] buf, int from, int to) {
+        while (true) {
+            while (cursor < count) {
+                int p = positions[cursor];
+                if (p >= from && buf[p] != '"') return p;
+                cursor++;
+            }
+            if (indexedTo >= to) return to;
+            int start = Math.max(indexedTo, from);
+            int end = (int) Math.min(to, (long) start + CHUNK);
+            count = index.index(buf, start, end, positions);
+            cursor = 0;
+            indexedTo = end;
+        }
+    }
+
+    // slow path: find the row end honouring quotes first, so an incomplete row is never modified
+    private int scanQuotedRow(byte[] buf, int start, int to, boolean last, RowHandler handler) {
+        int rowEnd = findRowEnd(buf, start, to);
+        if (rowEnd < 0) {
+            if (!last) return -1;
+            rowEnd = to;
+        }
+
+        int pos = start;
+        int n = 0;
+        while (true) {
+            int s, e;
+            if (pos < rowEnd && buf[pos] == '"') {
+                int r = pos + 1;
+                int w = r;
+                s = w;
+                while (r < rowEnd) {
+                    byte c = buf[r];
+                    if (c == '"') {
+                        if (r + 1 < rowEnd && buf[r + 1] == '"') {
+                            buf[w++] = '"';
+                            r += 2;
+                            continue;
+                        }
+                        r++;
+                        break;
+                    }
+                    buf[w++] = c;
+                    r++;
+                }
+                e = w;
+                pos = r;
+                while (pos < rowEnd && buf[pos] != ',') pos++;
+            } else {
+                s = pos;
+                while (pos < rowEnd && buf[pos] != ',') pos++;
+                e = pos;
+                while (e > s && (buf[e - 1] & 0xff) <= ' ') e--;
+                while (s < e && (buf[s] & 0xff) <= ' ') s++;
+            }
+            if (n < COLUMNS) {
+                fields[n * 2] = s;
+                fields[n * 2 + 1] = e;
+            }
+            n++;
+
+            if (pos >= rowEnd) {
+                emit(buf, n, handler);
+                return rowEnd < to ? rowEnd + 1 : to;
+            }
+            pos++; // ','
+        }
+    }
+
+    private static int findRowEnd(byte[] buf, int from, int to) {
+        boolean quoted = false;
+        for (int i = from; i < to; i++) {
+            byte c = buf[i];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void emit(byte[] buf, int n, RowHandler handler) {
+        if (n < COLUMNS) {
+            throw new IllegalArgumentException("Expected " + COLUMNS + " columns but found " + n);
+        }
+        handler.row(buf, fields);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Newline-aligned splitting of a file range, so every chunk starts at the beginning of a row.
+ * Quotes are not tracked: a boundary may land inside a quoted field with a line break, which
+ * {@code MmapCsvIngest.parseRange} detects and rejects.
+ */
+public class CsvChunker {
+
+    /**
+     * Returns {@code parts + 1} ascending boundaries covering [from, to). Interior boundaries are
+     * moved forward to the byte after the next '\n'; empty chunks are possible for small ranges.
+     */
+    public static long[] split(FileChannel ch, long from, long to, int parts) throws IOException {
+        long[] bounds = new long[parts + 1];
+        bounds[0] = from;
+        bounds[parts] = to;
+
+        long step = (to - from) / parts;
+        for (int i = 1; i < parts; i++) {
+            long nominal = Math.max(from + step * i, bounds[i - 1]);
+            bounds[i] = nominal >= to ? to : nextLineStart(ch, nominal, to);
+        }
+        return bounds;
+    }
+
+    /** Offset of the byte following the first '\n' at or after {@code pos - 1}, capped at {@code to}. */
+    public static long nextLineStart(FileChannel ch, long pos, long to) throws IOException {
+        if (pos <= 0) return 0;
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long p = pos - 1; // pos itself is a row start when the previous byte is '\n'
+        while (p < to) {
+            buf.clear();
+            int n = ch.read(buf, p);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return Math.min(p + i + 1, to);
+            }
+            p += n;
+        }
+        return to;
+    }
+
+    /** Offset just past the last '\n' in [from, to), or {@code from} when the range has none. */
+    public static long lastLineEnd(FileChannel ch, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        for (long end = to; end > from; ) {
+            long start = Math.max(from, end - buf.capacity());
+            buf.clear().limit((int) (end - start));
+            int n = 0;
+            while (buf.hasRemaining()) {
+                int r = ch.read(buf, start + n);
+                if (r <= 0) break;
+                n += r;
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (buf.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.util;
+
+/**
+ * Finds the structural bytes of a CSV block (',' '\n' '"'), so {@link CsvByteScanner} can split rows
+ * from a list of positions instead of testing every byte itself. Only worth it with vectors:
+ * {@link #VECTOR} compares whole lanes with {@code jdk.incubator.vector} and is null unless the JVM
+ * runs with {@code --add-modules jdk.incubator.vector}, in which case the scanner keeps its own byte loop.
+ */
+public interface DelimiterIndex {
+
+    /**
+     * Writes the positions of every ',', '\n' and '"' in buf[from, to) to {@code out} in ascending
+     * order and returns how many there are; {@code out} must have room for {@code to - from}.
+     */
+    int index(byte[] buf, int from, int to, int[] out);
+
+    /** Short name for the startup line. */
+    default String describe() {
+        return "scalar index";
+    }
+
+    /** Byte-at-a-time reference; slower than the scanner's own loop, used to check the vector index. */
+    DelimiterIndex SCALAR = (buf, from, to, out) -> {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            byte c = buf[i];
+            if (c == ',' || c == '\n' || c == '"') out[n++] = i;
+        }
+        return n;
+    };
+
+    /** The vector index, or null when the incubator module is not loaded. */
+    DelimiterIndex VECTOR = vector();
+
+    private static DelimiterIndex vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
+        try {
+            // only linked when the module is there
+            return (DelimiterIndex) Class.forName("org.example.util.VectorDelimiterIndex")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
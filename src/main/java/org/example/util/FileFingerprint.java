@@ -0,0 +1,56 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C fingerprints of file contents. {@link #sample} reads a bounded window at each end of a
+ * prefix, so it can be checked on every run whatever the file size; {@link #range} and {@link #chain}
+ * cover every byte of a range, for bytes the caller reads anyway or when a full check is asked for.
+ */
+public class FileFingerprint {
+    // bytes hashed at each end of the prefix by sample()
+    public static final int SAMPLE_WINDOW = 64 * 1024;
+    private static final int BUFFER = 1 << 20;
+
+    /** CRC32C of the length, the first and the last {@link #SAMPLE_WINDOW} bytes of [0, length). */
+    public static long sample(FileChannel ch, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(8).putLong(length).flip());
+        long head = Math.min(SAMPLE_WINDOW, length);
+        update(crc, ch, 0, head);
+        update(crc, ch, Math.max(head, length - SAMPLE_WINDOW), length);
+        return crc.getValue();
+    }
+
+    /** CRC32C of the bytes [from, to). */
+    public static long range(FileChannel ch, long from, long to) throws IOException {
+        CRC32C crc = new CRC32C();
+        update(crc, ch, from, to);
+        return crc.getValue();
+    }
+
+    /**
+     * Extends {@code previous} (the chain over the bytes before {@code from}, 0 for none) over [from, to):
+     * the CRC32C of the previous value followed by those bytes. Only the new bytes are read.
+     */
+    public static long chain(long previous, FileChannel ch, long from, long to) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(8).putLong(previous).flip());
+        update(crc, ch, from, to);
+        return crc.getValue();
+    }
+
+    private static void update(CRC32C crc, FileChannel ch, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.min(BUFFER, Math.max(to - from, 1)));
+        for (long pos = from; pos < to; ) {
+            buf.clear().limit((int) Math.min(buf.capacity(), to - pos));
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new IOException("file ends before byte " + to);
+            crc.update(buf.flip());
+            pos += n;
+        }
+    }
+}
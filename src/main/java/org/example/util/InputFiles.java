@@ -0,0 +1,84 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Expands an --input value into the files to read: a comma-separated list whose items are a file,
+ * a directory (its .csv/.gz/.zip/.zst files) or a glob such as {@code data/ad_*.csv}. Directory and glob
+ * matches are sorted by path so runs are repeatable.
+ */
+public class InputFiles {
+
+    public static List<Path> resolve(String spec) {
+        List<Path> out = new ArrayList<>();
+        for (String item : spec.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) continue;
+            List<Path> matched = isGlob(item) ? glob(item) : expand(Paths.get(item));
+            if (matched.isEmpty()) throw new IllegalArgumentException("No input files match " + item);
+            out.addAll(matched);
+        }
+        if (out.isEmpty()) throw new IllegalArgumentException("No input files in " + spec);
+        return out;
+    }
+
+    /** File extensions picked up when a directory is given. */
+    static boolean isDataFile(Path p) {
+        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        return !name.startsWith(".") && (name.endsWith(".csv") || CompressedInput.isCompressed(p));
+    }
+
+    private static boolean isGlob(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return true;
+        }
+        return false;
+    }
+
+    private static List<Path> expand(Path p) {
+        if (!Files.isDirectory(p)) {
+            if (!Files.isRegularFile(p)) throw new IllegalArgumentException("Input not found: " + p);
+            return List.of(p);
+        }
+        try (Stream<Path> files = Files.list(p)) {
+            return files.filter(Files::isRegularFile).filter(InputFiles::isDataFile).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> glob(String pattern) {
+        // walk from the deepest directory that has no wildcard in it
+        Path pat = Paths.get(pattern);
+        Path base = pat.isAbsolute() ? pat.getRoot() : Paths.get("");
+        for (Path part : pat) {
+            if (isGlob(part.toString())) break;
+            base = base.resolve(part);
+        }
+        boolean relative = base.toString().isEmpty();
+        Path walkFrom = relative ? Paths.get(".") : base;
+        if (!Files.isDirectory(walkFrom)) return List.of();
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> files = Files.walk(walkFrom)) {
+            return files.filter(Files::isRegularFile)
+                    .map(f -> relative ? walkFrom.relativize(f) : f)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
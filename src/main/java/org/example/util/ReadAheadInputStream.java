@@ -0,0 +1,186 @@
+package org.example.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads {@code source} on a background thread into a bounded ring of recycled blocks, so expensive
+ * reads (decompression, slow or remote filesystems) overlap with whoever consumes this stream.
+ * Single consumer.
+ * <p>
+ * Both sides are timed: {@link #getReadNanos()} is the reader thread inside the source,
+ * {@link #getWaitNanos()} the consumer finding no block ready. A consumer that waits is
+ * input-bound; one that never waits is the bottleneck itself.
+ */
+public class ReadAheadInputStream extends InputStream {
+    // fills the block from position 0 and returns the byte count; fewer than a full block = end of input
+    private interface Source extends Closeable {
+        int fill(ByteBuffer block) throws IOException;
+    }
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Source source;
+    private final BlockingQueue<ByteBuffer> full;
+    private final BlockingQueue<ByteBuffer> free;
+    private final Thread reader;
+    private volatile Throwable failure;
+    private volatile long readNanos;
+    private long waitNanos;
+
+    private ByteBuffer current;
+    private boolean eof;
+
+    public ReadAheadInputStream(InputStream source, int blockSize, int blocks, String name) {
+        this(new Source() {
+            @Override
+            public int fill(ByteBuffer block) throws IOException {
+                return readFully(source, block.array());
+            }
+
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+        }, blockSize, blocks, false, name);
+    }
+
+    /**
+     * Reads {@code file} ahead through its FileChannel into {@code blocks} direct buffers of
+     * {@code blockSize} bytes, so the channel needs no temporary buffer per read.
+     */
+    public static ReadAheadInputStream open(Path file, int blockSize, int blocks) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        return new ReadAheadInputStream(new Source() {
+            @Override
+            public int fill(ByteBuffer block) throws IOException {
+                while (block.hasRemaining() && ch.read(block) >= 0) {
+                    // a short read is not the end, only -1 is
+                }
+                return block.position();
+            }
+
+            @Override
+            public void close() throws IOException {
+                ch.close();
+            }
+        }, blockSize, blocks, true, "read-ahead-" + file.getFileName());
+    }
+
+    private ReadAheadInputStream(Source source, int blockSize, int blocks, boolean direct, String name) {
+        this.source = source;
+        this.full = new ArrayBlockingQueue<>(blocks + 1);
+        this.free = new ArrayBlockingQueue<>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            free.add(direct ? ByteBuffer.allocateDirect(blockSize) : ByteBuffer.allocate(blockSize));
+        }
+        this.reader = new Thread(this::fill, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void fill() {
+        try {
+            while (true) {
+                ByteBuffer b = free.take();
+                b.clear();
+                long t0 = System.nanoTime();
+                int len = source.fill(b);
+                readNanos += System.nanoTime() - t0;
+                b.position(0).limit(len);
+                if (len > 0) full.put(b);
+                if (len < b.capacity()) break;
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Throwable e) {
+            // anything the source throws (a reflectively loaded decoder included) reaches the consumer
+            failure = e;
+        } finally {
+            // never blocks: the queue has room for every block plus END
+            full.offer(END);
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int n = 0;
+        while (n < buf.length) {
+            int r = in.read(buf, n, buf.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureData()) return -1;
+        int n = Math.min(len, current.remaining());
+        current.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current.get() & 0xff;
+    }
+
+    private boolean ensureData() throws IOException {
+        if (current != null && current.hasRemaining()) return true;
+        if (eof) return false;
+        if (current != null) free.add(current);
+        current = null;
+        try {
+            // the clock is only read when the reader is behind
+            ByteBuffer b = full.poll();
+            if (b == null) {
+                long t0 = System.nanoTime();
+                b = full.take();
+                waitNanos += System.nanoTime() - t0;
+            }
+            if (b == END) {
+                eof = true;
+                Throwable f = failure;
+                if (f instanceof IOException io) throw io;
+                if (f != null) throw new IOException("read-ahead failed", f);
+                return false;
+            }
+            current = b;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /** Time the reader thread spent reading the source so far. */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /** Time the consumer spent waiting for a block; only meaningful on the consumer thread. */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+}
@@ -0,0 +1,203 @@
+package org.example.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded lock-free ring buffer for exactly one producer thread and one consumer thread.
+ * <p>
+ * The producer only writes {@code tail}, the consumer only writes {@code head}; each publishes
+ * with a release store and reads the other's counter with an acquire load, and only when its
+ * cached copy says the ring is full / empty. Both counters (and their caches) sit on their own
+ * cache lines so the two threads do not false-share. Blocking calls wait via a {@link WaitStrategy}
+ * instead of locks and conditions.
+ * <p>
+ * Calling {@code offer/put} from more than one thread (or {@code poll/take} from more than one
+ * thread) is not supported. {@link #iterator()} may be called from any thread and returns a weakly
+ * consistent snapshot, so {@code toString}, {@code contains} and {@code toArray} work for logging and
+ * metrics; removing through it (and so {@code remove(Object)} of a queued element) is not supported.
+ */
+public class SpscRingQueue<E> extends SpscRingQueueFields<E> implements BlockingQueue<E> {
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            HEAD = l.findVarHandle(ConsumerIndex.class, "head", long.class);
+            TAIL = l.findVarHandle(ProducerIndex.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object[] buffer;
+    private final int mask;
+    private final WaitStrategy wait;
+
+    /** {@code capacity} is rounded up to a power of two. */
+    public SpscRingQueue(int capacity, WaitStrategy wait) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        int cap = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[cap];
+        this.mask = cap - 1;
+        this.wait = Objects.requireNonNull(wait);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long t = tail;
+        if (t - headCache >= buffer.length) {
+            headCache = (long) HEAD.getAcquire(this);
+            if (t - headCache >= buffer.length) return false;
+        }
+        SLOT.set(buffer, (int) t & mask, e);
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = (long) TAIL.getAcquire(this);
+            if (h >= tailCache) return null;
+        }
+        int i = (int) h & mask;
+        E e = (E) SLOT.get(buffer, i);
+        SLOT.set(buffer, i, null);
+        HEAD.setRelease(this, h + 1);
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long h = head;
+        if (h >= (long) TAIL.getAcquire(this)) return null;
+        return (E) SLOT.get(buffer, (int) h & mask);
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        for (int attempt = 0; !offer(e); attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            wait.idle(attempt);
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        for (int attempt = 0; (e = poll()) == null; attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            wait.idle(attempt);
+        }
+        return e;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int attempt = 0; !offer(e); attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (System.nanoTime() - deadline >= 0) return false;
+            wait.idle(attempt);
+        }
+        return true;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        for (int attempt = 0; (e = poll()) == null; attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (System.nanoTime() - deadline >= 0) return null;
+            wait.idle(attempt);
+        }
+        return e;
+    }
+
+    @Override
+    public int size() {
+        // read head first: tail only grows, so the difference can never be negative
+        long h = (long) HEAD.getAcquire(this);
+        long t = (long) TAIL.getAcquire(this);
+        return (int) Math.min(t - h, buffer.length);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.length - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) throw new IllegalArgumentException();
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    /** The elements queued at some point during the call, oldest first; later offers and polls are not seen. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        long h = (long) HEAD.getAcquire(this);
+        long t = (long) TAIL.getAcquire(this);
+        Object[] snapshot = new Object[(int) Math.min(t - h, buffer.length)];
+        int n = 0;
+        for (long p = h; p < t && n < snapshot.length; p++) {
+            Object e = SLOT.getAcquire(buffer, (int) p & mask);
+            // once head has passed p the slot was consumed, and maybe refilled with a later element
+            if (e == null || (long) HEAD.getAcquire(this) > p) continue;
+            snapshot[n++] = e;
+        }
+        return (Iterator<E>) Arrays.asList(Arrays.copyOf(snapshot, n)).iterator();
+    }
+}
+
+// ======== field layout: 64 bytes of padding around each side's index ========
+// fields of a superclass are laid out before the subclass', so the hierarchy fixes the order
+
+abstract class SpscPad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class ProducerIndex<E> extends SpscPad0<E> {
+    volatile long tail;   // written by the producer only
+    long headCache;       // producer's last view of head
+}
+
+abstract class SpscPad1<E> extends ProducerIndex<E> {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class ConsumerIndex<E> extends SpscPad1<E> {
+    volatile long head;   // written by the consumer only
+    long tailCache;       // consumer's last view of tail
+}
+
+abstract class SpscRingQueueFields<E> extends ConsumerIndex<E> {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -0,0 +1,38 @@
+package org.example.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/** What a thread does while a {@link SpscRingQueue} is full (producer) or empty (consumer). */
+public enum WaitStrategy {
+    // burns a core, lowest hand-off latency; only with a core per shard thread
+    SPIN {
+        @Override
+        public void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    // spins briefly, then gives the core away
+    YIELD {
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPIN_TRIES) Thread.onSpinWait();
+            else Thread.yield();
+        }
+    },
+    // spin, yield, then sleep in short parks: near-zero CPU when idle, ~50 us wake-up
+    PARK {
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPIN_TRIES) Thread.onSpinWait();
+            else if (attempt < SPIN_TRIES + YIELD_TRIES) Thread.yield();
+            else LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    /** Called once per failed attempt; {@code attempt} restarts at 0 after every successful hand-off. */
+    public abstract void idle(int attempt);
+}
@@ -0,0 +1,150 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.example.model.CampaignDictionary;
+import org.example.util.FileFingerprint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AggregateCheckpointTest {
+    private static final String HEADER = "campaign_id,date,impressions,clicks,spend,conversions\n";
+
+    private static String rows(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append("CMP").append(i % 13).append(",2025-01-01,").append(100 + i).append(',')
+                    .append(i % 5).append(',').append(i * 0.25).append(',').append(i % 2).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static Args args(Path input, Path out) {
+        return Args.parse(new String[]{"--input", input.toString(), "--output", out.toString(),
+                "--threads", "3", "--incremental", "true"});
+    }
+
+    // "<campaign>.<column>" -> sum, spend in cents
+    private static Map<String, Long> snapshot(CampaignDictionary dict, AggTable[] shards) {
+        Map<String, Long> m = new HashMap<>();
+        for (AggTable t : shards) {
+            t.forEach((id, imp, clk, sp, conv) -> {
+                String name = dict.name((int) id);
+                m.put(name + ".imp", imp);
+                m.put(name + ".clk", clk);
+                m.put(name + ".conv", conv);
+                m.put(name + ".spend", Math.round(sp * 100));
+            });
+        }
+        return m;
+    }
+
+    private static Map<String, Long> fullParse(Path input) throws Exception {
+        CampaignDictionary dict = new CampaignDictionary();
+        return snapshot(dict, MmapCsvIngest.parse(input, dict, 1, 1));
+    }
+
+    @Test
+    void resumesFromOffsetAndMatchesFullParse(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("ad_data.csv");
+        Path ckpt = dir.resolve(AggregateCheckpoint.FILE_NAME);
+        Files.writeString(input, HEADER + rows(0, 500), StandardCharsets.UTF_8);
+
+        AggregatorApp.runIncremental(args(input, dir), new CampaignDictionary(), 3);
+        long firstOffset = Files.size(input);
+        assertEquals(firstOffset, AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 3).offset());
+
+        // a half-written row is left for the next run
+        Files.writeString(input, rows(500, 800) + "CMP1,2025-01-02,5", StandardOpenOption.APPEND);
+        AggregatorApp.runIncremental(args(input, dir), new CampaignDictionary(), 3);
+        assertEquals(Files.size(input) - "CMP1,2025-01-02,5".length(),
+                AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 3).offset());
+
+        Files.writeString(input, ",1,2.5,0\n", StandardOpenOption.APPEND);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] resumed = AggregatorApp.runIncremental(args(input, dir), dict, 3);
+        assertEquals(fullParse(input), snapshot(dict, resumed));
+
+        // each run extended the chain over its own bytes only; the result is that of one pass
+        long[] offsets = {0, firstOffset, Files.size(input) - "CMP1,2025-01-02,5,1,2.5,0\n".length(), Files.size(input)};
+        long chain = 0;
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            for (int i = 1; i < offsets.length; i++) chain = FileFingerprint.chain(chain, ch, offsets[i - 1], offsets[i]);
+        }
+        assertEquals(chain, AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 3).chain());
+    }
+
+    @Test
+    void rejectsRewrittenOrTruncatedInputAndCorruptCheckpoint(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("ad_data.csv");
+        Path ckpt = dir.resolve(AggregateCheckpoint.FILE_NAME);
+        Files.writeString(input, HEADER + rows(0, 300), StandardCharsets.UTF_8);
+        assertNull(AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 2));
+        AggregatorApp.runIncremental(args(input, dir), new CampaignDictionary(), 3);
+
+        byte[] original = Files.readAllBytes(input);
+        byte[] rewritten = original.clone();
+        rewritten[HEADER.length() + 3] = '9'; // CMP0 -> CMP9 in the first row
+        Files.write(input, rewritten);
+        assertThrows(IllegalStateException.class,
+                () -> AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 2));
+
+        Files.write(input, Arrays.copyOf(original, original.length / 2));
+        assertThrows(IllegalStateException.class,
+                () -> AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 2));
+
+        Files.write(input, original);
+        byte[] c = Files.readAllBytes(ckpt);
+        c[c.length / 2] ^= 1;
+        Files.write(ckpt, c);
+        assertThrows(IllegalStateException.class,
+                () -> AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 2));
+
+        // in a large input only the sampled windows are read back: a rewrite of the last rows is caught
+        Files.writeString(input, HEADER + rows(0, 20_000), StandardCharsets.UTF_8);
+        AggregatorApp.runIncremental(args(input, dir), new CampaignDictionary(), 3);
+        byte[] large = Files.readAllBytes(input);
+        int tail = large.length - 100;
+        while (large[tail] < '0' || large[tail] > '8') tail++;
+        large[tail]++;
+        Files.write(input, large);
+        assertThrows(IllegalStateException.class,
+                () -> AggregateCheckpoint.read(ckpt, input, new CampaignDictionary(), 2));
+
+        // a rejected checkpoint falls back to a full rebuild
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] rebuilt = AggregatorApp.runIncremental(args(input, dir), dict, 3);
+        assertEquals(fullParse(input), snapshot(dict, rebuilt));
+    }
+
+    @Test
+    void keepsIdsLongerThan64KB(@TempDir Path dir) throws Exception {
+        Path input = Files.writeString(dir.resolve("ad_data.csv"), HEADER + rows(0, 10), StandardCharsets.UTF_8);
+        Path ckpt = dir.resolve(AggregateCheckpoint.FILE_NAME);
+        CampaignDictionary dict = new CampaignDictionary();
+        String longId = "L".repeat(70_000);
+        AggTable[] shards = AggTable.newShards(2);
+        int id = dict.idOf(longId);
+        shards[id % 2].add(id, 5, 1, 2.5, 1);
+        int other = dict.idOf("CMP1");
+        shards[other % 2].add(other, 7, 2, 1.0, 0);
+        AggregateCheckpoint.write(ckpt, input, Files.size(input), shards, dict);
+
+        CampaignDictionary readDict = new CampaignDictionary();
+        AggregateCheckpoint.State state = AggregateCheckpoint.read(ckpt, input, readDict, 2);
+        assertEquals(snapshot(dict, shards), snapshot(readDict, state.shards()));
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregateExportTest {
+
+    @Test
+    void readerReturnsEveryShardEntry(@TempDir Path tempDir) throws Exception {
+        int shards = 5;
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] tables = AggTable.newShards(shards);
+        for (int i = 0; i < 30_011; i++) {
+            // a few multi-byte ids, and every seventh campaign without conversions (no CPA)
+            int id = dict.idOf(i % 1000 == 0 ? "kampanj-å" + i : "CMP" + i);
+            tables[id % shards].add(id, 100 + i, i % 50, i * 0.25, i % 7 == 0 ? 0 : 1 + i % 3);
+        }
+        tables[3].clear(); // an empty shard in the middle
+
+        Path file = tempDir.resolve("out/aggregates.bin");
+        long rows = AggregateExport.write(file, tables, dict, 3);
+        AggregateExport export = AggregateExport.open(file);
+        assertEquals(rows, export.rows());
+        assertEquals(countIn(tables), rows);
+
+        Map<String, Integer> seen = new HashMap<>();
+        for (int r = 0; r < export.rows(); r++) {
+            String name = export.campaignId(r);
+            seen.put(name, r);
+            int id = dict.find(name);
+            AggTable t = tables[id % shards];
+            int slot = t.find(id);
+            assertTrue(slot >= 0, name);
+            assertEquals(t.impressionsAt(slot), export.impressions(r));
+            assertEquals(t.clicksAt(slot), export.clicks(r));
+            assertEquals(t.spendAt(slot), export.spend(r));
+            assertEquals(t.conversionsAt(slot), export.conversions(r));
+            assertEquals((double) t.clicksAt(slot) / t.impressionsAt(slot), export.ctr(r));
+            if (t.conversionsAt(slot) == 0) assertTrue(Double.isNaN(export.cpa(r)), name);
+            else assertEquals(t.spendAt(slot) / t.conversionsAt(slot), export.cpa(r));
+        }
+        assertEquals(countIn(tables), seen.size());
+        assertTrue(seen.containsKey("kampanj-å1000"));
+    }
+
+    @Test
+    void emptyAndDamagedFiles(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("aggregates.bin");
+        AggregateExport.write(file, AggTable.newShards(2), new CampaignDictionary(), 2);
+        assertEquals(0, AggregateExport.open(file).rows());
+
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] tables = AggTable.newShards(1);
+        tables[0].add(dict.idOf("c1"), 10, 1, 2.0, 1);
+        AggregateExport.write(file, tables, dict, 1);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 1);
+        }
+        assertThrows(IllegalStateException.class, () -> AggregateExport.open(file));
+
+        Files.writeString(file, "campaign_id,impressions\n");
+        assertThrows(IllegalStateException.class, () -> AggregateExport.open(file));
+    }
+
+    private static int countIn(AggTable[] tables) {
+        int n = 0;
+        for (AggTable t : tables) n += t.size();
+        return n;
+    }
+}
@@ -1,15 +1,30 @@
 package org.example.app;
 
 import org.example.model.Agg;
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.example.model.BatchPool;
+import org.example.model.CampaignDictionary;
+import org.example.model.DailyKey;
+import org.example.model.DateRange;
+import org.example.model.IngestMode;
+import org.example.model.Metric;
+import org.example.model.PipelineMetrics;
+import org.example.model.QueueImpl;
 import org.example.model.Result;
 import org.example.model.RowBatch;
+import org.example.model.ShardRouter;
+import org.example.model.BatchDispatchRowProcessor;
+import org.example.util.WaitStrategy;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,10 +34,15 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AggregatorAppTest {
@@ -33,23 +53,43 @@ class AggregatorAppTest {
         return a;
     }
 
+    private static AggTable[] shardsOf(CampaignDictionary dict, Map<String, Agg> aggs, int shards) {
+        AggTable[] out = AggTable.newShards(shards);
+        for (var e : aggs.entrySet()) {
+            int id = dict.idOf(e.getKey());
+            Agg a = e.getValue();
+            out[id % shards].add(id, a.getImpressions(), a.getClicks(), a.getSpend(), a.getConversions());
+        }
+        return out;
+    }
+
+    private static Map<String, Agg> toMap(CampaignDictionary dict, AggTable... shards) {
+        Map<String, Agg> map = new HashMap<>();
+        for (AggTable shard : shards) {
+            shard.forEach((id, imp, clk, sp, conv) -> map.put(dict.name((int) id), agg(imp, clk, sp, conv)));
+        }
+        return map;
+    }
+
     @Test
     void workerLoopAggregatesBatches() throws Exception {
         BlockingQueue<RowBatch> q = new ArrayBlockingQueue<>(2);
-        Map<String, Agg> map = new HashMap<>();
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable table = new AggTable();
 
-        Thread t = new Thread(() -> AggregatorApp.workerLoop(q, map));
+        Thread t = new Thread(() -> AggregatorApp.workerLoop(q, table));
         t.start();
 
         RowBatch b = new RowBatch(3);
-        b.add("c1", 10, 1, 2.0, 0);
-        b.add("c1", 5, 1, 1.0, 1);
-        b.add("c2", 7, 0, 3.5, 0);
+        b.add(dict.idOf("c1"), 10, 1, 2.0, 0);
+        b.add(dict.idOf("c1"), 5, 1, 1.0, 1);
+        b.add(dict.idOf("c2"), 7, 0, 3.5, 0);
 
         q.put(b);
         q.put(RowBatch.getPOISON());
         t.join(2000);
 
+        Map<String, Agg> map = toMap(dict, table);
         Agg a1 = map.get("c1");
         assertNotNull(a1);
         assertEquals(15, a1.getImpressions());
@@ -67,17 +107,14 @@ class AggregatorAppTest {
 
     @Test
     void top10ByCtrReturnsTop10Descending() {
-        @SuppressWarnings("unchecked")
-        Map<String, Agg>[] shardMaps = new Map[2];
-        shardMaps[0] = new HashMap<>();
-        shardMaps[1] = new HashMap<>();
-
+        Map<String, Agg> aggs = new HashMap<>();
         for (int i = 1; i <= 12; i++) {
             String id = "c" + i;
-            shardMaps[i % 2].put(id, agg(100, i, 0.0, 0));
+            aggs.put(id, agg(100, i, 0.0, 0));
         }
+        CampaignDictionary dict = new CampaignDictionary();
 
-        List<Result> results = AggregatorApp.top10ByCtr(shardMaps);
+        List<Result> results = AggregatorApp.top10ByCtr(shardsOf(dict, aggs, 2), dict);
         assertEquals(10, results.size());
         assertEquals("c12", results.get(0).getCampaignId());
         assertEquals("c3", results.get(9).getCampaignId());
@@ -89,18 +126,15 @@ class AggregatorAppTest {
 
     @Test
     void top10ByLowestCpaSkipsZeroConversionsAndSortsAscending() {
-        @SuppressWarnings("unchecked")
-        Map<String, Agg>[] shardMaps = new Map[2];
-        shardMaps[0] = new HashMap<>();
-        shardMaps[1] = new HashMap<>();
-
-        shardMaps[0].put("czero", agg(100, 1, 1.0, 0));
+        Map<String, Agg> aggs = new HashMap<>();
+        aggs.put("czero", agg(100, 1, 1.0, 0));
         for (int i = 1; i <= 12; i++) {
             String id = "c" + i;
-            shardMaps[i % 2].put(id, agg(100, 1, i, 1));
+            aggs.put(id, agg(100, 1, i, 1));
         }
+        CampaignDictionary dict = new CampaignDictionary();
 
-        List<Result> results = AggregatorApp.top10ByLowestCpa(shardMaps);
+        List<Result> results = AggregatorApp.top10ByLowestCpa(shardsOf(dict, aggs, 2), dict);
         assertEquals(10, results.size());
         assertEquals("c1", results.get(0).getCampaignId());
         assertEquals("c10", results.get(9).getCampaignId());
@@ -147,17 +181,16 @@ class AggregatorAppTest {
         BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
         for (int i = 0; i < shards; i++) queues[i] = new ArrayBlockingQueue<>(10);
 
-        @SuppressWarnings("unchecked")
-        Map<String, Agg>[] shardMaps = new Map[shards];
-        for (int i = 0; i < shards; i++) shardMaps[i] = new HashMap<>();
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggTable.newShards(shards);
 
         ExecutorService pool = Executors.newFixedThreadPool(shards);
         for (int i = 0; i < shards; i++) {
             int shard = i;
-            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardMaps[shard]));
+            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardAggs[shard]));
         }
 
-        AggregatorApp.parseCsvStreaming(tmp, queues, shards, batchSize);
+        AggregatorApp.parseCsvStreaming(tmp, dict, queues, shards, batchSize);
 
         for (int i = 0; i < shards; i++) queues[i].put(RowBatch.getPOISON());
 
@@ -165,8 +198,8 @@ class AggregatorAppTest {
         assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
 
         // Build top lists
-        List<Result> topCtr = AggregatorApp.top10ByCtr(shardMaps);
-        List<Result> topCpa = AggregatorApp.top10ByLowestCpa(shardMaps);
+        List<Result> topCtr = AggregatorApp.top10ByCtr(shardAggs, dict);
+        List<Result> topCpa = AggregatorApp.top10ByLowestCpa(shardAggs, dict);
 
         // Expected CTR max is CMP019: 236/7214 ~ 0.0327
         assertEquals("CMP019", topCtr.get(0).getCampaignId());
@@ -199,23 +232,442 @@ class AggregatorAppTest {
         BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
         queues[0] = new ArrayBlockingQueue<>(10);
 
-        @SuppressWarnings("unchecked")
-        Map<String, Agg>[] shardMaps = new Map[shards];
-        shardMaps[0] = new HashMap<>();
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggTable.newShards(shards);
 
         ExecutorService pool = Executors.newFixedThreadPool(1);
-        pool.submit(() -> AggregatorApp.workerLoop(queues[0], shardMaps[0]));
+        pool.submit(() -> AggregatorApp.workerLoop(queues[0], shardAggs[0]));
 
-        AggregatorApp.parseCsvStreaming(tmp, queues, shards, batchSize);
+        AggregatorApp.parseCsvStreaming(tmp, dict, queues, shards, batchSize);
         queues[0].put(RowBatch.getPOISON());
 
         pool.shutdown();
         assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
 
-        List<Result> topCpa = AggregatorApp.top10ByLowestCpa(shardMaps);
+        List<Result> topCpa = AggregatorApp.top10ByLowestCpa(shardAggs, dict);
         List<String> ids = topCpa.stream().map(r -> r.getCampaignId()).collect(Collectors.toList());
 
         assertTrue(ids.contains("CMP002"));
         assertFalse(ids.contains("CMP001")); // conversions=0 excluded
     }
+
+    @Test
+    void mmapIngestMatchesStreamingAcrossChunks(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\r\n");
+        for (int i = 0; i < 500; i++) {
+            String id = (i % 7 == 0) ? "\"CMP,\"\"" + (i % 13) + "\"\"\"" : "CMP" + (i % 13);
+            sb.append(id).append(",2025-01-01,").append(100 + i).append(',').append(i % 9)
+                    .append(',').append(i * 0.25).append(',').append(i % 4).append("\r\n");
+        }
+        sb.append("\r\n"); // trailing empty line
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        CampaignDictionary dict = new CampaignDictionary();
+        Map<String, Agg> merged = toMap(dict, MmapCsvIngest.parse(file, dict, 4, 3));
+
+        Map<String, Agg> streamed = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 7));
+
+        assertSameAggregates(streamed, merged);
+        assertTrue(merged.containsKey("CMP,\"0\""));
+    }
+
+    @Test
+    void mmapRejectsQuotedLineBreaksAcrossChunks(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions,note\n");
+        for (int i = 0; i < 2_000; i++) {
+            sb.append("CMP").append(i % 13).append(",2025-01-01,").append(100 + i).append(',').append(i % 9)
+                    .append(',').append(i * 0.25).append(',').append(i % 4).append(",\"first line\nsecond line\"\n");
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        // one chunk is the whole file, so every row is complete
+        CampaignDictionary dict = new CampaignDictionary();
+        Map<String, Agg> single = toMap(dict, MmapCsvIngest.parse(file, dict, 1, 3));
+        assertSameAggregates(runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 7)), single);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> MmapCsvIngest.parse(file, new CampaignDictionary(), 4, 3));
+        assertTrue(e.getMessage().contains("--ingest stream"), e.getMessage());
+
+        // mmap is opt-in: the default ingest reads the same file on any number of threads
+        Path out = tempDir.resolve("out");
+        String[] argv = {"--input", file.toString(), "--output", out.toString(), "--threads", "4"};
+        assertEquals(IngestMode.STREAM, Args.parse(argv).getIngest());
+        AggregatorApp.main(argv);
+        assertTrue(Files.readString(out.resolve("top10_ctr.csv")).contains("CMP"));
+    }
+
+    @Test
+    void byteDecodingPathMatchesStreaming(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 300; i++) {
+            sb.append("CMP").append(i % 11).append(",2025-01-0").append(1 + i % 9).append(',')
+                    .append(1000 + i).append(',').append(i % 5).append(',').append(i * 1.37).append(',')
+                    .append(i % 3).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        Map<String, Agg> streamed = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 16));
+        Map<String, Agg> decoded = runSingleShard((d, q) -> AggregatorApp.parseCsvBytes(file, d, q, 1, 16));
+        assertSameAggregates(streamed, decoded);
+    }
+
+    @Test
+    void pooledPipelineRecyclesBatchesAndMatchesUnpooled(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("CMP").append(i % 37).append(",2025-01-01,").append(100 + i).append(',')
+                    .append(i % 7).append(',').append(i * 0.25).append(',').append(i % 2).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        int shards = 3, batchSize = 8;
+        @SuppressWarnings("unchecked")
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) queues[i] = new ArrayBlockingQueue<>(1);
+        // two batches per shard: the producer keeps waiting for workers to hand batches back
+        BatchPool batches = new BatchPool(shards, 2, batchSize);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggTable.newShards(shards);
+
+        ExecutorService pool = Executors.newFixedThreadPool(shards);
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardAggs[shard], batches, shard));
+        }
+        AggregatorApp.parseCsvBytes(file, dict, queues, shards, batchSize, batches);
+        for (int i = 0; i < shards; i++) queues[i].put(RowBatch.getPOISON());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        Map<String, Agg> expected = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 16));
+        assertSameAggregates(expected, toMap(dict, shardAggs));
+        // every batch came back except the (empty) one the producer holds per shard
+        for (int i = 0; i < shards; i++) assertEquals(1, batches.available(i));
+    }
+
+    @Test
+    void spscQueuesMatchBlockingQueuesAndStopOnPoison(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 3000; i++) {
+            sb.append("CMP").append(i % 23).append(",2025-01-01,").append(10 + i).append(',')
+                    .append(i % 4).append(',').append(i * 0.5).append(',').append(i % 3).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        int shards = 4, batchSize = 16;
+        @SuppressWarnings("unchecked")
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) queues[i] = QueueImpl.SPSC.create(2, WaitStrategy.YIELD);
+        BatchPool batches = BatchPool.forQueues(shards, 2, batchSize, QueueImpl.SPSC, WaitStrategy.YIELD);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggTable.newShards(shards);
+
+        ExecutorService pool = Executors.newFixedThreadPool(shards);
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardAggs[shard], batches, shard));
+        }
+        AggregatorApp.parseCsvStreaming(file, dict, queues, shards, batchSize, batches);
+        for (int i = 0; i < shards; i++) queues[i].put(RowBatch.getPOISON());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        Map<String, Agg> expected = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 16));
+        assertSameAggregates(expected, toMap(dict, shardAggs));
+    }
+
+    @Test
+    void skewAwareRoutingMatchesSingleShardAfterMerge(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 40_000; i++) {
+            String id = i % 3 != 0 ? "HOT" : "CMP" + (i % 101);
+            sb.append(id).append(",2025-01-01,").append(10 + i % 50).append(',')
+                    .append(i % 4).append(',').append(i % 9 * 0.5).append(',').append(i % 3).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        int shards = 4, batchSize = 64;
+        @SuppressWarnings("unchecked")
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) queues[i] = new ArrayBlockingQueue<>(4);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggTable.newShards(shards);
+        ShardRouter router = new ShardRouter(shards, true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(shards);
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardAggs[shard]));
+        }
+        AggregatorApp.parseCsvBytes(file, new BatchDispatchRowProcessor(dict, queues, shards, batchSize, null, router));
+        for (int i = 0; i < shards; i++) queues[i].put(RowBatch.getPOISON());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, router.spreadIds().length);
+        assertEquals("HOT", dict.name(router.spreadIds()[0]));
+        ShardRouter.mergeSpread(shardAggs, router.spreadIds());
+
+        int entries = 0;
+        for (AggTable t : shardAggs) entries += t.size();
+        // batches of 64 keep the single-shard reference under runSingleShard's queue capacity
+        Map<String, Agg> expected = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 64));
+        assertEquals(expected.size(), entries); // no campaign left in two shards
+        assertSameAggregates(expected, toMap(dict, shardAggs));
+    }
+
+    @Test
+    void combinerShipsPartialSumsAndSwitchesOffWithoutRepetition(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 60_000; i++) {
+            // skewed head, then a tail where no campaign repeats
+            String id = i < 40_000 ? (i % 3 != 0 ? "HOT" : "CMP" + (i % 101)) : "U" + i;
+            sb.append(id).append(",2025-01-0").append(1 + i % 3).append(',').append(10 + i % 50).append(',')
+                    .append(i % 4).append(',').append(i % 9 * 0.5).append(',').append(i % 3).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        for (boolean daily : new boolean[]{false, true}) {
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] expected = AggTable.newShards(4), actual = AggTable.newShards(4);
+            BatchDispatchRowProcessor plain = dispatchToWorkers(file, dict, expected, daily, false);
+            BatchDispatchRowProcessor combined = dispatchToWorkers(file, dict, actual, daily, true);
+
+            for (int s = 0; s < expected.length; s++) {
+                AggTable want = expected[s], got = actual[s];
+                assertEquals(want.size(), got.size());
+                want.forEach((key, imp, clk, sp, conv) -> {
+                    int slot = got.find(key);
+                    assertTrue(slot >= 0);
+                    assertEquals(imp, got.impressionsAt(slot));
+                    assertEquals(clk, got.clicksAt(slot));
+                    assertEquals(sp, got.spendAt(slot), 1e-9);
+                    assertEquals(conv, got.conversionsAt(slot));
+                });
+            }
+            PipelineMetrics.Producer c = combined.getCounters();
+            assertEquals(0, plain.getCounters().getCombinedRows());
+            // the head collapses to a handful of entries per window; the tail turns the combiner off
+            assertTrue(c.getCombinedRows() >= 40_000, "combined " + c.getCombinedRows());
+            assertTrue(c.getCombinedEntries() < 40_000 / 10 + 20_000, "entries " + c.getCombinedEntries());
+            assertTrue(c.getCombinerOff() > 0);
+        }
+    }
+
+    // streams the file through one processor into a worker per shard table
+    private static BatchDispatchRowProcessor dispatchToWorkers(Path file, CampaignDictionary dict, AggTable[] shardAggs,
+                                                               boolean daily, boolean combine) throws Exception {
+        int shards = shardAggs.length, batchSize = 64;
+        @SuppressWarnings("unchecked")
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) queues[i] = new ArrayBlockingQueue<>(4);
+        ExecutorService pool = Executors.newFixedThreadPool(shards);
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            pool.submit(() -> AggregatorApp.workerLoop(queues[shard], shardAggs[shard], null, shard, daily));
+        }
+        BatchDispatchRowProcessor processor = new BatchDispatchRowProcessor(dict, queues, shards, batchSize, null,
+                new ShardRouter(shards, false), DateRange.ALL, daily, combine);
+        AggregatorApp.parseCsvBytes(file, processor);
+        for (int i = 0; i < shards; i++) queues[i].put(RowBatch.getPOISON());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        return processor;
+    }
+
+    @Test
+    void workerLocalTopKMatchesRankingAfterAggregation(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 40_000; i++) {
+            // two heavy campaigns get spread over all shards and must still rank with their full totals
+            String id = i % 3 == 0 ? "HOT" + (i % 2) : "CMP" + (i % 499);
+            sb.append(id).append(",2025-01-01,").append(10 + i % 50).append(',')
+                    .append(i % 4).append(',').append(i % 9 * 0.5).append(',').append(i % 3).append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("ad_data.csv"), sb.toString(), StandardCharsets.UTF_8);
+
+        Args a = Args.parse(new String[]{"--input", file.toString(), "--output", tempDir.toString(),
+                "--threads", "2", "--shards", "4", "--ingest", "bytes", "--workerTopK", "true"});
+        RankingEngine ranking = new RankingEngine(5, List.of(Metric.values()));
+        CampaignDictionary dict = new CampaignDictionary();
+        AggregatorApp.PipelineResult result = AggregatorApp.runQueuePipeline(a, dict, 4, 64, ranking);
+
+        Map<Metric, List<Result>> expected = ranking.rank(result.shards(), dict);
+        assertTrue(expected.get(Metric.SPEND).get(0).getCampaignId().startsWith("HOT"));
+        for (Metric m : Metric.values()) {
+            assertEquals(expected.get(m).stream().map(Result::getCampaignId).toList(),
+                    result.ranking().get(m).stream().map(Result::getCampaignId).toList(), m.name());
+        }
+    }
+
+    @Test
+    void virtualWorkersOverManyLogicalShardsMatchStreaming(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 20_000; i++) {
+            sb.append("CMP").append(i % 257).append(",2025-01-01,").append(10 + i % 50).append(',')
+                    .append(i % 4).append(',').append(i % 9 * 0.5).append(',').append(i % 3).append('\n');
+        }
+        Path file = tempDir.resolve("ad_data.csv");
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+
+        Args a = Args.parse(new String[]{"--input", file.toString(), "--output", tempDir.toString(),
+                "--threads", "2", "--shards", "64", "--executor", "virtual", "--ingest", "bytes",
+                "--queueCapacity", "2", "--batchSize", "32"});
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shardAggs = AggregatorApp.runQueuePipeline(a, dict, a.getShards(), a.getBatchSize());
+        assertEquals(64, shardAggs.length);
+
+        Map<String, Agg> expected = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(file, d, q, 1, 64));
+        assertSameAggregates(expected, toMap(dict, shardAggs));
+    }
+
+    @Test
+    void multipleInputFilesMatchOneConcatenatedFile(@TempDir Path tempDir) throws Exception {
+        String header = "campaign_id,date,impressions,clicks,spend,conversions\n";
+        StringBuilder all = new StringBuilder(header);
+        Path dir = Files.createDirectory(tempDir.resolve("days"));
+        for (int day = 1; day <= 5; day++) {
+            StringBuilder sb = new StringBuilder(header);
+            for (int i = 0; i < 400 * day; i++) {
+                sb.append("CMP").append((i * day) % 31).append(",2025-01-0").append(day).append(',')
+                        .append(10 + i).append(',').append(i % 6).append(',').append(i % 7 * 0.5).append(',')
+                        .append(i % 2).append('\n');
+            }
+            Files.writeString(dir.resolve("ad_2025-01-0" + day + ".csv"), sb.toString(), StandardCharsets.UTF_8);
+            all.append(sb.substring(header.length()));
+        }
+        Path single = tempDir.resolve("all.csv");
+        Files.writeString(single, all.toString(), StandardCharsets.UTF_8);
+        Map<String, Agg> expected = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(single, d, q, 1, 64));
+
+        for (String ingest : new String[]{"stream", "bytes", "mmap"}) {
+            Args a = Args.parse(new String[]{"--input", dir.toString(), "--output", tempDir.toString(),
+                    "--threads", "3", "--ingest", ingest});
+            assertEquals(5, a.getInputs().size());
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] shardAggs = ingest.equals("mmap")
+                    ? MmapCsvIngest.parse(a.getInputs(), dict, a.getThreads(), a.getShards(), null)
+                    : AggregatorApp.runQueuePipeline(a, dict, a.getShards(), a.getBatchSize());
+            assertSameAggregates(expected, toMap(dict, shardAggs));
+        }
+    }
+
+    @Test
+    void compressedInputsMatchPlainInput(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("CMP").append(i % 29).append(",2025-01-01,").append(10 + i).append(',')
+                    .append(i % 6).append(',').append(i % 7 * 0.5).append(',').append(i % 2).append('\n');
+        }
+        byte[] csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Path plain = Files.write(tempDir.resolve("plain.csv"), csv);
+        Path dir = Files.createDirectory(tempDir.resolve("in"));
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve("a.csv.gz")))) {
+            out.write(csv);
+        }
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(dir.resolve("b.csv.zip")))) {
+            out.putNextEntry(new ZipEntry("b.csv"));
+            out.write(csv);
+        }
+        Files.write(dir.resolve("c.csv"), csv);
+
+        // three copies of the same rows
+        Map<String, Agg> once = runSingleShard((d, q) -> AggregatorApp.parseCsvStreaming(plain, d, q, 1, 64));
+        Map<String, Agg> expected = new HashMap<>();
+        once.forEach((k, v) -> expected.put(k, agg(3 * v.getImpressions(), 3 * v.getClicks(),
+                3 * v.getSpend(), 3 * v.getConversions())));
+
+        for (String ingest : new String[]{"stream", "bytes", "mmap"}) {
+            Args a = Args.parse(new String[]{"--input", dir.toString(), "--output", tempDir.toString(),
+                    "--threads", "2", "--ingest", ingest});
+            assertEquals(3, a.getInputs().size());
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] shardAggs = ingest.equals("mmap")
+                    ? MmapCsvIngest.parse(a.getInputs(), dict, a.getThreads(), a.getShards(), null)
+                    : AggregatorApp.runQueuePipeline(a, dict, a.getShards(), a.getBatchSize());
+            assertSameAggregates(expected, toMap(dict, shardAggs));
+        }
+    }
+
+    @Test
+    void dateFilterAndDailyKeysMatchAcrossIngestModes(@TempDir Path tempDir) throws Exception {
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        // "<campaign>|<date>" -> sums of the rows within 2025-01-03..2025-01-07
+        Map<String, Agg> expected = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            String id = i % 2 == 0 ? "HOT" : "CMP" + (i % 37);
+            String date = String.format("2025-01-%02d", 1 + i % 10);
+            long imp = 10 + i % 50, clk = i % 4, conv = i % 3;
+            double spend = i % 9 * 0.5;
+            sb.append(id).append(',').append(date).append(',').append(imp).append(',').append(clk).append(',')
+                    .append(spend).append(',').append(conv).append('\n');
+            if (date.compareTo("2025-01-03") >= 0 && date.compareTo("2025-01-07") <= 0) {
+                expected.computeIfAbsent(id + "|" + date, k -> new Agg()).add(imp, clk, spend, conv);
+            }
+        }
+        Path file = Files.writeString(tempDir.resolve("ad_data.csv"), sb.toString(), StandardCharsets.UTF_8);
+
+        for (String mode : new String[]{"stream", "bytes", "mmap", "cache"}) {
+            String[] common = {"--input", file.toString(), "--output", tempDir.toString(), "--threads", "2",
+                    "--shards", "4", "--from", "2025-01-03", "--to", "2025-01-07", "--daily", "true"};
+            String[] extra = mode.equals("cache")
+                    ? new String[]{"--cache", tempDir.resolve("ad.colcache").toString()}
+                    : new String[]{"--ingest", mode};
+            String[] argv = Arrays.copyOf(common, common.length + 2);
+            System.arraycopy(extra, 0, argv, common.length, 2);
+            Args a = Args.parse(argv);
+
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] daily = mode.equals("cache") ? AggregatorApp.runCached(a, dict, a.getShards())
+                    : mode.equals("mmap") ? MmapCsvIngest.parse(a.getInputs(), dict, 2, 4, null, a.getDates(), true)
+                    : AggregatorApp.runQueuePipeline(a, dict, a.getShards(), a.getBatchSize());
+
+            Map<String, Agg> actual = new HashMap<>();
+            for (int s = 0; s < daily.length; s++) {
+                final int shard = s;
+                daily[s].forEach((key, imp, clk, sp, conv) -> {
+                    assertEquals(shard, DailyKey.campaign(key) % daily.length, mode); // all days at home
+                    Agg prev = actual.put(dict.name(DailyKey.campaign(key)) + "|" + DailyKey.date(key),
+                            agg(imp, clk, sp, conv));
+                    assertNull(prev, mode);
+                });
+            }
+            assertSameAggregates(expected, actual);
+            assertEquals(38, toMap(dict, DailyKey.rollUp(daily)).size(), mode);
+        }
+    }
+
+    interface Producer {
+        void produce(CampaignDictionary dict, BlockingQueue<RowBatch>[] queues) throws Exception;
+    }
+
+    private static Map<String, Agg> runSingleShard(Producer producer) throws Exception {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[]{new ArrayBlockingQueue<RowBatch>(1000)};
+        CampaignDictionary dict = new CampaignDictionary();
+        producer.produce(dict, queues);
+        queues[0].put(RowBatch.getPOISON());
+        AggTable table = new AggTable();
+        AggregatorApp.workerLoop(queues[0], table);
+        return toMap(dict, table);
+    }
+
+    private static void assertSameAggregates(Map<String, Agg> expected, Map<String, Agg> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (var e : expected.entrySet()) {
+            Agg x = e.getValue(), y = actual.get(e.getKey());
+            assertEquals(x.getImpressions(), y.getImpressions());
+            assertEquals(x.getClicks(), y.getClicks());
+            assertEquals(x.getSpend(), y.getSpend(), 1e-9);
+            assertEquals(x.getConversions(), y.getConversions());
+        }
+    }
 }
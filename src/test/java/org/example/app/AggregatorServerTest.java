@@ -0,0 +1,120 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregatorServerTest {
+    private static final String HEADER = "campaign_id,date,impressions,clicks,spend,conversions\n";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private HttpResponse<String> send(AggregatorServer server, String method, String pathAndQuery) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + pathAndQuery))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void servesLiveAggregatesWhileFilesGrow(@TempDir Path dir) throws Exception {
+        Path input = Files.writeString(dir.resolve("a.csv"),
+                HEADER + "A,2025-01-01,100,10,5.0,1\nB,2025-01-01,100,50,20.0,4\n", StandardCharsets.UTF_8);
+        Args a = Args.parse(new String[]{"--input", input.toString(), "--output", dir.toString(),
+                "--threads", "2", "--shards", "3", "--serve", "0", "--pollMillis", "3600000"});
+
+        try (AggregatorServer server = new AggregatorServer(a, 0)) {
+            server.start(a.getPollMillis());
+            assertEquals(1, server.snapshot().version());
+
+            HttpResponse<String> top = send(server, "GET", "/top?metric=ctr&k=1");
+            assertEquals(200, top.statusCode());
+            assertTrue(top.body().startsWith("{\"version\":1,\"metric\":\"ctr\",\"results\":[{\"campaign_id\":\"B\""),
+                    top.body());
+            assertEquals("{\"version\":1,\"result\":{\"campaign_id\":\"A\",\"impressions\":100,\"clicks\":10,"
+                    + "\"spend\":5.00,\"conversions\":1,\"ctr\":0.1000000,\"cpa\":5.00}}",
+                    send(server, "GET", "/campaign?id=A").body());
+
+            // a half-written row waits for its newline; untouched shards are shared between snapshots
+            AggregatorServer.Snapshot before = server.snapshot();
+            Files.writeString(input, "A,2025-01-02,100,90,1.0,1\nB,2025-01-02,5", StandardOpenOption.APPEND);
+            server.pollNow();
+            AggregatorServer.Snapshot after = server.snapshot();
+            assertEquals(2, after.version());
+            int changed = 0;
+            for (int i = 0; i < 3; i++) {
+                if (after.shards()[i] != before.shards()[i]) changed++;
+                else assertSame(before.shards()[i], after.shards()[i]);
+            }
+            assertEquals(1, changed);
+            assertTrue(send(server, "GET", "/campaign?id=A").body().contains("\"impressions\":200,\"clicks\":100"));
+            assertTrue(send(server, "GET", "/top?metric=ctr&k=1").body().contains("\"campaign_id\":\"A\""));
+            // the old snapshot is untouched (A is id 0, home shard 0)
+            AggTable oldA = before.shards()[0];
+            assertEquals(100, oldA.impressionsAt(oldA.find(0)));
+
+            Path more = Files.writeString(dir.resolve("more.csv"), HEADER + "C,2025-01-03,10,1,1.0,0\n");
+            String spec = URLEncoder.encode(more.toString(), StandardCharsets.UTF_8);
+            assertEquals(202, send(server, "POST", "/ingest?path=" + spec).statusCode());
+            server.pollNow();
+            assertEquals(200, send(server, "GET", "/campaign?id=C").statusCode());
+            assertTrue(send(server, "GET", "/stats").body().contains("\"campaigns\":3"));
+
+            assertEquals(404, send(server, "GET", "/campaign?id=nope").statusCode());
+            assertEquals(400, send(server, "GET", "/top?metric=roi").statusCode());
+            assertEquals(400, send(server, "GET", "/top?metric=ctr&k=2147483647").statusCode());
+            assertEquals(400, send(server, "GET", "/top?metric=ctr&k=0").statusCode());
+            // k above the campaign count ranks them all
+            HttpResponse<String> all = send(server, "GET", "/top?metric=ctr&k=" + AggregatorServer.MAX_K);
+            assertEquals(200, all.statusCode());
+            assertEquals(3, all.body().split("campaign_id").length - 1, all.body());
+            assertEquals(405, send(server, "GET", "/ingest?path=x").statusCode());
+        }
+    }
+
+    @Test
+    void failedPollKeepsOffsetsAndRankingsWithTheirSnapshot(@TempDir Path dir) throws Exception {
+        Path data = Files.createDirectory(dir.resolve("in"));
+        Path a = Files.writeString(data.resolve("a.csv"), HEADER + "A,2025-01-01,100,10,5.0,1\n");
+        Path b = Files.writeString(data.resolve("b.csv"), HEADER + "B,2025-01-01,100,50,20.0,4\n");
+        Args args = Args.parse(new String[]{"--input", data.toString(), "--output", dir.toString(),
+                "--threads", "1", "--shards", "2", "--serve", "0", "--pollMillis", "3600000"});
+
+        try (AggregatorServer server = new AggregatorServer(args, 0)) {
+            server.start(args.getPollMillis());
+            assertTrue(send(server, "GET", "/top?metric=ctr&k=1").body().contains("\"campaign_id\":\"B\""));
+            assertEquals(1, server.snapshot().rankings().size());
+
+            // a.csv parses, b.csv then fails: neither file's offset moves, nothing is published
+            Files.writeString(a, "A,2025-01-02,100,90,1.0,1\n", StandardOpenOption.APPEND);
+            Files.writeString(b, "B,2025-01-02\n", StandardOpenOption.APPEND);
+            assertThrows(ExecutionException.class, server::pollNow);
+            assertEquals(1, server.snapshot().version());
+
+            Files.writeString(b, HEADER + "B,2025-01-01,100,50,20.0,4\nB,2025-01-02,0,0,0.0,0\n");
+            server.pollNow();
+            AggregatorServer.Snapshot s = server.snapshot();
+            assertEquals(2, s.version());
+            assertTrue(s.rankings().isEmpty());
+            assertTrue(send(server, "GET", "/campaign?id=A").body().contains("\"impressions\":200,\"clicks\":100"));
+            assertTrue(send(server, "GET", "/top?metric=ctr&k=1").body().contains("\"campaign_id\":\"A\""));
+        }
+    }
+}
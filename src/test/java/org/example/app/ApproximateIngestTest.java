@@ -0,0 +1,99 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DateRange;
+import org.example.model.Metric;
+import org.example.model.Result;
+import org.example.model.SpaceSaving;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApproximateIngestTest {
+    private static final int HEAVY = 20, HEAVY_ROWS = 500, TAIL = 20_000;
+
+    // 20 heavy campaigns, every row of one alike (so any subset of its rows has its CTR and CPA), shuffled
+    // into a tail of single-row campaigns with no clicks or conversions
+    private static Path skewedCsv(Path dir) throws Exception {
+        List<String> rows = new ArrayList<>();
+        for (int c = 0; c < HEAVY; c++) {
+            for (int r = 0; r < HEAVY_ROWS; r++) rows.add("H" + c + ",2025-01-01,100," + (c + 1) + "," + (10 + c) + ",1");
+        }
+        for (int t = 0; t < TAIL; t++) rows.add("T" + t + ",2025-01-01,100,0,1.5,0");
+        Collections.shuffle(rows, new Random(7));
+        rows.add(0, "campaign_id,date,impressions,clicks,spend,conversions");
+        Path file = dir.resolve("skewed.csv");
+        Files.write(file, rows);
+        return file;
+    }
+
+    @Test
+    void matchesExactTopListsWhenEveryCampaignFits(@TempDir Path tempDir) throws Exception {
+        Path file = skewedCsv(tempDir);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] exact = MmapCsvIngest.parse(file, dict, 3, 4);
+
+        ApproximateIngest sketch = ApproximateIngest.scan(List.of(file), 3, HEAVY + TAIL, DateRange.ALL, null);
+        Map<Metric, List<Result>> ranked = sketch.rank(new RankingEngine(10, List.of(Metric.CTR, Metric.CPA)));
+        assertEquals(0, sketch.heavyHitters().maxError());
+        assertSameList(AggregatorApp.top10ByCtr(exact, dict), ranked.get(Metric.CTR), true);
+        assertSameList(AggregatorApp.top10ByLowestCpa(exact, dict), ranked.get(Metric.CPA), true);
+    }
+
+    @Test
+    void fewCountersKeepTheHeavyHittersWithinTheErrorBound(@TempDir Path tempDir) throws Exception {
+        Path file = skewedCsv(tempDir);
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] exact = MmapCsvIngest.parse(file, dict, 3, 4);
+
+        int counters = 256;
+        ApproximateIngest sketch = ApproximateIngest.scan(List.of(file), 3, counters, DateRange.ALL, null);
+        SpaceSaving heavy = sketch.heavyHitters();
+        long n = HEAVY * HEAVY_ROWS + TAIL;
+        assertEquals(n, heavy.rows());
+        assertTrue(heavy.maxError() <= n / counters, "error " + heavy.maxError());
+        long distinct = HEAVY + TAIL;
+        assertTrue(Math.abs(sketch.distinctEstimate() - distinct) < distinct * 0.03, "" + sketch.distinctEstimate());
+
+        Map<String, long[]> tracked = new HashMap<>();
+        heavy.forEach((key, count, error, imp, clk, sp, conv) ->
+                tracked.put(new String(key), new long[]{count, error}));
+        for (int c = 0; c < HEAVY; c++) {
+            long[] e = tracked.get("H" + c);
+            assertTrue(e != null, "H" + c + " not tracked");
+            assertTrue(e[0] - e[1] <= HEAVY_ROWS && HEAVY_ROWS <= e[0], "H" + c);
+        }
+
+        // sums may lack some rows of a campaign, but its ratios and so the order are those of the exact lists
+        Map<Metric, List<Result>> ranked = sketch.rank(new RankingEngine(10, List.of(Metric.CTR, Metric.CPA)));
+        assertSameList(AggregatorApp.top10ByCtr(exact, dict), ranked.get(Metric.CTR), false);
+        assertSameList(AggregatorApp.top10ByLowestCpa(exact, dict), ranked.get(Metric.CPA), false);
+    }
+
+    private static void assertSameList(List<Result> expected, List<Result> actual, boolean sums) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Result e = expected.get(i), r = actual.get(i);
+            assertEquals(e.getCampaignId(), r.getCampaignId());
+            assertEquals(e.getCtr(), r.getCtr(), 1e-12);
+            assertEquals(e.getCpa(), r.getCpa(), 1e-9);
+            if (sums) {
+                assertEquals(e.getTotalImpressions(), r.getTotalImpressions());
+                assertEquals(e.getTotalClicks(), r.getTotalClicks());
+                assertEquals(e.getTotalConversions(), r.getTotalConversions());
+            }
+        }
+    }
+}
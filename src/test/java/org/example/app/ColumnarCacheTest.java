@@ -0,0 +1,141 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnarCacheTest {
+    private static final String HEADER = "campaign_id,date,impressions,clicks,spend,conversions\n";
+
+    private static String rows(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            sb.append("CMP").append(i % 17).append(",2025-01-").append(String.format("%02d", 1 + i % 28)).append(',')
+                    .append(100 + i).append(',').append(i % 5).append(',').append(i * 0.25).append(',')
+                    .append(i % 3).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // "<campaign>.<column>" -> sum, spend in cents
+    private static Map<String, Long> snapshot(CampaignDictionary dict, AggTable[] shards) {
+        Map<String, Long> m = new HashMap<>();
+        for (AggTable t : shards) {
+            t.forEach((id, imp, clk, sp, conv) -> {
+                String name = dict.name((int) id);
+                m.put(name + ".imp", imp);
+                m.put(name + ".clk", clk);
+                m.put(name + ".conv", conv);
+                m.put(name + ".spend", Math.round(sp * 100));
+            });
+        }
+        return m;
+    }
+
+    @Test
+    void cachedAggregatesMatchCsvParse(@TempDir Path dir) throws Exception {
+        // more rows than one scan block, split over two inputs
+        Path a = Files.writeString(dir.resolve("a.csv"), HEADER + rows(0, 20_000), StandardCharsets.UTF_8);
+        Path b = Files.writeString(dir.resolve("b.csv"), HEADER + rows(20_000, 25_000), StandardCharsets.UTF_8);
+        List<Path> inputs = List.of(a, b);
+        Path file = dir.resolve("cache").resolve("ad.colcache");
+
+        assertNull(ColumnarCache.open(file, inputs));
+        ColumnarCache built = ColumnarCache.build(file, inputs);
+        assertEquals(25_000, built.rows());
+        assertEquals(17, built.campaigns());
+
+        CampaignDictionary csvDict = new CampaignDictionary();
+        Map<String, Long> expected = snapshot(csvDict, MmapCsvIngest.parse(inputs, csvDict, 2, 3, null));
+
+        // a dictionary that already knows some ids gets them remapped
+        CampaignDictionary dict = new CampaignDictionary();
+        dict.idOf("CMP5");
+        dict.idOf("unrelated");
+        ColumnarCache cache = ColumnarCache.open(file, inputs);
+        assertEquals(expected, snapshot(dict, cache.aggregate(dict, 3, 4)));
+
+        long[] days = new long[1];
+        cache.scan(0, 1, (n, campaign, date, imp, clk, sp, conv) -> {
+            assertEquals(1, n);
+            assertEquals("CMP0", cache.campaignId(campaign[0]));
+            days[0] = date[0];
+            assertEquals(100, imp[0]);
+        });
+        assertEquals(LocalDate.of(2025, 1, 1).toEpochDay(), days[0]);
+    }
+
+    @Test
+    void changedInputOrCorruptCacheIsRejected(@TempDir Path dir) throws Exception {
+        Path input = Files.writeString(dir.resolve("ad_data.csv"), HEADER + rows(0, 500), StandardCharsets.UTF_8);
+        Path file = dir.resolve("ad.colcache");
+        ColumnarCache.build(file, List.of(input));
+
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input, input)));
+
+        Files.writeString(input, rows(500, 501), StandardOpenOption.APPEND);
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input)));
+        ColumnarCache.build(file, List.of(input));
+        assertEquals(501, ColumnarCache.open(file, List.of(input)).rows());
+
+        byte[] c = Files.readAllBytes(file);
+        c[30] ^= 1;
+        Files.write(file, c);
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input)));
+
+        // a flipped bit in the last column (conversions) is caught with verify, a cut-off tail always
+        ColumnarCache.build(file, List.of(input));
+        c = Files.readAllBytes(file);
+        c[c.length - 5] ^= 1;
+        Files.write(file, c);
+        assertEquals(501, ColumnarCache.open(file, List.of(input)).rows());
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input), true));
+        Files.write(file, Arrays.copyOf(c, c.length - 8));
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input)));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input)));
+    }
+
+    @Test
+    void rewriteOutsideTheSampledWindowsNeedsVerify(@TempDir Path dir) throws Exception {
+        Path input = Files.writeString(dir.resolve("ad_data.csv"), HEADER + rows(0, 20_000), StandardCharsets.UTF_8);
+        Path file = dir.resolve("ad.colcache");
+        ColumnarCache.build(file, List.of(input));
+        assertEquals(20_000, ColumnarCache.open(file, List.of(input), true).rows());
+
+        // same size and mtime, one digit changed in the middle of the file
+        FileTime mtime = Files.getLastModifiedTime(input);
+        byte[] bytes = Files.readAllBytes(input);
+        int mid = bytes.length / 2;
+        while (bytes[mid] < '0' || bytes[mid] > '8') mid++;
+        bytes[mid]++;
+        Files.write(input, bytes);
+        Files.setLastModifiedTime(input, mtime);
+
+        assertEquals(20_000, ColumnarCache.open(file, List.of(input)).rows());
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input), true));
+
+        // a rewrite inside the last 64 KB is caught without it
+        bytes[bytes.length - 3] = (byte) (bytes[bytes.length - 3] == '1' ? '2' : '1');
+        Files.write(input, bytes);
+        Files.setLastModifiedTime(input, mtime);
+        assertThrows(IllegalStateException.class, () -> ColumnarCache.open(file, List.of(input)));
+    }
+}
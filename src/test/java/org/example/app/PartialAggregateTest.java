@@ -0,0 +1,142 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.DateRange;
+import org.example.model.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartialAggregateTest {
+
+    private static Path sampleCsv(Path dir, String name, int rows, long seed) throws Exception {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < rows; i++) {
+            int imp = 100 + rnd.nextInt(5000);
+            sb.append("CMP").append(rnd.nextInt(300)).append(",2025-01-0").append(1 + rnd.nextInt(9)).append(',')
+                    .append(imp).append(',').append(rnd.nextInt(imp / 10)).append(',')
+                    .append(String.format(Locale.US, "%.2f", rnd.nextInt(100_000) / 100.0)).append(',')
+                    .append(rnd.nextInt(4)).append('\n');
+        }
+        Path file = dir.resolve(name);
+        Files.writeString(file, sb);
+        return file;
+    }
+
+    private static List<Path> writePartitions(Path input, Path dir, int partitions) throws Exception {
+        return writePartitions(input, dir, partitions, DateRange.ALL);
+    }
+
+    private static List<Path> writePartitions(Path input, Path dir, int partitions, DateRange dates) throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i <= partitions; i++) {
+            long[] range = PartialAggregate.range(input, i, partitions);
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] shards = MmapCsvIngest.parse(input, range[0], range[1], dict, 2, 3, dates);
+            Path file = dir.resolve(PartialAggregate.fileName(i, partitions));
+            PartialAggregate.write(file, input, i, partitions, range[0], range[1], dates, false, shards, dict);
+            files.add(file);
+        }
+        return files;
+    }
+
+    @Test
+    void mergedPartitionsRankLikeOneRun(@TempDir Path tempDir) throws Exception {
+        Path input = sampleCsv(tempDir, "ads.csv", 20_000, 11);
+        CampaignDictionary exactDict = new CampaignDictionary();
+        AggTable[] exact = MmapCsvIngest.parse(input, exactDict, 2, 4);
+
+        for (int partitions : new int[]{1, 3, 7}) {
+            List<Path> files = writePartitions(input, tempDir.resolve("parts" + partitions), partitions);
+            CampaignDictionary dict = new CampaignDictionary();
+            AggTable[] merged = PartialAggregate.merge(files.reversed(), dict, 3);
+            assertEquals(exactDict.size(), dict.size());
+            assertSameList(AggregatorApp.top10ByCtr(exact, exactDict), AggregatorApp.top10ByCtr(merged, dict));
+            assertSameList(AggregatorApp.top10ByLowestCpa(exact, exactDict), AggregatorApp.top10ByLowestCpa(merged, dict));
+        }
+    }
+
+    @Test
+    void mergeNeedsEveryPartitionOfOneInputOnce(@TempDir Path tempDir) throws Exception {
+        Path input = sampleCsv(tempDir, "ads.csv", 3_000, 5);
+        List<Path> files = writePartitions(input, tempDir.resolve("a"), 3);
+        Path other = writePartitions(sampleCsv(tempDir, "other.csv", 3_000, 6), tempDir.resolve("b"), 3).get(2);
+
+        assertThrows(IllegalStateException.class,
+                () -> PartialAggregate.merge(files.subList(0, 2), new CampaignDictionary(), 2));
+        assertThrows(IllegalStateException.class,
+                () -> PartialAggregate.merge(List.of(files.get(0), files.get(1), files.get(1)), new CampaignDictionary(), 2));
+        assertThrows(IllegalStateException.class,
+                () -> PartialAggregate.merge(List.of(files.get(0), files.get(1), other), new CampaignDictionary(), 2));
+
+        // partitions of the same input written with another --from/--to
+        DateRange january = new DateRange(LocalDate.of(2025, 1, 2), LocalDate.of(2025, 1, 5));
+        Path filtered = writePartitions(input, tempDir.resolve("c"), 3, january).get(2);
+        assertEquals(january.toString(), PartialAggregate.header(filtered).dates().toString());
+        IllegalStateException dates = assertThrows(IllegalStateException.class,
+                () -> PartialAggregate.merge(List.of(files.get(0), files.get(1), filtered), new CampaignDictionary(), 2));
+        assertTrue(dates.getMessage().contains("--from/--to"), dates.getMessage());
+
+        // a damaged section fails its checksum
+        byte[] bytes = Files.readAllBytes(files.get(1));
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(files.get(1), bytes);
+        assertThrows(IllegalStateException.class, () -> PartialAggregate.merge(files, new CampaignDictionary(), 2));
+        Files.write(files.get(1), new byte[10]);
+        assertThrows(IllegalStateException.class, () -> PartialAggregate.header(files.get(1)));
+    }
+
+    @Test
+    void separateProcessesWriteTheSameTopFilesAsOneRun(@TempDir Path tempDir) throws Exception {
+        Path input = sampleCsv(tempDir, "ads.csv", 10_000, 3);
+        Path parts = tempDir.resolve("parts");
+        int partitions = 3;
+        List<Process> processes = new ArrayList<>();
+        for (int i = 1; i <= partitions; i++) {
+            processes.add(new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), AggregatorApp.class.getName(),
+                    "--input", input.toString(), "--output", parts.toString(), "--partition", i + "/" + partitions,
+                    "--threads", "1")
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start());
+        }
+        for (Process p : processes) {
+            assertTrue(p.waitFor(2, TimeUnit.MINUTES));
+            assertEquals(0, p.exitValue());
+        }
+
+        Path single = tempDir.resolve("single"), merged = tempDir.resolve("merged");
+        AggregatorApp.main(new String[]{"--input", input.toString(), "--output", single.toString(), "--threads", "2"});
+        AggregatorApp.main(new String[]{"--merge", parts.toString(), "--output", merged.toString(), "--threads", "2"});
+        for (String name : new String[]{"top10_ctr.csv", "top10_cpa.csv"}) {
+            assertArrayEquals(Files.readAllBytes(single.resolve(name)), Files.readAllBytes(merged.resolve(name)), name);
+        }
+    }
+
+    private static void assertSameList(List<Result> expected, List<Result> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Result e = expected.get(i), r = actual.get(i);
+            assertEquals(e.getCampaignId(), r.getCampaignId());
+            assertEquals(e.getTotalImpressions(), r.getTotalImpressions());
+            assertEquals(e.getTotalClicks(), r.getTotalClicks());
+            assertEquals(e.getTotalConversions(), r.getTotalConversions());
+            assertEquals(e.getTotalSpend(), r.getTotalSpend(), 1e-6);
+        }
+    }
+}
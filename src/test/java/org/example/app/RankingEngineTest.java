@@ -0,0 +1,76 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.CampaignDictionary;
+import org.example.model.Metric;
+import org.example.model.Result;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RankingEngineTest {
+
+    private static List<String> ids(List<Result> results) {
+        return results.stream().map(Result::getCampaignId).toList();
+    }
+
+    // sort everything and cut, the obvious way
+    private static List<String> bruteForce(List<Result> all, Metric metric, int k, long minImpressions) {
+        Comparator<Result> byValue = Comparator.comparingDouble(metric::value);
+        return all.stream()
+                .filter(r -> r.getTotalImpressions() >= minImpressions && !Double.isNaN(metric.value(r)))
+                .sorted((metric.isAscending() ? byValue : byValue.reversed()).thenComparing(Result::getCampaignId))
+                .limit(k)
+                .map(Result::getCampaignId)
+                .toList();
+    }
+
+    @Test
+    void everyMetricMatchesAFullSortInOnePass() throws Exception {
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shards = AggTable.newShards(5);
+        List<Result> all = new ArrayList<>();
+        Random rnd = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            int id = dict.idOf("C" + i);
+            // small ranges force plenty of ties
+            long imp = rnd.nextInt(50), clk = rnd.nextInt(5), conv = rnd.nextInt(3);
+            double spend = rnd.nextInt(20);
+            shards[id % 5].add(id, imp, clk, spend, conv);
+            all.add(new Result("C" + i, imp, clk, spend, conv));
+        }
+
+        RankingEngine engine = new RankingEngine(25, List.of(Metric.values()), 10, 0);
+        Map<Metric, List<Result>> parallel = engine.rank(shards, dict, 3);
+        Map<Metric, List<Result>> serial = engine.rank(shards, dict);
+        for (Metric m : Metric.values()) {
+            assertEquals(bruteForce(all, m, 25, 10), ids(parallel.get(m)), m.name());
+            assertEquals(ids(serial.get(m)), ids(parallel.get(m)), m.name());
+        }
+    }
+
+    @Test
+    void undefinedValuesAndThresholdsAreLeftOut() {
+        CampaignDictionary dict = new CampaignDictionary();
+        AggTable[] shards = AggTable.newShards(2);
+        shards[0].add(dict.idOf("noClicks"), 1000, 0, 50.0, 0);
+        shards[1].add(dict.idOf("small"), 5, 5, 1.0, 5);
+        shards[0].add(dict.idOf("big"), 1000, 10, 20.0, 2);
+
+        Map<Metric, List<Result>> top = new RankingEngine(10, List.of(Metric.CPC, Metric.CPA, Metric.SPEND), 0, 1)
+                .rank(shards, dict);
+        assertEquals(List.of("small", "big"), ids(top.get(Metric.CPC)));
+        assertEquals(List.of("small", "big"), ids(top.get(Metric.CPA)));
+        assertEquals(List.of("big", "small"), ids(top.get(Metric.SPEND)));
+        assertEquals(List.of("noClicks"),
+                ids(new RankingEngine(1, List.of(Metric.SPEND)).rank(shards, dict).get(Metric.SPEND)));
+        assertThrows(IllegalArgumentException.class, () -> new RankingEngine(0, List.of(Metric.CTR)));
+    }
+}
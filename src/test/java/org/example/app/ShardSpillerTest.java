@@ -0,0 +1,107 @@
+package org.example.app;
+
+import org.example.model.AggTable;
+import org.example.model.Args;
+import org.example.model.CampaignDictionary;
+import org.example.model.DateRange;
+import org.example.model.Metric;
+import org.example.model.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardSpillerTest {
+
+    private static List<String> ids(List<Result> results) {
+        return results.stream().map(Result::getCampaignId).toList();
+    }
+
+    private static void assertSameRanking(Map<Metric, List<Result>> expected, Map<Metric, List<Result>> actual) {
+        for (Metric m : Metric.values()) assertEquals(ids(expected.get(m)), ids(actual.get(m)), m.name());
+    }
+
+    @Test
+    void mergeSumsEqualIdsAcrossRuns(@TempDir Path dir) throws Exception {
+        try (ShardSpiller spiller = new ShardSpiller(dir, 1, 0)) {
+            AggTable t = new AggTable();
+            t.add(9, 1, 1, 0.5, 1);
+            t.add(3, 2, 0, 1.0, 0);
+            spiller.spill(0, t);
+            assertEquals(0, t.size());
+            t.add(3, 5, 1, 0.25, 1);
+            t.add(7, 1, 0, 0.0, 0);
+            spiller.spill(0, t);
+            spiller.spill(0, t); // empty: no run
+
+            Path spillDir;
+            try (Stream<Path> s = Files.list(dir)) {
+                spillDir = s.findFirst().orElseThrow();
+            }
+            List<Path> runs;
+            try (Stream<Path> s = Files.list(spillDir)) {
+                runs = s.sorted().toList();
+            }
+            assertEquals(2, runs.size());
+            assertEquals(2, spiller.runs());
+
+            List<String> merged = new ArrayList<>();
+            ShardSpiller.merge(runs, (key, imp, clk, sp, conv) -> merged.add(key + ":" + imp + "/" + clk + "/" + sp
+                    + "/" + conv));
+            assertEquals(List.of("3:7/1/1.25/1", "7:1/0/0.0/0", "9:1/1/0.5/1"), merged);
+        }
+        try (Stream<Path> s = Files.list(dir)) {
+            assertEquals(0, s.count());
+        }
+    }
+
+    @Test
+    void spilledRankingMatchesInMemoryRankingInBothIngestModes(@TempDir Path dir) throws Exception {
+        // more campaigns than fit one table at the smallest budget, repeated so they spill several times
+        StringBuilder sb = new StringBuilder("campaign_id,date,impressions,clicks,spend,conversions\n");
+        for (int i = 0; i < 90_000; i++) {
+            sb.append("C").append(i * 7919 % 60_013).append(",2025-01-0").append(1 + i % 9).append(',')
+                    .append(10 + i % 97).append(',').append(i % 11).append(',').append(i % 13 * 0.5).append(',')
+                    .append(i % 4).append('\n');
+        }
+        Path input = Files.writeString(dir.resolve("ad_data.csv"), sb.toString(), StandardCharsets.UTF_8);
+        RankingEngine ranking = new RankingEngine(7, List.of(Metric.values()));
+        DateRange dates = new DateRange(null, java.time.LocalDate.of(2025, 1, 8));
+
+        CampaignDictionary memDict = new CampaignDictionary();
+        AggTable[] inMemory = MmapCsvIngest.parse(List.of(input), memDict, 2, 3, null, dates, false);
+        Map<Metric, List<Result>> expected = ranking.rank(inMemory, memDict);
+
+        CampaignDictionary dict = new CampaignDictionary();
+        // two workers share each shard's budget
+        try (ShardSpiller spiller = new ShardSpiller(dir.resolve("spill"), 3, 1 << 20, 2)) {
+            assertEquals(AggTable.entriesWithin(1 << 19), spiller.entriesPerTable());
+            AggTable[] left = MmapCsvIngest.parse(List.of(input), dict, 2, 3, null, dates, false, spiller);
+            for (AggTable t : left) assertEquals(0, t.size());
+            assertTrue(spiller.runs() > 6, spiller.toString());
+            assertSameRanking(expected, spiller.rank(ranking, dict, 2));
+        }
+
+        Args a = Args.parse(new String[]{"--input", input.toString(), "--output", dir.toString(), "--threads", "2",
+                "--shards", "3", "--ingest", "bytes", "--to", "2025-01-08", "--shardMemoryMB", "1"});
+        CampaignDictionary queueDict = new CampaignDictionary();
+        try (ShardSpiller spiller = new ShardSpiller(dir.resolve("spill"), 3, 1 << 20)) {
+            AggregatorApp.runQueuePipeline(a, queueDict, 3, 64, null, spiller);
+            assertTrue(spiller.runs() > 3, spiller.toString());
+            assertSameRanking(expected, spiller.rank(ranking, queueDict, 2));
+        }
+        try (Stream<Path> s = Files.list(dir.resolve("spill"))) {
+            assertFalse(s.findAny().isPresent());
+        }
+    }
+}
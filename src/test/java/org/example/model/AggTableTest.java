@@ -0,0 +1,86 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggTableTest {
+
+    @Test
+    void growsAndMatchesHashMapAggregation() {
+        AggTable table = new AggTable(4);
+        Map<Long, long[]> expected = new HashMap<>();
+        Random rnd = new Random(3);
+        for (int i = 0; i < 200_000; i++) {
+            long key = rnd.nextInt(20_000);
+            long imp = rnd.nextInt(1000), clk = rnd.nextInt(50), conv = rnd.nextInt(5);
+            table.add(key, imp, clk, clk * 0.5, conv);
+            long[] e = expected.computeIfAbsent(key, k -> new long[3]);
+            e[0] += imp;
+            e[1] += clk;
+            e[2] += conv;
+        }
+
+        assertEquals(expected.size(), table.size());
+        int[] visited = {0};
+        table.forEach((key, imp, clk, sp, conv) -> {
+            long[] e = expected.get(key);
+            assertEquals(e[0], imp);
+            assertEquals(e[1], clk);
+            assertEquals(e[1] * 0.5, sp, 1e-6);
+            assertEquals(e[2], conv);
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+        assertEquals(-1, table.find(1_000_000));
+        assertTrue(table.footprintBytes() < AggTable.hashMapFootprintBytes(table.size(), 6L * table.size()));
+    }
+
+    @Test
+    void mergeFromAddsPartialAggregates() {
+        AggTable a = new AggTable();
+        AggTable b = new AggTable();
+        a.add(1, 10, 1, 1.5, 0);
+        b.add(1, 5, 2, 0.5, 1);
+        b.add(2, 7, 0, 3.0, 0);
+
+        a.mergeFrom(b);
+        int s1 = a.find(1);
+        assertEquals(15, a.impressionsAt(s1));
+        assertEquals(3, a.clicksAt(s1));
+        assertEquals(2.0, a.spendAt(s1), 1e-9);
+        assertEquals(1, a.conversionsAt(s1));
+        assertEquals(2, a.size());
+
+        a.clear();
+        assertEquals(0, a.size());
+        assertEquals(-1, a.find(2));
+    }
+
+    @Test
+    void removeKeepsProbeChainsIntact() {
+        AggTable table = new AggTable(64);
+        Random rnd = new Random(11);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int round = 0; round < 20_000; round++) {
+            long key = rnd.nextInt(60);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, table.remove(key));
+            } else {
+                table.add(key, 1, 0, 0, 0);
+                expected.merge(key, 1L, Long::sum);
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (long key = 0; key < 60; key++) {
+            int slot = table.find(key);
+            if (expected.containsKey(key)) assertEquals((long) expected.get(key), table.impressionsAt(slot));
+            else assertEquals(-1, slot);
+        }
+    }
+}
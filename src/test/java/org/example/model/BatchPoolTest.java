@@ -0,0 +1,62 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchPoolTest {
+
+    @Test
+    void releasedBatchesAreResetAndReused() throws Exception {
+        BatchPool pool = new BatchPool(2, 2, 4);
+        RowBatch b = pool.acquire(1);
+        b.add(7, 1, 1, 1.0, 1);
+        pool.acquire(1);
+        assertEquals(0, pool.available(1));
+        assertEquals(2, pool.available(0));
+
+        pool.release(1, b);
+        RowBatch again = pool.acquire(1);
+        assertSame(b, again);
+        assertEquals(0, again.getSize());
+
+        pool.release(0, RowBatch.getPOISON()); // ignored
+        assertEquals(2, pool.available(0));
+        // batches are created lazily, so shard 0's free list has room for exactly two
+        pool.release(0, new RowBatch(4));
+        pool.release(0, new RowBatch(4));
+        assertThrows(IllegalStateException.class, () -> pool.release(0, new RowBatch(4)));
+    }
+
+    @Test
+    void exhaustedPoolBlocksUntilRelease() throws Exception {
+        BatchPool pool = new BatchPool(1, 2, 4);
+        RowBatch first = pool.acquire(0);
+        pool.acquire(0);
+
+        AtomicReference<RowBatch> got = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                got.set(pool.acquire(0));
+                done.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        pool.release(0, first);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(first, got.get());
+        assertEquals(1, pool.exhaustedCount());
+    }
+}
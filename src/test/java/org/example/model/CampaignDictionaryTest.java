@@ -0,0 +1,67 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CampaignDictionaryTest {
+
+    @Test
+    void assignsDenseIdsAndResolvesNames() {
+        CampaignDictionary dict = new CampaignDictionary();
+        byte[] row = "xxCMP001,CMP002".getBytes(StandardCharsets.UTF_8);
+
+        int a = dict.idOf(row, 2, 8);
+        int b = dict.idOf(row, 9, 15);
+        assertEquals(0, a);
+        assertEquals(1, b);
+        assertEquals(a, dict.idOf("CMP001"));
+        assertEquals("CMP002", dict.name(b));
+        assertEquals(2, dict.size());
+        assertEquals("kampanjå", dict.name(dict.idOf("kampanjå")));
+    }
+
+    @Test
+    void concurrentProducersAgreeOnIds() throws Exception {
+        CampaignDictionary dict = new CampaignDictionary();
+        int keys = 50_000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 7919;
+            results.add(pool.submit(() -> {
+                int[] ids = new int[keys];
+                for (int i = 0; i < keys; i++) {
+                    int k = (i + offset) % keys;
+                    ids[k] = dict.idOf("CMP" + k);
+                }
+                return ids;
+            }));
+        }
+        int[] first = results.get(0).get();
+        for (Future<int[]> f : results) {
+            int[] ids = f.get();
+            for (int k = 0; k < keys; k++) assertEquals(first[k], ids[k]);
+        }
+        pool.shutdown();
+
+        assertEquals(keys, dict.size());
+        Set<Integer> distinct = new HashSet<>();
+        for (int k = 0; k < keys; k++) {
+            distinct.add(first[k]);
+            assertEquals("CMP" + k, dict.name(first[k]));
+        }
+        assertEquals(keys, distinct.size());
+        assertNotEquals(dict.idOf("CMP1"), dict.idOf("CMP10"));
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DailyKeyTest {
+
+    @Test
+    void packsCampaignAndDayIntoNonNegativeKey() {
+        for (int day : new int[]{0, 20_000, -1, -719_528, Integer.MAX_VALUE}) {
+            long key = DailyKey.of(123_456, day);
+            assertTrue(key >= 0);
+            assertEquals(123_456, DailyKey.campaign(key));
+            assertEquals(day, DailyKey.day(key));
+        }
+        assertEquals(LocalDate.of(2025, 5, 4), DailyKey.date(DailyKey.of(0, (int) LocalDate.of(2025, 5, 4).toEpochDay())));
+    }
+
+    @Test
+    void mergeSpreadMovesEveryDayHomeAndRollUpSumsDays() {
+        AggTable[] shards = AggTable.newShards(3);
+        shards[1].add(DailyKey.of(4, 10), 1, 1, 1.0, 0);   // home shard of 4
+        shards[0].add(DailyKey.of(4, 10), 2, 0, 1.0, 1);
+        shards[2].add(DailyKey.of(4, 11), 4, 1, 0.5, 0);
+        shards[2].add(DailyKey.of(2, 10), 8, 2, 2.0, 1);
+
+        DailyKey.mergeSpread(shards, new int[]{4});
+
+        assertEquals(0, shards[0].size());
+        assertEquals(2, shards[1].size());
+        assertEquals(1, shards[2].size());
+        assertEquals(3, shards[1].impressionsAt(shards[1].find(DailyKey.of(4, 10))));
+
+        AggTable[] totals = DailyKey.rollUp(shards);
+        int slot = totals[1].find(4);
+        assertEquals(7, totals[1].impressionsAt(slot));
+        assertEquals(2.5, totals[1].spendAt(slot), 1e-9);
+        assertEquals(8, totals[2].impressionsAt(totals[2].find(2)));
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DateRangeTest {
+
+    private static boolean containsBytes(DateRange r, String date) {
+        // the field sits inside a larger row buffer
+        byte[] b = ("x," + date + ",1").getBytes(StandardCharsets.US_ASCII);
+        return r.contains(b, 2, 2 + date.length());
+    }
+
+    @Test
+    void inclusiveBoundsOnBytesStringsAndDays() {
+        DateRange week = new DateRange(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 7));
+        String[] inside = {"2025-01-01", "2025-01-04", "2025-01-07"};
+        String[] outside = {"2024-12-31", "2025-01-08", "2025-10-01", "1999-01-05"};
+        for (String d : inside) {
+            assertTrue(containsBytes(week, d), d);
+            assertTrue(week.contains(d), d);
+            assertTrue(week.contains((int) LocalDate.parse(d).toEpochDay()), d);
+        }
+        for (String d : outside) {
+            assertFalse(containsBytes(week, d), d);
+            assertFalse(week.contains(d), d);
+            assertFalse(week.contains((int) LocalDate.parse(d).toEpochDay()), d);
+        }
+    }
+
+    @Test
+    void openEndsAndNonIsoSpellings() {
+        DateRange since = new DateRange(LocalDate.of(2025, 3, 1), null);
+        assertTrue(containsBytes(since, "2031-01-01"));
+        assertFalse(containsBytes(since, "2025-02-28"));
+        assertTrue(DateRange.ALL.isAll());
+        assertTrue(DateRange.ALL.contains(Integer.MIN_VALUE));
+
+        // not the 10-byte form: parsed instead of compared
+        assertTrue(containsBytes(since, "+10000-01-01"));
+        assertThrows(RuntimeException.class, () -> containsBytes(since, "03/01/2025"));
+    }
+}
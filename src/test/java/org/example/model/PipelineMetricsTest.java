@@ -0,0 +1,61 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void countsRowsBatchesAndStalls() throws Exception {
+        int shards = 2;
+        BlockingQueue<RowBatch>[] queues = new BlockingQueue[shards];
+        for (int i = 0; i < shards; i++) queues[i] = new ArrayBlockingQueue<>(1);
+        AggTable[] tables = AggTable.newShards(shards);
+        PipelineMetrics metrics = new PipelineMetrics(queues, tables, null);
+
+        BatchDispatchRowProcessor processor = new BatchDispatchRowProcessor(new CampaignDictionary(), queues, shards, 2);
+        metrics.register(processor.getCounters());
+
+        // a slow worker on shard 0 only: shard 0's queue fills up and the producer has to wait
+        Thread worker = new Thread(() -> {
+            PipelineMetrics.Worker w = metrics.worker(0);
+            w.started();
+            try {
+                for (int n = 0; n < 5; n++) {
+                    Thread.sleep(20);
+                    RowBatch b = queues[0].take();
+                    w.batch(b.getSize());
+                    tables[0].add(b.getCampaignId()[0], 1, 0, 0.0, 0);
+                }
+            } catch (InterruptedException ignored) {
+            }
+            w.finished();
+        });
+        worker.start();
+
+        PipelineMetrics.Producer p = processor.getCounters();
+        p.started();
+        byte[] row = "c0,2025-01-01,1,0,0.5,0".getBytes(StandardCharsets.US_ASCII);
+        int[] f = {0, 2, 3, 13, 14, 15, 16, 17, 18, 21, 22, 23};
+        for (int i = 0; i < 10; i++) processor.row(row, f);
+        p.finished();
+        worker.join();
+        metrics.stop();
+
+        assertEquals(10, metrics.rows());
+        assertEquals(5, metrics.worker(0).getBatches());
+        assertTrue(p.getPutBlockedNanos() > 0);
+        assertTrue(metrics.bottleneck().startsWith("aggregation"), metrics.bottleneck());
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"rows\": 10,"), json);
+        assertTrue(json.contains("{\"shard\": 0, \"batchesFlushed\": 5, \"batchesAggregated\": 5, \"rows\": 10,"), json);
+        assertTrue(metrics.progressLine().startsWith("Progress: "));
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTest {
+
+    // campaign 5 carries 60% of the rows, the rest is uniform over 1000 ids
+    private static long[] route(ShardRouter router, int rows) {
+        Random rnd = new Random(1);
+        for (int i = 0; i < rows; i++) router.route(rnd.nextInt(10) < 6 ? 5 : rnd.nextInt(1000));
+        return router.shardRows();
+    }
+
+    @Test
+    void spreadsHeavyHittersAcrossShards() {
+        ShardRouter fixed = new ShardRouter(4, false);
+        ShardRouter adaptive = new ShardRouter(4, true);
+        long[] fixedRows = route(fixed, 500_000);
+        long[] adaptiveRows = route(adaptive, 500_000);
+
+        assertEquals(0, fixed.spreadIds().length);
+        assertArrayEquals(new int[]{5}, adaptive.spreadIds());
+        assertTrue(ShardRouter.imbalance(fixedRows) > 2.5);
+        assertTrue(ShardRouter.imbalance(adaptiveRows) < 1.1, () -> "imbalance " + ShardRouter.imbalance(adaptiveRows));
+    }
+
+    @Test
+    void mergeSpreadFoldsPartialsIntoHomeShard() {
+        AggTable[] shards = AggTable.newShards(3);
+        shards[0].add(4, 10, 1, 1.0, 0);
+        shards[1].add(4, 20, 2, 2.0, 1);   // home shard of 4
+        shards[2].add(4, 30, 3, 3.0, 1);
+        shards[2].add(2, 5, 0, 0.5, 0);
+
+        ShardRouter.mergeSpread(shards, new int[]{4});
+
+        assertEquals(-1, shards[0].find(4));
+        assertEquals(-1, shards[2].find(4));
+        int slot = shards[1].find(4);
+        assertEquals(60, shards[1].impressionsAt(slot));
+        assertEquals(6, shards[1].clicksAt(slot));
+        assertEquals(6.0, shards[1].spendAt(slot), 1e-9);
+        assertEquals(2, shards[1].conversionsAt(slot));
+        assertEquals(1, shards[2].size());
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedInputTest {
+
+    private static byte[] sample(int n) {
+        byte[] b = new byte[n];
+        Random rnd = new Random(5);
+        for (int i = 0; i < n; i++) b[i] = (byte) ('a' + rnd.nextInt(8));
+        return b;
+    }
+
+    @Test
+    void decodesGzipAndZipOnABackgroundThread(@TempDir Path dir) throws Exception {
+        byte[] data = sample(3 * CompressedInput.BLOCK_SIZE + 123);
+
+        Path gz = dir.resolve("ad_data.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(data);
+        }
+        Path zip = dir.resolve("ad_data.csv.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("folder/"));
+            out.putNextEntry(new ZipEntry("folder/ad_data.csv"));
+            out.write(data);
+        }
+
+        for (Path p : new Path[]{gz, zip}) {
+            assertTrue(CompressedInput.isCompressed(p));
+            try (InputStream in = CompressedInput.open(p)) {
+                assertTrue(in instanceof ReadAheadInputStream);
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void zstdWithoutTheLibraryIsAClearError(@TempDir Path dir) throws Exception {
+        Path zst = Files.write(dir.resolve("ad_data.csv.zst"), new byte[]{1, 2, 3});
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CompressedInput.open(zst));
+        assertTrue(e.getMessage().contains("-Pzstd"));
+    }
+
+    @Test
+    void readAheadPassesThroughBytesAndErrors() throws Exception {
+        byte[] data = sample(100_000);
+        try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 4096, 2, "t")) {
+            assertEquals(data[0] & 0xff, in.read());
+            byte[] rest = in.readAllBytes();
+            assertEquals(data.length - 1, rest.length);
+            assertEquals(-1, in.read());
+        }
+
+        InputStream failing = new InputStream() {
+            int n;
+
+            @Override
+            public int read() throws IOException {
+                if (++n > 10_000) throw new IOException("disk on fire");
+                return 'x';
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(failing, 4096, 2, "t")) {
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertEquals("disk on fire", e.getMessage());
+        }
+
+        // an unchecked failure of the source ends the stream with an error instead of hanging the consumer
+        InputStream broken = new InputStream() {
+            int n;
+
+            @Override
+            public int read() {
+                if (++n > 10_000) throw new IllegalStateException("decoder bug");
+                return 'x';
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(broken, 4096, 2, "t")) {
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertTrue(e.getCause() instanceof IllegalStateException, e.toString());
+        }
+    }
+
+    @Test
+    void readAheadFromAFileChannelReturnsTheFileBytes(@TempDir Path dir) throws Exception {
+        byte[] data = sample(250_007);
+        Path file = Files.write(dir.resolve("ad_data.csv"), data);
+        for (int blockSize : new int[]{4093, 1 << 16, 1 << 20}) {
+            try (InputStream in = ReadAheadInputStream.open(file, blockSize, 3)) {
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+        try (InputStream in = ReadAheadInputStream.open(Files.write(dir.resolve("empty.csv"), new byte[0]), 4096, 2)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void readAheadOverlapsSlowReadsWithTheConsumer() throws Exception {
+        // 10 blocks that take 20 ms each to read and 20 ms each to consume: ~200 ms overlapped, ~400 ms in turn
+        InputStream slow = new InputStream() {
+            int blocks;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (blocks++ == 10) return -1;
+                sleep(20);
+                return len;
+            }
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        long t0 = System.nanoTime();
+        long consumed = 0;
+        byte[] buf = new byte[4096];
+        try (ReadAheadInputStream in = new ReadAheadInputStream(slow, 4096, 4, "t")) {
+            for (int n; (n = in.read(buf, 0, buf.length)) > 0; ) {
+                consumed += n;
+                sleep(20);
+            }
+            long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+            assertEquals(10 * 4096, consumed);
+            assertTrue(in.getReadNanos() >= 190_000_000L, "read " + in.getReadNanos());
+            assertTrue(in.getWaitNanos() < 100_000_000L, "waited " + in.getWaitNanos());
+            assertTrue(elapsedMs < 350, elapsedMs + " ms");
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConvertUtilTest {
+
+    private static long parseLong(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return ConvertUtil.parseLong(b, 0, b.length);
+    }
+
+    private static double parseDouble(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return ConvertUtil.parseDouble(b, 0, b.length);
+    }
+
+    @Test
+    void parseLongHandlesSignsAndBounds() {
+        assertEquals(0, parseLong("0"));
+        assertEquals(42, parseLong("+42"));
+        assertEquals(-42, parseLong("-42"));
+        assertEquals(Long.MAX_VALUE, parseLong("9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, parseLong("-9223372036854775808"));
+        assertEquals(-7, ConvertUtil.parseLongFast("-7"));
+    }
+
+    @Test
+    void parseLongRejectsMalformedInput() {
+        assertThrows(NumberFormatException.class, () -> parseLong(""));
+        assertThrows(NumberFormatException.class, () -> parseLong("-"));
+        assertThrows(NumberFormatException.class, () -> parseLong("12a"));
+        assertThrows(NumberFormatException.class, () -> parseLong("1.5"));
+        assertThrows(NumberFormatException.class, () -> parseLong("9223372036854775808"));
+        assertThrows(NumberFormatException.class, () -> ConvertUtil.parseLongFast("x"));
+    }
+
+    @Test
+    void parseDoubleMatchesJdk() {
+        String[] samples = {"0", "-0.0", "64.29", "1394.62", ".5", "5.", "+3.25", "-1e3", "2.5E-4",
+                "123456789012345678901234", "0.1000000000000000055511151231257827", "1e400", "4.9e-324",
+                "NaN", "-Infinity"};
+        for (String s : samples) {
+            assertEquals(Double.parseDouble(s), parseDouble(s), s);
+            assertEquals(Double.parseDouble(s), ConvertUtil.parseDoubleFast(s), s);
+        }
+
+        Random rnd = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            String s = (rnd.nextInt(200_000_000) / 100.0) + "";
+            assertEquals(Double.parseDouble(s), parseDouble(s), s);
+        }
+    }
+
+    @Test
+    void parseDoubleRejectsMalformedInput() {
+        assertThrows(NumberFormatException.class, () -> parseDouble(""));
+        assertThrows(NumberFormatException.class, () -> parseDouble("."));
+        assertThrows(NumberFormatException.class, () -> parseDouble("1e"));
+        assertThrows(NumberFormatException.class, () -> parseDouble("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> parseDouble("abc"));
+        assertThrows(NumberFormatException.class, () -> ConvertUtil.parseDoubleFast("1,5"));
+    }
+
+    @Test
+    void parseEpochDayMatchesLocalDate() {
+        for (String s : new String[]{"1970-01-01", "2025-05-04", "2024-02-29", "1969-12-31", "+10000-01-01"}) {
+            byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(LocalDate.parse(s).toEpochDay(), ConvertUtil.parseEpochDay(b, 0, b.length), s);
+        }
+        byte[] bad = "2025-02-30".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(DateTimeException.class, () -> ConvertUtil.parseEpochDay(bad, 0, bad.length));
+        byte[] text = "yesterday".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(DateTimeException.class, () -> ConvertUtil.parseEpochDay(text, 0, text.length));
+    }
+}
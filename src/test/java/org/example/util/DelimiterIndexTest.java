@@ -0,0 +1,83 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class DelimiterIndexTest {
+
+    private static int[] positions(DelimiterIndex index, byte[] buf, int from, int to) {
+        int[] out = new int[to - from];
+        return Arrays.copyOf(out, index.index(buf, from, to, out));
+    }
+
+    private static List<String> rows(CsvByteScanner scanner, byte[] buf) {
+        List<String> rows = new ArrayList<>();
+        byte[] copy = buf.clone(); // quoted fields are unescaped in place
+        int consumed = scanner.scan(copy, 0, copy.length, true, (b, f) -> {
+            StringBuilder sb = new StringBuilder();
+            for (int c = 0; c < CsvByteScanner.COLUMNS; c++) {
+                sb.append('[').append(new String(b, f[c * 2], f[c * 2 + 1] - f[c * 2], StandardCharsets.UTF_8)).append(']');
+            }
+            rows.add(sb.toString());
+        });
+        assertEquals(copy.length, consumed);
+        return rows;
+    }
+
+    @Test
+    void vectorIndexMatchesScalarAtEveryAlignment() {
+        // the surefire run loads jdk.incubator.vector
+        assertNotNull(DelimiterIndex.VECTOR);
+        Random rnd = new Random(11);
+        byte[] alphabet = ",\n\"a1 .-".getBytes(StandardCharsets.US_ASCII);
+        byte[] buf = new byte[1000];
+        for (int i = 0; i < buf.length; i++) buf[i] = alphabet[rnd.nextInt(alphabet.length)];
+        for (int from = 0; from < 70; from++) {
+            for (int to : new int[]{from, from + 1, from + 63, from + 64, from + 65, buf.length}) {
+                assertArrayEquals(positions(DelimiterIndex.SCALAR, buf, from, to),
+                        positions(DelimiterIndex.VECTOR, buf, from, to), from + ".." + to);
+            }
+        }
+    }
+
+    @Test
+    void indexedScannerSplitsRowsLikeTheByteLoop() {
+        String csv = "CMP1,2025-01-01,10,1,2.5,0\n"
+                + "\n"
+                + " CMP2 , 2025-01-02 ,20,2,1.0,1,extra\n"
+                + "\"CMP,3\",2025-01-03,30,3,\"1,5\",0\n"
+                + "CMP\"4,2025-01-04,40,4,0.5,1\n"
+                + "\"say \"\"hi\"\"\",2025-01-05,50,5,0.0,0\n"
+                + "CMP6,2025-01-06,60,6,6.0,6";
+        StringBuilder many = new StringBuilder();
+        // long enough to cross several index chunks
+        for (int i = 0; i < 2000; i++) many.append(csv).append('\n');
+        byte[] buf = many.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String> expected = rows(new CsvByteScanner(null), buf);
+        assertEquals(12_000, expected.size());
+        assertEquals("[CMP,3][2025-01-03][30][3][1,5][0]", expected.get(2));
+        assertEquals("[CMP\"4][2025-01-04][40][4][0.5][1]", expected.get(3));
+        assertEquals(expected, rows(new CsvByteScanner(DelimiterIndex.VECTOR), buf));
+        assertEquals(expected, rows(new CsvByteScanner(DelimiterIndex.SCALAR), buf));
+    }
+
+    @Test
+    void incompleteRowIsLeftForTheNextBlock() {
+        byte[] buf = "a,2025-01-01,1,1,1.0,1\nb,2025-01-01,2,2".getBytes(StandardCharsets.US_ASCII);
+        CsvByteScanner scanner = new CsvByteScanner(DelimiterIndex.VECTOR);
+        List<String> ids = new ArrayList<>();
+        int consumed = scanner.scan(buf, 0, buf.length, false, (b, f) -> ids.add(new String(b, f[0], f[1] - f[0])));
+        assertEquals(List.of("a"), ids);
+        assertEquals(23, consumed);
+    }
+}
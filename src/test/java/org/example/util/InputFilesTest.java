@@ -0,0 +1,37 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InputFilesTest {
+
+    @Test
+    void expandsDirectoriesGlobsAndLists(@TempDir Path dir) throws Exception {
+        Path day2 = Files.writeString(dir.resolve("ad_2025-01-02.csv"), "x");
+        Path day1 = Files.writeString(dir.resolve("ad_2025-01-01.csv"), "x");
+        Path other = Files.writeString(dir.resolve("other.csv"), "x");
+        Files.writeString(dir.resolve("notes.txt"), "x");
+        Files.writeString(dir.resolve(".hidden.csv"), "x");
+        Path sub = Files.createDirectory(dir.resolve("sub"));
+        Path nested = Files.writeString(sub.resolve("ad_2025-01-03.csv"), "x");
+
+        assertEquals(List.of(day1, day2, other), InputFiles.resolve(dir.toString()));
+        assertEquals(List.of(day1, day2), InputFiles.resolve(dir.resolve("ad_*.csv").toString()));
+        assertEquals(List.of(day1, day2, nested), InputFiles.resolve(dir + "/**ad_*.csv"));
+        assertEquals(List.of(other, day1), InputFiles.resolve(other + ", " + day1));
+    }
+
+    @Test
+    void rejectsMissingInputs(@TempDir Path dir) {
+        assertThrows(IllegalArgumentException.class, () -> InputFiles.resolve(dir.resolve("nope.csv").toString()));
+        assertThrows(IllegalArgumentException.class, () -> InputFiles.resolve(dir.resolve("*.csv").toString()));
+        assertThrows(IllegalArgumentException.class, () -> InputFiles.resolve(" , "));
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpscRingQueueTest {
+
+    @Test
+    void fifoAndBoundedByRoundedCapacity() throws Exception {
+        SpscRingQueue<Integer> q = new SpscRingQueue<>(3, WaitStrategy.SPIN);
+        assertEquals(4, q.remainingCapacity());
+        for (int i = 0; i < 4; i++) assertTrue(q.offer(i));
+        assertFalse(q.offer(99));
+        assertFalse(q.offer(99, 1, TimeUnit.MILLISECONDS));
+        assertEquals(4, q.size());
+        assertEquals(0, q.peek());
+
+        assertEquals(0, q.poll());
+        assertTrue(q.offer(4));
+        List<Integer> rest = new ArrayList<>();
+        assertEquals(4, q.drainTo(rest));
+        assertEquals(List.of(1, 2, 3, 4), rest);
+        assertNull(q.poll());
+        assertNull(q.poll(1, TimeUnit.MILLISECONDS));
+        assertThrows(NullPointerException.class, () -> q.offer(null));
+    }
+
+    @Test
+    void transfersInOrderBetweenTwoThreadsWithEveryWaitStrategy() throws Exception {
+        boolean oneCpu = Runtime.getRuntime().availableProcessors() < 2;
+        for (WaitStrategy wait : WaitStrategy.values()) {
+            SpscRingQueue<Long> q = new SpscRingQueue<>(8, wait);
+            // on one CPU a spinning side only yields the core when its time slice ends
+            int n = oneCpu && wait == WaitStrategy.SPIN ? 2_000 : 200_000;
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread consumer = new Thread(() -> {
+                try {
+                    for (long expected = 0; expected < n; expected++) {
+                        long v = q.take();
+                        if (v != expected) throw new AssertionError(wait + ": got " + v + ", expected " + expected);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            consumer.start();
+            for (long i = 0; i < n; i++) q.put(i);
+            consumer.join(30_000);
+
+            assertFalse(consumer.isAlive(), wait + " consumer did not finish");
+            if (failure.get() != null) throw new AssertionError(failure.get());
+            assertEquals(0, q.size());
+        }
+    }
+
+    @Test
+    void iteratesOverASnapshotOfTheQueuedElements() {
+        SpscRingQueue<Integer> q = new SpscRingQueue<>(4, WaitStrategy.PARK);
+        assertEquals("[]", q.toString());
+        for (int i = 0; i < 4; i++) q.offer(i);
+        q.poll();
+        q.offer(4); // wraps around the ring
+        assertEquals("[1, 2, 3, 4]", q.toString());
+        assertTrue(q.contains(3));
+        assertFalse(q.contains(0));
+        assertArrayEquals(new Object[]{1, 2, 3, 4}, q.toArray());
+        assertFalse(q.remove((Object) 9));
+        assertEquals(4, q.size());
+    }
+
+    @Test
+    void blockedTakeIsInterruptible() throws Exception {
+        SpscRingQueue<Integer> q = new SpscRingQueue<>(2, WaitStrategy.PARK);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                q.take();
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        consumer.start();
+        consumer.interrupt();
+        consumer.join(5_000);
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+}